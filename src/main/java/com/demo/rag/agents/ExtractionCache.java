@@ -0,0 +1,236 @@
+package com.demo.rag.agents;
+
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.util.Sha256;
+import com.demo.rag.util.TtlLruCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * ExtractionCache
+ *
+ * Content-addressed docSignals, so a re-submitted document does not pay for another prebuilt-idDocument analysis:
+ * - key = SHA-256 of the document bytes (classpath / uploaded documents), or SHA-256 of the normalized URL
+ *   (scheme/host lower-cased, default port, fragment and SAS signature parameters dropped) + its strong ETag
+ *   from a HEAD request; URLs without an ETag are not cached,
+ * - in memory: {@link TtlLruCache} bounded by EXTRACT_CACHE_MAX (default 2000),
+ * - on disk: one JSON file per key under EXTRACT_CACHE_DIR (default data/extract-cache, empty = memory only),
+ *   at most EXTRACT_CACHE_DISK_MAX (default 50000) files — the oldest tenth is dropped when it is exceeded,
+ * - both tiers expire after EXTRACT_CACHE_TTL_DAYS (default 30).
+ *
+ * Entries keep the document's expiration date next to the docSignals, so the caller recomputes "expired" on
+ * every read. EXTRACT_CACHE_ENABLED=false turns it off. Only successful analyses are stored.
+ */
+public final class ExtractionCache {
+
+    /** A stored analysis: docSignals as computed then, plus what is needed to refresh them. */
+    record Entry(DocSignals signals, String expiresOn, long analyzedAt) { }
+
+    /** Counters for /api/metrics. */
+    public record Stats(boolean enabled, String dir, int diskEntries, long diskHits, long diskWrites,
+                        long diskErrors, long urlsWithoutEtag, TtlLruCache.Stats memory) { }
+
+    /** Azure SAS query parameters: they change per token, not per blob. */
+    private static final Set<String> SAS_PARAMS = Set.of("sv", "ss", "srt", "sp", "se", "st", "spr", "sig",
+            "sr", "si", "sdd", "skoid", "sktid", "skt", "ske", "sks", "skv");
+
+    private final ObjectMapper om;
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final TtlLruCache<String, Entry> memory;
+    private final Path dir;
+    private final int diskMax;
+    private final HttpClient http;
+    private final Duration headTimeout;
+    private final AtomicInteger diskEntries = new AtomicInteger();
+    private final LongAdder diskHits = new LongAdder(), diskWrites = new LongAdder(), diskErrors = new LongAdder(),
+            noEtag = new LongAdder();
+
+    ExtractionCache(ObjectMapper objectMapper) {
+        this.om = objectMapper;
+        this.enabled = Boolean.parseBoolean(Optional.ofNullable(System.getenv("EXTRACT_CACHE_ENABLED")).orElse("true"));
+        this.ttlMillis = Duration.ofDays(Long.parseLong(
+                Optional.ofNullable(System.getenv("EXTRACT_CACHE_TTL_DAYS")).orElse("30"))).toMillis();
+        this.memory = new TtlLruCache<>(
+                Integer.parseInt(Optional.ofNullable(System.getenv("EXTRACT_CACHE_MAX")).orElse("2000")), ttlMillis);
+        String cacheDir = Optional.ofNullable(System.getenv("EXTRACT_CACHE_DIR")).orElse("data/extract-cache");
+        this.dir = cacheDir.isBlank() ? null : Path.of(cacheDir);
+        this.diskMax = Integer.parseInt(Optional.ofNullable(System.getenv("EXTRACT_CACHE_DISK_MAX")).orElse("50000"));
+        this.headTimeout = Duration.ofMillis(Long.parseLong(
+                Optional.ofNullable(System.getenv("EXTRACT_CACHE_HEAD_TIMEOUT_MS")).orElse("2000")));
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(headTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        if (enabled && dir != null && Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                diskEntries.set((int) files.filter(p -> p.toString().endsWith(".json")).count());
+            } catch (IOException e) {
+                diskErrors.increment();
+            }
+        }
+    }
+
+    boolean enabled() { return enabled; }
+
+    // ---------------- keys ----------------
+
+    static String contentKey(byte[] bytes) {
+        return Sha256.hex(bytes);
+    }
+
+    /** Key of a URL at one ETag; null when the URL cannot be parsed. */
+    static String urlKey(String url, String etag) {
+        String n = normalizeUrl(url);
+        return n == null ? null : Sha256.hex(("url|" + n + "|" + etag).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String normalizeUrl(String url) {
+        try {
+            URI u = URI.create(url.trim());
+            if (u.getScheme() == null || u.getHost() == null) return null;
+            String scheme = u.getScheme().toLowerCase(Locale.ROOT);
+            int port = u.getPort();
+            boolean defaultPort = port == -1 || (port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"));
+            StringBuilder sb = new StringBuilder(url.length())
+                    .append(scheme).append("://").append(u.getHost().toLowerCase(Locale.ROOT));
+            if (!defaultPort) sb.append(':').append(port);
+            sb.append(u.getRawPath() == null || u.getRawPath().isEmpty() ? "/" : u.getRawPath());
+            if (u.getRawQuery() != null) {
+                List<String> kept = new ArrayList<>();
+                for (String p : u.getRawQuery().split("&")) {
+                    String name = p.contains("=") ? p.substring(0, p.indexOf('=')) : p;
+                    if (!p.isEmpty() && !SAS_PARAMS.contains(name.toLowerCase(Locale.ROOT))) kept.add(p);
+                }
+                Collections.sort(kept);
+                if (!kept.isEmpty()) sb.append('?').append(String.join("&", kept));
+            }
+            return sb.toString();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Strong ETag of {@code url} from a HEAD request; null when absent, weak or the request fails. */
+    CompletableFuture<String> etagAsync(String url) {
+        if (!enabled) return CompletableFuture.completedFuture(null);
+        HttpRequest req;
+        try {
+            req = HttpRequest.newBuilder(URI.create(url.trim()))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(headTimeout)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return http.sendAsync(req, HttpResponse.BodyHandlers.discarding())
+                .thenApply(r -> r.statusCode() / 100 == 2 ? r.headers().firstValue("ETag").orElse(null) : null)
+                .thenApply(etag -> {
+                    if (etag == null || etag.startsWith("W/")) {
+                        noEtag.increment(); // weak ETags only promise equivalent, not identical, bytes
+                        return null;
+                    }
+                    return etag;
+                })
+                .exceptionally(e -> {
+                    noEtag.increment();
+                    return null;
+                });
+    }
+
+    // ---------------- tiers ----------------
+
+    Entry get(String key) {
+        if (!enabled || key == null) return null;
+        Entry e = memory.get(key);
+        if (e != null || dir == null) return e;
+
+        Path f = file(key);
+        if (!Files.isRegularFile(f)) return null;
+        try {
+            Entry d = om.readValue(f.toFile(), Entry.class);
+            long exp = d.analyzedAt() + ttlMillis;
+            if (exp < System.currentTimeMillis()) {
+                if (Files.deleteIfExists(f)) diskEntries.decrementAndGet();
+                return null;
+            }
+            memory.put(key, d, exp);
+            diskHits.increment();
+            return d;
+        } catch (IOException ex) {
+            diskErrors.increment(); // torn / foreign file: treat as a miss, the next put overwrites it
+            return null;
+        }
+    }
+
+    void put(String key, DocSignals signals, String expiresOn) {
+        if (!enabled || key == null || signals == null || signals.hasError()) return;
+        Entry e = new Entry(signals, expiresOn, System.currentTimeMillis());
+        memory.put(key, e, e.analyzedAt() + ttlMillis);
+        if (dir != null) write(key, e);
+    }
+
+    Stats stats() {
+        return new Stats(enabled, dir == null ? null : dir.toString(), diskEntries.get(), diskHits.sum(),
+                diskWrites.sum(), diskErrors.sum(), noEtag.sum(), memory.stats());
+    }
+
+    // ---------------- disk ----------------
+
+    private void write(String key, Entry e) {
+        Path f = file(key);
+        try {
+            Files.createDirectories(f.getParent());
+            boolean existed = Files.exists(f);
+            Path tmp = f.resolveSibling(f.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+            om.writeValue(tmp.toFile(), e);
+            Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            diskWrites.increment();
+            if (!existed && diskEntries.incrementAndGet() > diskMax) trim();
+        } catch (IOException ex) {
+            diskErrors.increment(); // disk problems only cost hits, never a request
+        }
+    }
+
+    /** Drops the least recently written tenth of the files. */
+    private synchronized void trim() throws IOException {
+        if (diskEntries.get() <= diskMax) return;
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(dir)) {
+            files = s.filter(p -> p.toString().endsWith(".json")).toList();
+        }
+        Map<Path, Long> mtime = new HashMap<>();
+        for (Path p : files) {
+            try { mtime.put(p, Files.getLastModifiedTime(p).toMillis()); } catch (IOException ignore) { mtime.put(p, 0L); }
+        }
+        List<Path> oldest = new ArrayList<>(files);
+        oldest.sort(Comparator.comparingLong(mtime::get));
+        int drop = Math.max(1, files.size() - diskMax + diskMax / 10);
+        int removed = 0;
+        for (Path p : oldest.subList(0, Math.min(drop, oldest.size()))) {
+            if (Files.deleteIfExists(p)) removed++;
+        }
+        diskEntries.set(files.size() - removed);
+    }
+
+    /** Two-level fan-out (ab/abcdef….json) keeps directories small. */
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+}
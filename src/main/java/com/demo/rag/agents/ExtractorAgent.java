@@ -1,357 +1,465 @@
-package com.demo.rag.agents;
-
-import com.azure.ai.documentintelligence.DocumentIntelligenceClient;
-import com.azure.ai.documentintelligence.DocumentIntelligenceClientBuilder;
-import com.azure.ai.documentintelligence.models.AnalyzeDocumentOptions;
-import com.azure.ai.documentintelligence.models.AnalyzeResult;
-import com.azure.ai.documentintelligence.models.AnalyzedDocument;
-import com.azure.ai.documentintelligence.models.DocumentField;
-import com.azure.core.credential.AzureKeyCredential;
-import com.azure.core.exception.HttpResponseException;
-import com.azure.core.util.BinaryData;
-import com.azure.core.util.polling.SyncPoller;
-import com.azure.identity.DefaultAzureCredentialBuilder;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.stereotype.Service;
-
-import java.io.InputStream;
-import java.time.LocalDate;
-import java.time.ZoneOffset;
-import java.util.*;
-
-import com.azure.core.http.policy.HttpLogDetailLevel;
-import com.azure.core.http.policy.HttpLogOptions;
-
-@Service
-public class ExtractorAgent {
-
-    private static final String MODEL_ID = "prebuilt-idDocument";
-
-    private final DocumentIntelligenceClient client;
-    private final ObjectMapper om;
-
-    public ExtractorAgent(ObjectMapper objectMapper) {
-        String endpoint = getenvOrThrow("AI_DOCINT_ENDPOINT");
-        String apiKey   = System.getenv("AI_DOCINT_KEY");
-        endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length()-1) : endpoint;
-
-        DocumentIntelligenceClientBuilder b = new DocumentIntelligenceClientBuilder()
-                .endpoint(endpoint)
-                .httpLogOptions(new HttpLogOptions().setLogLevel(HttpLogDetailLevel.BODY_AND_HEADERS));
-
-        if (apiKey != null && !apiKey.isBlank()) {
-            b.credential(new AzureKeyCredential(apiKey));
-        } else {
-            b.credential(new DefaultAzureCredentialBuilder().build());
-        }
-        this.client = b.buildClient();
-        this.om = objectMapper;
-    }
-
-    // --------- Public API (returns docSignals JSON) ---------
-
-    /** Reads a document from classpath and returns docSignals JSON. */
-    public String inspectFromResource(String resourcePath) {
-        try (InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
-            if (in == null) return err("resource-not-found", "classpath:" + resourcePath);
-
-            AnalyzeDocumentOptions opts = new AnalyzeDocumentOptions(BinaryData.fromStream(in));
-            SyncPoller<?, AnalyzeResult> poller = client.beginAnalyzeDocument(MODEL_ID, opts);
-            AnalyzeResult result = poller.getFinalResult();
-
-            return toDocSignals(result, "classpath:" + resourcePath);
-
-        } catch (HttpResponseException ex) {
-            // service returned a real HTTP error (show status/body)
-            return httpErr(ex);
-
-        } catch (RuntimeException ex) {
-            // LRO failures often surface here; unwrap HttpResponseException if present
-            Throwable c = ex;
-            while (c != null && !(c instanceof HttpResponseException)) c = c.getCause();
-            if (c instanceof HttpResponseException hre) return httpErr(hre);
-            return err("analyze-failed", ex.getMessage());
-        } catch (Exception e) {
-            return err("analyze-failed", e.getMessage());
-        }
-    }
-
-    /** Reads a document from a publicly reachable URL and returns docSignals JSON. */
-    public String inspect(String url) {
-        try {
-            AnalyzeDocumentOptions opts = new AnalyzeDocumentOptions(url);
-            SyncPoller<?, AnalyzeResult> poller = client.beginAnalyzeDocument(MODEL_ID, opts);
-            AnalyzeResult result = poller.getFinalResult();
-            return toDocSignals(result, url);
-        } catch (HttpResponseException ex) {
-            return httpErr(ex); // has status/body
-        } catch (RuntimeException ex) {
-            // <- LRO failures often come here; unwrap cause if it's HttpResponseException
-            Throwable c = ex.getCause();
-            if (c instanceof HttpResponseException hre) {
-                return httpErr(hre);
-            }
-            return err("analyze-failed", ex.getMessage());
-        } catch (Exception e) {
-            return err("analyze-failed", e.getMessage());
-        }
-    }
-
-    // --------- AnalyzeResult → docSignals ---------
-    private String toDocSignals(AnalyzeResult r, String docRef) {
-        Map<String,Object> out = new LinkedHashMap<>();
-        List<String> reasons = new ArrayList<>();
-        out.put("documentRef", docRef);
-
-        if (r == null || r.getDocuments() == null || r.getDocuments().isEmpty()) {
-            out.put("error", "no-document-parsed");
-            return toJson(out);
-        }
-
-        AnalyzedDocument d = r.getDocuments().get(0);
-        Map<String, DocumentField> f = d.getFields();
-
-        // (A) Prefer visual fields; be generous with key names and formats
-        String vName = firstNonBlank(
-                contentOf(f, "FullName"),
-                contentOf(f, "Name"),
-                joinName(contentOf(f, "FirstName"), contentOf(f, "LastName")),
-                joinName(contentOf(f, "GivenName"), contentOf(f, "Surname")),
-                joinName(contentOf(f, "GivenNames"), contentOf(f, "Surname"))
-        );
-        String vDocNo = contentOf(f, "DocumentNumber");
-        String vDob   = firstNonBlank(dateOf(f, "DateOfBirth"), dateOf(f, "BirthDate"));
-        String vExp   = dateOf(f, "DateOfExpiration");
-
-        // (B) Parse MRZ after visual extraction; only use as fallback
-        String mrz = contentOf(f, "MachineReadableZone");
-        String mrzLine1 = null, mrzLine2 = null;
-        if (mrz != null) {
-            String[] lines = mrz.split("\\R");
-            if (lines.length >= 2) { mrzLine1 = lines[0]; mrzLine2 = lines[1]; }
-        }
-        MrzInfo mi = parseMrz(mrzLine1, mrzLine2);
-
-        if (vName == null && mi.fullName != null) vName = mi.fullName;
-
-        // Consistency checks ONLY when both sides are present
-        boolean nameMismatch  = (vName  != null && mi.fullName != null) && !safeEqualsNorm(vName,  mi.fullName);
-        boolean docNoMismatch = (vDocNo != null && mi.docNo    != null) && !safeEqualsNorm(vDocNo, mi.docNo);
-        boolean dobMismatch   = (vDob   != null && mi.dobIso   != null) && !vDob.equals(mi.dobIso);
-
-        // Expiration check
-        boolean expired = false;
-        if (vExp != null) {
-            try { expired = LocalDate.parse(vExp).isBefore(LocalDate.now(ZoneOffset.UTC)); } catch (Throwable ignore) {}
-        }
-
-        // Simple quality/cropping hints
-        boolean croppingHint = (r.getContent() != null && r.getContent().toLowerCase().contains("cropped"));
-
-        // OCR confidence normalized (handle nullable Double)
-        Double confObj = d.getConfidence();
-        double conf = (confObj != null) ? confObj : 0.0;
-        double quality = clamp(conf, 0, 1);
-
-        // Reasons
-        if (mrz != null && !mi.validChecks) {
-            reasons.add("MRZ present but failed check-digit validation (ICAO 9303).");
-        }
-        if (mi.validChecks && (nameMismatch || docNoMismatch || dobMismatch)) {
-            reasons.add("Inconsistency between MRZ and visual fields.");
-        }
-        if (expired) reasons.add("Document expired.");
-        if (croppingHint) reasons.add("Cropped/partial frame detected.");
-
-        // Output payload
-        Map<String,Object> idInfo = new LinkedHashMap<>();
-        idInfo.put("fullName", coalesce(vName, mi.fullName));
-        idInfo.put("dob",      coalesce(vDob,  mi.dobIso));
-        idInfo.put("docNo",    coalesce(vDocNo, mi.docNo));
-        idInfo.put("country",  coalesce(contentOf(f, "CountryRegion"), contentOf(f, "Nationality")));
-        out.put("idInfo", idInfo);
-
-        out.put("mrzValid", mi.validChecks);
-        out.put("identityMismatch", nameMismatch || docNoMismatch || dobMismatch);
-        out.put("expired", expired);
-        out.put("quality", quality);
-        out.put("croppingHint", croppingHint);
-        out.put("reasons", reasons);
-        out.put("ok", true);
-
-        return toJson(out);
-    }
-
-
-    // ---- small helpers for robust name extraction ----
-    private static String firstNonBlank(String... vals){
-        if (vals == null) return null;
-        for (String v : vals) if (v != null && !v.isBlank()) return v.trim();
-        return null;
-    }
-    private static String joinName(String left, String right){
-        if ((left == null || left.isBlank()) && (right == null || right.isBlank())) return null;
-        if (left == null || left.isBlank()) return right.trim();
-        if (right == null || right.isBlank()) return left.trim();
-        return (left + " " + right).trim().replaceAll("\\s+", " ");
-    }
-
-    // --------- MRZ helpers ---------
-
-    static class MrzInfo {
-        String fullName;   // "GIVEN SURNAME"
-        String docNo;      // 9 chars
-        String dobIso;     // YYYY-MM-DD
-        boolean validChecks;
-    }
-
-    private MrzInfo parseMrz(String l1, String l2) {
-        MrzInfo m = new MrzInfo();
-        if (l1 == null || l2 == null || l2.length() < 43) { m.validChecks = false; return m; }
-
-        // TD3 layout - line 2 fields
-        String docNo = safeSub(l2, 0, 9);
-        char docNoCd = safeChar(l2, 9);
-        String nat   = safeSub(l2, 11, 14);
-        String dob   = safeSub(l2, 14, 20); char dobCd = safeChar(l2, 20);
-        char sex     = safeChar(l2, 21);
-        String exp   = safeSub(l2, 22, 28); char expCd = safeChar(l2, 28);
-        String comp  = safeSub(l2, 0, 10) + safeSub(l2, 11, 21) + safeSub(l2, 22, 29) + safeSub(l2, 29, 42);
-        char compCd  = safeChar(l2, 42);
-
-        boolean okDoc = checkDigit(docNo, docNoCd);
-        boolean okDob = checkDigit(dob, dobCd);
-        boolean okExp = checkDigit(exp, expCd);
-        boolean okCmp = checkDigit(comp, compCd);
-
-        m.validChecks = okDoc && okDob && okExp && okCmp;
-        m.docNo = stripFillers(docNo);
-
-        // Name from line 1: P<XYZSURNAME<<GIVEN<<...
-        String l = l1.startsWith("P<") ? l1.substring(2) : l1;
-        String[] parts = l.split("<<");
-        String left = parts.length > 0 ? parts[0] : "";
-        String right = parts.length > 1 ? parts[1] : "";
-        // left begins with 3-letter country, then surname letters
-        String surname = left.length() > 3 ? left.substring(3) : left;
-        surname = stripFillers(surname);
-        String given = stripFillers(right).replace('<',' ').trim().replaceAll("\\s+"," ");
-        m.fullName = (given + " " + surname).trim().replaceAll("\\s+"," ");
-
-        // DOB → YYYY-MM-DD (YYMMDD; naive century guess for demo purposes)
-        if (dob != null && dob.length()==6) {
-            int yy = Integer.parseInt(dob.substring(0,2));
-            String century = (yy >= 30) ? "19" : "20";
-            m.dobIso = century + dob.substring(0,2) + "-" + dob.substring(2,4) + "-" + dob.substring(4,6);
-        }
-        return m;
-    }
-
-    private static boolean checkDigit(String data, char cd) {
-        if (!Character.isDigit(cd)) return false;
-        int[] w = {7,3,1};
-        int sum = 0;
-        for (int i=0;i<data.length();i++) sum += mrzVal(data.charAt(i)) * w[i%3];
-        return (sum % 10) == (cd - '0');
-    }
-    private static int mrzVal(char c) {
-        if (c=='<') return 0;
-        if (c>='0' && c<='9') return c-'0';
-        if (c>='A' && c<='Z') return 10 + (c-'A');
-        return 0;
-    }
-
-    // --------- Utils ---------
-
-    private static String getenvOrThrow(String k){
-        String v = System.getenv(k);
-        if (v == null || v.isBlank()) throw new IllegalStateException("Missing env: " + k);
-        return v;
-    }
-    private static String contentOf(Map<String, DocumentField> f, String key){
-        try {
-            DocumentField df = f.get(key);
-            if (df == null) return null;
-            // Prefer content if present; else fall back to valueString
-            String c = df.getContent();
-            if (c != null && !c.isBlank()) return c;
-            String vs = df.getValueString();
-            return (vs != null && !vs.isBlank()) ? vs : null;
-        } catch (Throwable ignore){ return null; }
-    }
-    private static String dateOf(Map<String, DocumentField> f, String key){
-        try {
-            DocumentField df = f.get(key);
-            if (df == null) return null;
-            if (df.getValueDate() != null) return df.getValueDate().toString(); // YYYY-MM-DD
-            // bazı kimliklerde tarih string gelebilir
-            String vs = df.getValueString();
-            return (vs != null && vs.matches("\\d{4}-\\d{2}-\\d{2}")) ? vs : null;
-        } catch (Throwable ignore){ return null; }
-    }
-    private static String stripFillers(String s){
-        return s == null ? null : s.replace('<',' ').trim().replaceAll("\\s+"," ");
-    }
-    private static boolean safeEqualsNorm(String a, String b){
-        if (a == null || b == null) return false;
-        return normalize(a).equals(normalize(b));
-    }
-    private static String normalize(String s){
-        return s==null? "" : s.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]","");
-    }
-    private static String coalesce(String... ss){
-        for (String s: ss) if (s != null && !s.isBlank()) return s;
-        return null;
-    }
-    private static double clamp(double v, double lo, double hi){ return Math.max(lo, Math.min(hi, v)); }
-
-    /** Safe substring: returns empty string if indices are out of bounds. */
-    private static String safeSub(String s, int start, int end){
-        if (s == null) return "";
-        int len = s.length();
-        int a = Math.max(0, Math.min(start, len));
-        int b = Math.max(a, Math.min(end, len));
-        return (a >= b) ? "" : s.substring(a, b);
-    }
-
-    /** Safe char: returns '0' when out of bounds (neutral for check-digit math). */
-    private static char safeChar(String s, int idx){
-        if (s != null && idx >= 0 && idx < s.length()) return s.charAt(idx);
-        return '0';
-    }
-
-    /** Formats HttpResponseException with status code and response body for easier diagnosis. */
-    private String httpErr(HttpResponseException ex){
-        String body = null;
-        Integer status = null;
-        try {
-            if (ex.getResponse() != null) {
-                status = ex.getResponse().getStatusCode();
-                body = ex.getResponse().getBodyAsString().block();
-            }
-        } catch (Throwable ignore){}
-
-        String msg = (status != null ? status + " " : "") + ex.getMessage()
-                + (body != null ? (" :: " + body) : "");
-        return err("analyze-failed", msg);
-    }
-
-    private String err(String code, String msg){
-        String m = msg==null? "" : msg.replace("\"","\\\"");
-        return "{\"error\":\""+code+"\",\"message\":\""+m+"\"}";
-    }
-    private String toJson(Object o){
-        try { return om.writerWithDefaultPrettyPrinter().writeValueAsString(o); }
-        catch (Exception e){ try { return om.writeValueAsString(o); } catch (Exception ignore){ return "{\"error\":\"json-serialize\"}"; } }
-    }
-
-    // Not used currently; kept for potential future use.
-    @SuppressWarnings("unused")
-    private static String guessContentType(String path) {
-        String p = path.toLowerCase(Locale.ROOT);
-        if (p.endsWith(".png"))  return "image/png";
-        if (p.endsWith(".jpg") || p.endsWith(".jpeg")) return "image/jpeg";
-        if (p.endsWith(".pdf"))  return "application/pdf";
-        return "application/octet-stream";
-    }
-}
+package com.demo.rag.agents;
+
+import com.azure.ai.documentintelligence.DocumentIntelligenceAsyncClient;
+import com.azure.ai.documentintelligence.DocumentIntelligenceClient;
+import com.azure.ai.documentintelligence.DocumentIntelligenceClientBuilder;
+import com.azure.ai.documentintelligence.models.AnalyzeDocumentOptions;
+import com.azure.ai.documentintelligence.models.AnalyzeResult;
+import com.azure.ai.documentintelligence.models.AnalyzedDocument;
+import com.azure.ai.documentintelligence.models.DocumentField;
+import com.azure.core.credential.AzureKeyCredential;
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.polling.AsyncPollResponse;
+import com.azure.core.util.polling.SyncPoller;
+import com.azure.identity.DefaultAzureCredentialBuilder;
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.mrz.MrzParser;
+import com.demo.rag.util.AsyncLimiter;
+import com.demo.rag.util.SingleFlight;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.azure.core.http.policy.HttpLogDetailLevel;
+import com.azure.core.http.policy.HttpLogOptions;
+
+/**
+ * ExtractorAgent
+ *
+ * prebuilt-idDocument analysis → docSignals. Two paths over the same analysis:
+ * - inspect / inspectFromResource block the caller until the long-running operation ends,
+ * - inspectAsync / inspectFromResourceAsync use the async client: the LRO is polled every
+ *   DOCINT_POLL_INTERVAL_MS (default 1000) on the SDK's shared reactor scheduler, so no thread waits per
+ *   document. At most DOCINT_MAX_IN_FLIGHT (default 200) analyses run at once, DOCINT_MAX_QUEUED (default 1000)
+ *   more wait for a slot; beyond that the future fails with {@link AsyncLimiter.RejectedException}.
+ * Both paths look in the {@link ExtractionCache} first (document bytes / URL + ETag) and store successful analyses;
+ * "expired" of a cached answer is recomputed from the stored expiration date.
+ *
+ * MRZ (TD1 / TD2 / TD3) is read by {@link MrzParser}. Without a remote call at all:
+ * - inspectMrz parses MRZ text the caller already has,
+ * - classpath PDFs whose text layer carries a fully valid MRZ are answered from it (EXTRACT_LOCAL_MRZ, default true).
+ */
+@Service
+public class ExtractorAgent {
+
+    private static final String MODEL_ID = "prebuilt-idDocument";
+    private static final String EXPIRED_REASON = "Document expired.";
+    private static final String CROPPED_REASON = "Cropped/partial frame detected.";
+    private static final int LOCAL_MRZ_PAGES = 2;
+    private static final String MRZ_INVALID_REASON = "MRZ present but failed check-digit validation (ICAO 9303).";
+
+    private final DocumentIntelligenceClient client;
+    private final DocumentIntelligenceAsyncClient asyncClient;
+    private final Duration pollInterval;
+    private final AsyncLimiter limiter;
+    private final ExtractionCache cache;
+    private final boolean localMrz;
+    private final SingleFlight<String, DocSignals> flight = new SingleFlight<>();
+
+    public ExtractorAgent(ObjectMapper objectMapper) {
+        String endpoint = getenvOrThrow("AI_DOCINT_ENDPOINT");
+        String apiKey   = System.getenv("AI_DOCINT_KEY");
+        endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length()-1) : endpoint;
+
+        DocumentIntelligenceClientBuilder b = new DocumentIntelligenceClientBuilder()
+                .endpoint(endpoint)
+                .httpLogOptions(new HttpLogOptions().setLogLevel(HttpLogDetailLevel.BODY_AND_HEADERS));
+
+        if (apiKey != null && !apiKey.isBlank()) {
+            b.credential(new AzureKeyCredential(apiKey));
+        } else {
+            b.credential(new DefaultAzureCredentialBuilder().build());
+        }
+        this.client = b.buildClient();
+        this.asyncClient = b.buildAsyncClient();
+
+        this.pollInterval = Duration.ofMillis(Long.parseLong(
+                Optional.ofNullable(System.getenv("DOCINT_POLL_INTERVAL_MS")).orElse("1000")));
+        int maxInFlight = Integer.parseInt(Optional.ofNullable(System.getenv("DOCINT_MAX_IN_FLIGHT")).orElse("200"));
+        int maxQueued = Integer.parseInt(Optional.ofNullable(System.getenv("DOCINT_MAX_QUEUED")).orElse("1000"));
+        this.limiter = new AsyncLimiter("docint", Math.max(1, maxInFlight), maxQueued);
+        this.cache = new ExtractionCache(objectMapper);
+        this.localMrz = Boolean.parseBoolean(Optional.ofNullable(System.getenv("EXTRACT_LOCAL_MRZ")).orElse("true"));
+    }
+
+    // --------- Public API (returns docSignals) ---------
+
+    /** Reads a document from classpath and returns docSignals. */
+    public DocSignals inspectFromResource(String resourcePath) {
+        String key = "classpath:" + (resourcePath == null ? "" : resourcePath.trim());
+        return flight.run(key, () -> analyzeResource(resourcePath));
+    }
+
+    /** Reads a document from a publicly reachable URL and returns docSignals. */
+    public DocSignals inspect(String url) {
+        return flight.run("url:" + (url == null ? "" : url.trim()), () -> analyzeUrl(url));
+    }
+
+    /** Non-blocking {@link #inspectFromResource}; the classpath read happens on the calling thread. */
+    public CompletableFuture<DocSignals> inspectFromResourceAsync(String resourcePath) {
+        String key = "classpath:" + (resourcePath == null ? "" : resourcePath.trim());
+        return flight.runAsync(key, () -> {
+            try (InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+                if (in == null) return CompletableFuture.completedFuture(err("resource-not-found", key));
+                byte[] bytes = in.readAllBytes();
+                DocSignals local = localMrz(bytes, key);
+                if (local != null) return CompletableFuture.completedFuture(local);
+                String cacheKey = ExtractionCache.contentKey(bytes);
+                ExtractionCache.Entry hit = cache.get(cacheKey);
+                if (hit != null) return CompletableFuture.completedFuture(fromCache(hit, key));
+                return analyzeAsync(new AnalyzeDocumentOptions(BinaryData.fromBytes(bytes)), cacheKey, key);
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(err("analyze-failed", e.getMessage()));
+            }
+        });
+    }
+
+    /** Non-blocking {@link #inspect}. */
+    public CompletableFuture<DocSignals> inspectAsync(String url) {
+        return flight.runAsync("url:" + (url == null ? "" : url.trim()),
+                () -> cache.etagAsync(url).thenCompose(etag -> {
+                    String cacheKey = etag == null ? null : ExtractionCache.urlKey(url, etag);
+                    ExtractionCache.Entry hit = cache.get(cacheKey);
+                    if (hit != null) return CompletableFuture.completedFuture(fromCache(hit, url));
+                    return analyzeAsync(new AnalyzeDocumentOptions(url), cacheKey, url);
+                }));
+    }
+
+    /**
+     * docSignals from MRZ text the caller already has (reader device, form field, PDF text layer) — parsed
+     * locally, no Document Intelligence call. There are no visual fields to compare, so identityMismatch and
+     * quality stay null.
+     */
+    public DocSignals inspectMrz(String mrzText, String docRef) {
+        MrzParser.Result m = MrzParser.parse(mrzText);
+        if (m == null) m = MrzParser.find(mrzText);
+        if (m == null) return DocSignals.error(docRef, "mrz-not-found", "no TD1/TD2/TD3 MRZ in the given text");
+        return fromMrz(m, docRef);
+    }
+
+    public SingleFlight.Stats flightStats() { return flight.stats(); }
+
+    public AsyncLimiter.Stats asyncStats() { return limiter.stats(); }
+
+    public ExtractionCache.Stats cacheStats() { return cache.stats(); }
+
+    // --------- Document Intelligence calls (one per distinct in-flight document) ---------
+
+    private DocSignals analyzeResource(String resourcePath) {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
+            if (in == null) return err("resource-not-found", "classpath:" + resourcePath);
+
+            byte[] bytes = in.readAllBytes();
+            DocSignals local = localMrz(bytes, "classpath:" + resourcePath);
+            if (local != null) return local;
+            String cacheKey = ExtractionCache.contentKey(bytes);
+            ExtractionCache.Entry hit = cache.get(cacheKey);
+            if (hit != null) return fromCache(hit, "classpath:" + resourcePath);
+
+            AnalyzeDocumentOptions opts = new AnalyzeDocumentOptions(BinaryData.fromBytes(bytes));
+            SyncPoller<?, AnalyzeResult> poller = client.beginAnalyzeDocument(MODEL_ID, opts);
+            AnalyzeResult result = poller.getFinalResult();
+
+            return cached(cacheKey, result, "classpath:" + resourcePath);
+
+        } catch (HttpResponseException ex) {
+            // service returned a real HTTP error (show status/body)
+            return httpErr(ex);
+
+        } catch (RuntimeException ex) {
+            // LRO failures often surface here; unwrap HttpResponseException if present
+            Throwable c = ex;
+            while (c != null && !(c instanceof HttpResponseException)) c = c.getCause();
+            if (c instanceof HttpResponseException hre) return httpErr(hre);
+            return err("analyze-failed", ex.getMessage());
+        } catch (Exception e) {
+            return err("analyze-failed", e.getMessage());
+        }
+    }
+
+    private DocSignals analyzeUrl(String url) {
+        try {
+            String etag = cache.etagAsync(url).join();
+            String cacheKey = etag == null ? null : ExtractionCache.urlKey(url, etag);
+            ExtractionCache.Entry hit = cache.get(cacheKey);
+            if (hit != null) return fromCache(hit, url);
+
+            AnalyzeDocumentOptions opts = new AnalyzeDocumentOptions(url);
+            SyncPoller<?, AnalyzeResult> poller = client.beginAnalyzeDocument(MODEL_ID, opts);
+            AnalyzeResult result = poller.getFinalResult();
+            return cached(cacheKey, result, url);
+        } catch (HttpResponseException ex) {
+            return httpErr(ex); // has status/body
+        } catch (RuntimeException ex) {
+            // <- LRO failures often come here; unwrap cause if it's HttpResponseException
+            Throwable c = ex.getCause();
+            if (c instanceof HttpResponseException hre) {
+                return httpErr(hre);
+            }
+            return err("analyze-failed", ex.getMessage());
+        } catch (Exception e) {
+            return err("analyze-failed", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the analysis when the limiter has a slot; the poller's last response carries the final result.
+     * Fails only with {@link AsyncLimiter.RejectedException}, other errors become docSignals errors.
+     */
+    private CompletableFuture<DocSignals> analyzeAsync(AnalyzeDocumentOptions opts, String cacheKey, String docRef) {
+        return limiter.submit(() -> asyncClient.beginAnalyzeDocument(MODEL_ID, opts)
+                        .setPollInterval(pollInterval)
+                        .last()
+                        .flatMap(AsyncPollResponse::getFinalResult)
+                        .toFuture())
+                .thenApply(result -> cached(cacheKey, result, docRef))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof AsyncLimiter.RejectedException re) throw re;
+                    Throwable c = cause;
+                    while (c != null && !(c instanceof HttpResponseException)) c = c.getCause();
+                    // no body read here: this runs on a reactor thread, where block() is not allowed
+                    if (c instanceof HttpResponseException hre) {
+                        Integer status = hre.getResponse() == null ? null : hre.getResponse().getStatusCode();
+                        return err("analyze-failed", (status != null ? status + " " : "") + hre.getMessage());
+                    }
+                    return err("analyze-failed", cause.getMessage());
+                });
+    }
+
+    // --------- local MRZ ---------
+
+    /**
+     * docSignals from the MRZ in a PDF's text layer (first {@link #LOCAL_MRZ_PAGES} pages) when it passes every
+     * check digit; null — analyze remotely — for images, scanned PDFs and unreadable or invalid zones.
+     */
+    private DocSignals localMrz(byte[] bytes, String docRef) {
+        if (!localMrz || bytes.length < 5 || bytes[0] != '%' || bytes[1] != 'P' || bytes[2] != 'D' || bytes[3] != 'F') {
+            return null;
+        }
+        try (PDDocument pdf = Loader.loadPDF(bytes)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(1);
+            stripper.setEndPage(Math.min(LOCAL_MRZ_PAGES, pdf.getNumberOfPages()));
+            MrzParser.Result m = MrzParser.find(stripper.getText(pdf));
+            return m != null && m.valid() ? fromMrz(m, docRef) : null;
+        } catch (Exception e) {
+            return null; // encrypted / malformed: Document Intelligence gets to try
+        }
+    }
+
+    private static DocSignals fromMrz(MrzParser.Result m, String docRef) {
+        List<String> reasons = new ArrayList<>();
+        if (!m.valid()) reasons.add(MRZ_INVALID_REASON);
+        boolean expired = isExpired(m.expiryDate());
+        if (expired) reasons.add(EXPIRED_REASON);
+        DocSignals.IdInfo idInfo = new DocSignals.IdInfo(m.fullName(), m.birthDate(), m.documentNumber(),
+                coalesce(m.nationality(), m.issuingState()));
+        return new DocSignals(docRef, idInfo, m.valid(), null, expired, null, null, List.copyOf(reasons),
+                true, null, null);
+    }
+
+    // --------- cache ---------
+
+    /** docSignals of a fresh analysis, stored under {@code cacheKey} (null = not cacheable) when successful. */
+    private DocSignals cached(String cacheKey, AnalyzeResult result, String docRef) {
+        DocSignals d = toDocSignals(result, docRef);
+        if (cacheKey != null) cache.put(cacheKey, d, expirationOf(result));
+        return d;
+    }
+
+    /** A cached answer for {@code docRef}, with "expired" (and its reason) as of today. */
+    private static DocSignals fromCache(ExtractionCache.Entry e, String docRef) {
+        DocSignals d = e.signals();
+        boolean expired = isExpired(e.expiresOn());
+        List<String> reasons = new ArrayList<>(d.reasons() == null ? List.of() : d.reasons());
+        reasons.remove(EXPIRED_REASON);
+        if (expired) {
+            int at = reasons.indexOf(CROPPED_REASON); // same order as toDocSignals
+            reasons.add(at < 0 ? reasons.size() : at, EXPIRED_REASON);
+        }
+        return new DocSignals(docRef, d.idInfo(), d.mrzValid(), d.identityMismatch(), expired, d.quality(),
+                d.croppingHint(), List.copyOf(reasons), d.ok(), d.error(), d.message());
+    }
+
+    private static String expirationOf(AnalyzeResult r) {
+        if (r == null || r.getDocuments() == null || r.getDocuments().isEmpty()) return null;
+        Map<String, DocumentField> f = r.getDocuments().get(0).getFields();
+        MrzParser.Result mi = MrzParser.parse(contentOf(f, "MachineReadableZone"));
+        return coalesce(dateOf(f, "DateOfExpiration"), mi == null ? null : mi.expiryDate());
+    }
+
+    private static boolean isExpired(String isoDate) {
+        if (isoDate == null) return false;
+        try { return LocalDate.parse(isoDate).isBefore(LocalDate.now(ZoneOffset.UTC)); } catch (Throwable ignore) { return false; }
+    }
+
+    // --------- AnalyzeResult → docSignals ---------
+    private DocSignals toDocSignals(AnalyzeResult r, String docRef) {
+        List<String> reasons = new ArrayList<>();
+
+        if (r == null || r.getDocuments() == null || r.getDocuments().isEmpty()) {
+            return DocSignals.error(docRef, "no-document-parsed", null);
+        }
+
+        AnalyzedDocument d = r.getDocuments().get(0);
+        Map<String, DocumentField> f = d.getFields();
+
+        // (A) Prefer visual fields; be generous with key names and formats
+        String vName = firstNonBlank(
+                contentOf(f, "FullName"),
+                contentOf(f, "Name"),
+                joinName(contentOf(f, "FirstName"), contentOf(f, "LastName")),
+                joinName(contentOf(f, "GivenName"), contentOf(f, "Surname")),
+                joinName(contentOf(f, "GivenNames"), contentOf(f, "Surname"))
+        );
+        String vDocNo = contentOf(f, "DocumentNumber");
+        String vDob   = firstNonBlank(dateOf(f, "DateOfBirth"), dateOf(f, "BirthDate"));
+        String vExp   = dateOf(f, "DateOfExpiration");
+
+        // (B) Parse MRZ after visual extraction; only use as fallback
+        String mrz = contentOf(f, "MachineReadableZone");
+        MrzParser.Result mi = MrzParser.parse(mrz);
+        String mName  = mi == null ? null : mi.fullName();
+        String mDocNo = mi == null ? null : mi.documentNumber();
+        String mDob   = mi == null ? null : mi.birthDate();
+        boolean mrzValid = mi != null && mi.valid();
+
+        if (vName == null && mName != null) vName = mName;
+
+        // Consistency checks ONLY when both sides are present
+        boolean nameMismatch  = (vName  != null && mName  != null) && !safeEqualsNorm(vName,  mName);
+        boolean docNoMismatch = (vDocNo != null && mDocNo != null) && !safeEqualsNorm(vDocNo, mDocNo);
+        boolean dobMismatch   = (vDob   != null && mDob   != null) && !vDob.equals(mDob);
+
+        // Expiration check
+        boolean expired = isExpired(coalesce(vExp, mi == null ? null : mi.expiryDate()));
+
+        // Simple quality/cropping hints
+        boolean croppingHint = (r.getContent() != null && r.getContent().toLowerCase().contains("cropped"));
+
+        // OCR confidence normalized (handle nullable Double)
+        Double confObj = d.getConfidence();
+        double conf = (confObj != null) ? confObj : 0.0;
+        double quality = clamp(conf, 0, 1);
+
+        // Reasons
+        if (mrz != null && !mrzValid) reasons.add(MRZ_INVALID_REASON);
+        if (mrzValid && (nameMismatch || docNoMismatch || dobMismatch)) {
+            reasons.add("Inconsistency between MRZ and visual fields.");
+        }
+        if (expired) reasons.add(EXPIRED_REASON);
+        if (croppingHint) reasons.add(CROPPED_REASON);
+
+        // Output payload
+        DocSignals.IdInfo idInfo = new DocSignals.IdInfo(
+                coalesce(vName, mName),
+                coalesce(vDob,  mDob),
+                coalesce(vDocNo, mDocNo),
+                coalesce(contentOf(f, "CountryRegion"), contentOf(f, "Nationality"), mi == null ? null : mi.nationality()));
+
+        return new DocSignals(docRef, idInfo,
+                mrzValid,
+                nameMismatch || docNoMismatch || dobMismatch,
+                expired,
+                quality,
+                croppingHint,
+                List.copyOf(reasons),
+                true, null, null);
+    }
+
+
+    // ---- small helpers for robust name extraction ----
+    private static String firstNonBlank(String... vals){
+        if (vals == null) return null;
+        for (String v : vals) if (v != null && !v.isBlank()) return v.trim();
+        return null;
+    }
+    private static String joinName(String left, String right){
+        if ((left == null || left.isBlank()) && (right == null || right.isBlank())) return null;
+        if (left == null || left.isBlank()) return right.trim();
+        if (right == null || right.isBlank()) return left.trim();
+        return (left + " " + right).trim().replaceAll("\\s+", " ");
+    }
+
+    // --------- Utils ---------
+
+    private static String getenvOrThrow(String k){
+        String v = System.getenv(k);
+        if (v == null || v.isBlank()) throw new IllegalStateException("Missing env: " + k);
+        return v;
+    }
+    private static String contentOf(Map<String, DocumentField> f, String key){
+        try {
+            DocumentField df = f.get(key);
+            if (df == null) return null;
+            // Prefer content if present; else fall back to valueString
+            String c = df.getContent();
+            if (c != null && !c.isBlank()) return c;
+            String vs = df.getValueString();
+            return (vs != null && !vs.isBlank()) ? vs : null;
+        } catch (Throwable ignore){ return null; }
+    }
+    private static String dateOf(Map<String, DocumentField> f, String key){
+        try {
+            DocumentField df = f.get(key);
+            if (df == null) return null;
+            if (df.getValueDate() != null) return df.getValueDate().toString(); // YYYY-MM-DD
+            // bazı kimliklerde tarih string gelebilir
+            String vs = df.getValueString();
+            return (vs != null && vs.matches("\\d{4}-\\d{2}-\\d{2}")) ? vs : null;
+        } catch (Throwable ignore){ return null; }
+    }
+    private static boolean safeEqualsNorm(String a, String b){
+        if (a == null || b == null) return false;
+        return normalize(a).equals(normalize(b));
+    }
+    private static String normalize(String s){
+        return s==null? "" : s.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]","");
+    }
+    private static String coalesce(String... ss){
+        for (String s: ss) if (s != null && !s.isBlank()) return s;
+        return null;
+    }
+    private static double clamp(double v, double lo, double hi){ return Math.max(lo, Math.min(hi, v)); }
+
+    private DocSignals httpErr(HttpResponseException ex){
+        String body = null;
+        Integer status = null;
+        try {
+            if (ex.getResponse() != null) {
+                status = ex.getResponse().getStatusCode();
+                body = ex.getResponse().getBodyAsString().block();
+            }
+        } catch (Throwable ignore){}
+
+        String msg = (status != null ? status + " " : "") + ex.getMessage()
+                + (body != null ? (" :: " + body) : "");
+        return err("analyze-failed", msg);
+    }
+
+    private DocSignals err(String code, String msg){
+        return DocSignals.error(code, msg);
+    }
+
+    // Not used currently; kept for potential future use.
+    @SuppressWarnings("unused")
+    private static String guessContentType(String path) {
+        String p = path.toLowerCase(Locale.ROOT);
+        if (p.endsWith(".png"))  return "image/png";
+        if (p.endsWith(".jpg") || p.endsWith(".jpeg")) return "image/jpeg";
+        if (p.endsWith(".pdf"))  return "application/pdf";
+        return "application/octet-stream";
+    }
+}
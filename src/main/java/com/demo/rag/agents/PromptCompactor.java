@@ -0,0 +1,196 @@
+package com.demo.rag.agents;
+
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.dto.ScreeningResult.SanctionsHit;
+import com.demo.rag.dto.ScreeningResult.ScreeningMatch;
+import com.demo.rag.dto.TransactionDto;
+import com.demo.rag.fraud.FraudRules;
+import com.demo.rag.fraud.TransactionColumns;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * PromptCompactor
+ *
+ * Projects agent inputs down to what the model needs and serializes them compactly:
+ * - sanctions: counts, reasons and the top RISK_PROMPT_MAX_MATCHES (default 5) matches as
+ *   {name, dob, country, list, program, sim, dobMatch, strength} — no debug block, ids, aliases or backend scores,
+ * - doc signals: the flags, quality and reasons (identity fields were already used for screening),
+ * - fraud result: level, heuristics and up to 5 reasons (raw text truncated),
+ * - transactions: a header + CSV rows up to FRAUD_PROMPT_MAX_TXS (default 50); longer lists become
+ *   aggregates (span, amounts, per-channel / per-country counts, devices, near-threshold cash) plus the
+ *   latest FRAUD_PROMPT_SAMPLE_TXS (default 20) rows.
+ * Null fields are omitted everywhere.
+ */
+final class PromptCompactor {
+
+    /** Part of the prompt versions: changing the encoding invalidates cached answers. */
+    static final String VERSION = "compact-v1";
+
+    private static final int MAX_REASONS = 5;
+    private static final int MAX_RAW = 500;
+    private static final String TX_HEADER = "ts,amt,country,channel,device";
+
+    private final ObjectMapper om;
+    private final int maxMatches;
+    private final int maxTxs;
+    private final int sampleTxs;
+
+    PromptCompactor(ObjectMapper objectMapper) {
+        this.om = objectMapper;
+        this.maxMatches = Integer.parseInt(Optional.ofNullable(System.getenv("RISK_PROMPT_MAX_MATCHES")).orElse("5"));
+        this.maxTxs = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_PROMPT_MAX_TXS")).orElse("50"));
+        this.sampleTxs = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_PROMPT_SAMPLE_TXS")).orElse("20"));
+    }
+
+    String sanctions(ScreeningResult s) {
+        if (s == null) return "null";
+        Map<String, Object> m = new LinkedHashMap<>();
+        put(m, "count", s.count());
+        put(m, "strong", s.strongCount());
+        put(m, "weak", s.weakCount());
+        put(m, "reasons", s.reasons() == null || s.reasons().isEmpty() ? null : s.reasons());
+        if (s.matches() != null && !s.matches().isEmpty()) {
+            List<ScreeningMatch> ordered = new ArrayList<>(s.matches());
+            ordered.sort(Comparator.comparing((ScreeningMatch x) -> !x.strong())
+                    .thenComparing(Comparator.comparingDouble(ScreeningMatch::nameSimilarity).reversed()));
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (ScreeningMatch x : ordered.subList(0, Math.min(maxMatches, ordered.size()))) {
+                Map<String, Object> r = new LinkedHashMap<>();
+                SanctionsHit d = x.doc();
+                if (d != null) {
+                    put(r, "name", d.name());
+                    put(r, "dob", d.birthDate());
+                    put(r, "country", d.country());
+                    put(r, "list", d.list());
+                    put(r, "program", d.program());
+                }
+                r.put("sim", x.nameSimilarity());
+                r.put("dobMatch", x.dobMatch());
+                put(r, "strength", x.strength());
+                rows.add(r);
+            }
+            m.put("matches", rows);
+            if (ordered.size() > maxMatches) m.put("moreMatches", ordered.size() - maxMatches);
+        }
+        return json(m);
+    }
+
+    String doc(DocSignals d) {
+        if (d == null) return "null";
+        Map<String, Object> m = new LinkedHashMap<>();
+        put(m, "error", d.error());
+        put(m, "message", d.message() == null || d.message().isBlank() ? null : truncate(d.message(), 200));
+        put(m, "mrzValid", d.mrzValid());
+        put(m, "identityMismatch", d.identityMismatch());
+        put(m, "expired", d.expired());
+        put(m, "quality", d.quality() == null ? null : Math.round(d.quality() * 100) / 100.0);
+        put(m, "croppingHint", d.croppingHint());
+        put(m, "country", d.idInfo() == null ? null : d.idInfo().country());
+        put(m, "reasons", d.reasons() == null || d.reasons().isEmpty() ? null : d.reasons());
+        return json(m);
+    }
+
+    String fraud(FraudResult f) {
+        if (f == null) return "null";
+        Map<String, Object> m = new LinkedHashMap<>();
+        put(m, "suspicionLevel", f.suspicionLevel());
+        put(m, "heuristics", f.heuristics() == null || f.heuristics().isEmpty() ? null : f.heuristics());
+        put(m, "reasons", f.reasons() == null || f.reasons().isEmpty() ? null
+                : f.reasons().subList(0, Math.min(MAX_REASONS, f.reasons().size())));
+        put(m, "raw", f.raw() == null ? null : truncate(f.raw(), MAX_RAW));
+        return json(m);
+    }
+
+    /** CSV rows for short lists, aggregates + latest rows for long ones. */
+    String transactions(List<TransactionDto> all) {
+        List<TransactionDto> txs = all == null ? List.of() : all.stream().filter(Objects::nonNull).toList();
+        if (txs.isEmpty()) return "none";
+        if (txs.size() <= maxTxs) return TX_HEADER + "\n" + rows(txs);
+
+        TransactionColumns c = TransactionColumns.of(txs);
+        int[] order = c.sortedOrder();
+        long from = Long.MAX_VALUE, to = Long.MIN_VALUE;
+        double total = 0, max = 0;
+        int nearCash = 0;
+        int cash = c.channelId(FraudRules.CASH_DEPOSIT);
+        Map<String, double[]> byChannel = new TreeMap<>();   // {count, sum}
+        Map<String, Integer> byCountry = new TreeMap<>();
+        for (int i = 0; i < c.size(); i++) {
+            long ts = c.ts(i);
+            if (ts != TransactionColumns.NO_TS) { from = Math.min(from, ts); to = Math.max(to, ts); }
+            double a = c.amount(i);
+            total += a;
+            max = Math.max(max, a);
+            if (cash >= 0 && c.channel(i) == cash && FraudRules.nearThreshold(a)) nearCash++;
+            String ch = Objects.requireNonNullElse(c.channelName(c.channel(i)), "?");
+            double[] agg = byChannel.computeIfAbsent(ch, k -> new double[2]);
+            agg[0]++;
+            agg[1] += a;
+            byCountry.merge(Objects.requireNonNullElse(c.countryName(c.country(i)), "?"), 1, Integer::sum);
+        }
+
+        Map<String, Object> agg = new LinkedHashMap<>();
+        agg.put("count", c.size());
+        if (from <= to) {
+            agg.put("from", Instant.ofEpochMilli(from).toString());
+            agg.put("to", Instant.ofEpochMilli(to).toString());
+        }
+        agg.put("totalAmt", new BigDecimal(num(total)));
+        agg.put("maxAmt", new BigDecimal(num(max)));
+        Map<String, String> channels = new LinkedHashMap<>();
+        byChannel.forEach((k, v) -> channels.put(k, (long) v[0] + "/" + num(v[1]))); // count/sum
+        agg.put("byChannel(count/sum)", channels);
+        agg.put("byCountry", byCountry);
+        agg.put("distinctDevices", c.deviceCount());
+        agg.put("nearThresholdCash", nearCash);
+
+        List<TransactionDto> latest = new ArrayList<>(sampleTxs);
+        for (int p = Math.max(0, order.length - sampleTxs); p < order.length; p++) latest.add(txs.get(order[p]));
+        return "AGGREGATES=" + json(agg) + "\nLATEST " + latest.size() + " of " + txs.size() + ":\n"
+                + TX_HEADER + "\n" + rows(latest);
+    }
+
+    // ---------------- helpers ----------------
+
+    private static String rows(List<TransactionDto> txs) {
+        StringBuilder sb = new StringBuilder(txs.size() * 48);
+        for (TransactionDto t : txs) {
+            if (t == null) continue;
+            sb.append(cell(t.ts())).append(',')
+                    .append(t.amt() == null ? "" : num(t.amt())).append(',')
+                    .append(cell(t.country())).append(',')
+                    .append(cell(t.channel())).append(',')
+                    .append(cell(t.device())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String cell(String s) {
+        return s == null ? "" : s.replace(',', ' ').replace('\n', ' ');
+    }
+
+    /** 9500 instead of 9500.0, two decimals at most. */
+    private static String num(double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) return Long.toString((long) d);
+        return Double.toString(Math.round(d * 100) / 100.0);
+    }
+
+    private static String truncate(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max) + "…";
+    }
+
+    private static void put(Map<String, Object> m, String k, Object v) {
+        if (v != null) m.put(k, v);
+    }
+
+    private String json(Object o) {
+        try { return om.writeValueAsString(o); }
+        catch (Exception e) { return "{}"; }
+    }
+}
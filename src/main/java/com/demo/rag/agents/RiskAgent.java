@@ -1,20 +1,69 @@
 package com.demo.rag.agents;
 
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.RiskEnvelope;
+import com.demo.rag.dto.RiskEnvelope.ModelInfo;
+import com.demo.rag.dto.RiskEnvelope.RiskInputs;
+import com.demo.rag.dto.RiskEnvelope.RiskOutput;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.util.SingleFlight;
+import com.demo.rag.util.TokenMeter;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
 import dev.langchain4j.model.azure.AzureOpenAiChatModel;
+import dev.langchain4j.model.azure.AzureOpenAiStreamingChatModel;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.core.type.TypeReference;
 import org.springframework.stereotype.Service;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class RiskAgent {
 
+    private static final String SYSTEM_PROMPT =
+            "SYSTEM: You are a KYC/KYX risk scorer. " +
+                    "Return STRICT JSON only with the following shape:\n" +
+                    "{\n" +
+                    "  \"result\": {\"riskScore\": 0-100, \"level\": \"LOW|MEDIUM|HIGH\", \"reasons\": [string], \"recommendation\": string},\n" +
+                    "  \"breakdown\": {\"sanctions\": number, \"doc\": number, \"fraud\": number}\n" +
+                    "}\n" +
+                    "No prose, no extra keys.";
+
+    private static final String CALIBRATION =
+            "Calibrate: sanctions up to ~60, doc up to ~30, fraud up to ~10. " +
+                    "If evidence is weak, lower the respective component.\n" +
+                    "Return JSON only.";
+
+    /** Part of the response cache key: editing the prompt text invalidates cached answers by itself. */
+    static final String PROMPT_VERSION = "risk-" + Integer.toHexString(
+            (SYSTEM_PROMPT + CALIBRATION + PromptCompactor.VERSION).hashCode());
+
+    /** ModelInfo.path values. */
+    public static final String PATH_RULES = "rules", PATH_CACHE = "cache", PATH_LLM = "llm";
+
+    public record PathStats(long rules, long cache, long llm) { }
+
     private final AzureOpenAiChatModel model;
+    private final AzureOpenAiStreamingChatModel streamingModel;
     private final ObjectMapper om;
     private final String deployment;
+    private final RiskResponseCache cache;
+    private final RiskFastPath fastPath = new RiskFastPath();
+    private final SingleFlight<String, RiskOutput> flight = new SingleFlight<>();
+    private final TokenMeter tokens = new TokenMeter();
+    private final PromptCompactor compactor;
+    private final AtomicLong rulesPath = new AtomicLong(), cachePath = new AtomicLong(), llmPath = new AtomicLong();
 
     public RiskAgent(ObjectMapper objectMapper) {
         String endpoint   = System.getenv("AZURE_OPENAI_ENDPOINT");
@@ -27,88 +76,128 @@ public class RiskAgent {
                 .deploymentName(deployment)
                 .temperature(0.1)
                 .build();
+        this.streamingModel = AzureOpenAiStreamingChatModel.builder()
+                .endpoint(endpoint)
+                .apiKey(apiKey)
+                .deploymentName(deployment)
+                .temperature(0.1)
+                .build();
 
         this.om = objectMapper; // Spring'in JSR-310 yüklü mapper'ı
+        this.cache = new RiskResponseCache(objectMapper);
+        this.compactor = new PromptCompactor(objectMapper);
     }
 
     /** Eski minimal sürümü korumak istersen: */
-    public String score(String sanctionsContext, String docSignalsJson, String fraudJson) {
-        return scoreDetailed(sanctionsContext, docSignalsJson, fraudJson);
+    public RiskEnvelope score(ScreeningResult sanctionsContext, DocSignals docSignals, FraudResult fraud) {
+        return scoreDetailed(sanctionsContext, docSignals, fraud);
     }
 
-    /** Yeni, okunur "zarf" JSON döner. */
-    public String scoreDetailed(String sanctionsContext, String docSignalsJson, String fraudJson) {
-        // 1) LLM'den breakdown'lı sonuç iste
-        String sys =
-                "SYSTEM: You are a KYC/KYX risk scorer. " +
-                        "Return STRICT JSON only with the following shape:\n" +
-                        "{\n" +
-                        "  \"result\": {\"riskScore\": 0-100, \"level\": \"LOW|MEDIUM|HIGH\", \"reasons\": [string], \"recommendation\": string},\n" +
-                        "  \"breakdown\": {\"sanctions\": number, \"doc\": number, \"fraud\": number}\n" +
-                        "}\n" +
-                        "No prose, no extra keys.";
-
-        String usr =
-                "SanctionsContext=" + sanctionsContext + "\n" +
-                        "DocSignals=" + docSignalsJson + "\n" +
-                        "FraudSignals=" + fraudJson + "\n" +
-                        "Calibrate: sanctions up to ~60, doc up to ~30, fraud up to ~10. " +
-                        "If evidence is weak, lower the respective component.\n" +
-                        "Return JSON only.";
-
-        String llmRaw = model.chat(sys + "\n" + usr);
-
-        // 2) LLM sonucunu JSON'a parse et (hata halinde olduğu gibi bırak)
-        JsonNode llmNode;
-        try {
-            llmNode = om.readTree(llmRaw);
-        } catch (Exception e) {
-            // LLM JSON'u bozuksa, en azından raw döndür
-            return wrapEnvelope(sanctionsContext, docSignalsJson, fraudJson, Map.of("raw", llmRaw));
+    /** Yeni, okunur "zarf" döner (HTTP katmanında bir kez serileştirilir). */
+    public RiskEnvelope scoreDetailed(ScreeningResult sanctionsContext, DocSignals docSignals, FraudResult fraud) {
+        return scoreDetailed(sanctionsContext, docSignals, fraud, null);
+    }
+
+    /**
+     * Same as {@link #scoreDetailed(ScreeningResult, DocSignals, FraudResult)}, but a model call is streamed and
+     * each partial text is handed to {@code onToken}. Rule / cache answers (and answers shared with an identical
+     * in-flight call) arrive without tokens.
+     */
+    public RiskEnvelope scoreDetailed(ScreeningResult sanctionsContext, DocSignals docSignals, FraudResult fraud,
+                                      Consumer<String> onToken) {
+        RiskInputs inputs = new RiskInputs(sanctionsContext, docSignals, fraud, null, null);
+
+        // 0a) Net vakalar (temiz / güçlü yaptırım eşleşmesi) kurallarla skorlanır, LLM çağrılmaz
+        Optional<RiskOutput> ruled = fastPath.decide(sanctionsContext, docSignals, fraud);
+        if (ruled.isPresent()) {
+            rulesPath.incrementAndGet();
+            return new RiskEnvelope(inputs, new ModelInfo("rules", null, RiskFastPath.VERSION, PATH_RULES, false),
+                    ruled.get());
         }
 
-        Map<String, Object> llmMap = om.convertValue(llmNode, new TypeReference<Map<String,Object>>(){});
-        return wrapEnvelope(sanctionsContext, docSignalsJson, fraudJson, llmMap);
+        // 0b) Modelin göreceği girdiler + deployment + prompt sürümü daha önce skorlandıysa LLM'e gitme
+        String sanctionsText = compactor.sanctions(sanctionsContext);
+        String docText = compactor.doc(docSignals);
+        String fraudText = compactor.fraud(fraud);
+        String key = cache.key(deployment, PROMPT_VERSION, sanctionsText, docText, fraudText);
+        RiskOutput cached = cache.get(key);
+        if (cached != null) {
+            cachePath.incrementAndGet();
+            return new RiskEnvelope(inputs, modelInfo(true), cached);
+        }
+
+        // 1) Aynı anahtarla uçuşta olan bir çağrı varsa onun cevabını paylaş (gerçek çağrı sayısı: flightStats)
+        llmPath.incrementAndGet();
+        RiskOutput output = flight.run(key, () -> callModel(sanctionsText, docText, fraudText, key, onToken));
+
+        return new RiskEnvelope(inputs, modelInfo(false), output);
     }
 
-    // ---------- helpers ----------
+    public RiskResponseCache.Stats cacheStats() { return cache.stats(); }
 
-    /** Zarfı kur: inputs + model + output */
-    private String wrapEnvelope(String sanctionsContext, String docSignalsJson, String fraudJson,
-                                Map<String, Object> llmOutput) {
-        Map<String, Object> envelope = new LinkedHashMap<>();
+    public SingleFlight.Stats flightStats() { return flight.stats(); }
 
-        envelope.put("inputs", Map.of(
-                "sanctionsContext", parseOrRaw(sanctionsContext),
-                "docSignals",       parseOrRaw(docSignalsJson),
-                "fraudSignals",     parseOrRaw(fraudJson)
-        ));
+    public TokenMeter.Stats tokenStats() { return tokens.stats(); }
 
-        envelope.put("model", Map.of(
-                "provider", "Azure OpenAI",
-                "deployment", this.deployment
-        ));
+    /** How many scorings took each path since startup. */
+    public PathStats pathStats() { return new PathStats(rulesPath.get(), cachePath.get(), llmPath.get()); }
 
-        envelope.put("output", llmOutput);
+    // ---------- helpers ----------
+
+    private ModelInfo modelInfo(boolean cached) {
+        return new ModelInfo("Azure OpenAI", deployment, PROMPT_VERSION, cached ? PATH_CACHE : PATH_LLM, cached);
+    }
 
+    /** Inputs are the {@link PromptCompactor} sections the cache key was built from. */
+    private RiskOutput callModel(String sanctionsText, String docText, String fraudText,
+                                 String key, Consumer<String> onToken) {
+        // LLM'den breakdown'lı sonuç iste; girdiler modelin ihtiyaç duyduğu alanlara indirgenir
+        Map<String, String> sections = new LinkedHashMap<>();
+        sections.put("system", SYSTEM_PROMPT + "\n");
+        sections.put("sanctions", "SanctionsContext=" + sanctionsText + "\n");
+        sections.put("doc", "DocSignals=" + docText + "\n");
+        sections.put("fraud", "FraudSignals=" + fraudText + "\n");
+        sections.put("calibration", CALIBRATION);
+
+        UserMessage prompt = UserMessage.from(String.join("", sections.values()));
+        ChatResponse response = onToken == null ? model.chat(prompt) : stream(prompt, onToken);
+        String llmRaw = response.aiMessage().text();
+        TokenUsage usage = response.tokenUsage();
+        tokens.record(TokenMeter.estimate(sections),
+                usage == null ? null : usage.inputTokenCount(), usage == null ? null : usage.outputTokenCount());
+
+        // LLM sonucunu parse et (hata halinde raw olarak bırak)
+        RiskOutput output;
         try {
-            return om.writerWithDefaultPrettyPrinter().writeValueAsString(envelope);
+            output = om.readValue(llmRaw, RiskOutput.class);
         } catch (Exception e) {
-            try { return om.writeValueAsString(envelope); }
-            catch (Exception ignored) { return "{\"error\":\"serialization-failed\"}"; }
+            output = RiskOutput.raw(llmRaw);
         }
+        cache.put(key, output); // yalnızca parse edilmiş sonuçlar saklanır
+
+        return output;
     }
 
-    private Object parseOrRaw(String maybeJson) {
-        if (maybeJson == null) return null;
-        try {
-            return om.readValue(maybeJson, new TypeReference<Map<String,Object>>(){});
-        } catch (Exception e) {
-            try {
-                return om.readValue(maybeJson, new TypeReference<Object>(){}); // array vs. olabilir
-            } catch (Exception ex) {
-                return Map.of("raw", maybeJson);
+    /** Streams one chat call; a failing consumer (e.g. closed client) does not abort the call. */
+    private ChatResponse stream(UserMessage prompt, Consumer<String> onToken) {
+        CompletableFuture<ChatResponse> done = new CompletableFuture<>();
+        streamingModel.chat(List.<ChatMessage>of(prompt), new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partial) {
+                try { onToken.accept(partial); } catch (RuntimeException ignored) { }
             }
+
+            @Override
+            public void onCompleteResponse(ChatResponse response) { done.complete(response); }
+
+            @Override
+            public void onError(Throwable error) { done.completeExceptionally(error); }
+        });
+        try {
+            return done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
         }
     }
 }
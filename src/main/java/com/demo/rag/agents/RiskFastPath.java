@@ -0,0 +1,126 @@
+package com.demo.rag.agents;
+
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.RiskEnvelope.Breakdown;
+import com.demo.rag.dto.RiskEnvelope.Result;
+import com.demo.rag.dto.RiskEnvelope.RiskOutput;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.dto.ScreeningResult.ScreeningMatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * RiskFastPath
+ *
+ * Deterministic scorer for clear-cut cases, using the prompt's weighting (sanctions ~60, doc ~30, fraud ~10):
+ * - LOW: screening ran with no matches, the document parsed with mrzValid=true, not expired, no identity
+ *   mismatch or cropping and quality >= RISK_FAST_PATH_MIN_QUALITY (default 0.6), and no fraud heuristics
+ *   with suspicion LOW or absent;
+ * - HIGH: at least one strong sanctions match (DOB match + high name similarity), whatever the rest says.
+ * Anything else is mixed evidence and returns empty: RiskAgent asks the model.
+ *
+ * RISK_FAST_PATH_ENABLED=false sends everything to the model.
+ */
+public final class RiskFastPath {
+
+    /** Reported as promptVersion for rule-scored envelopes; bump when the rules change. */
+    static final String VERSION = "rules-v1";
+
+    private final boolean enabled;
+    private final double minQuality;
+
+    RiskFastPath() {
+        this.enabled = Boolean.parseBoolean(
+                Optional.ofNullable(System.getenv("RISK_FAST_PATH_ENABLED")).orElse("true"));
+        this.minQuality = Double.parseDouble(
+                Optional.ofNullable(System.getenv("RISK_FAST_PATH_MIN_QUALITY")).orElse("0.6"));
+    }
+
+    /** Rule-based output when the case is unambiguous, empty when the model should decide. */
+    Optional<RiskOutput> decide(ScreeningResult sanctions, DocSignals doc, FraudResult fraud) {
+        if (!enabled || sanctions == null) return Optional.empty();
+        if (n(sanctions.strongCount()) > 0) return Optional.of(high(sanctions, doc, fraud));
+        if (cleanScreening(sanctions) && cleanDoc(doc) && cleanFraud(fraud)) return Optional.of(low(doc));
+        return Optional.empty();
+    }
+
+    // ---------------- outcomes ----------------
+
+    private static RiskOutput low(DocSignals doc) {
+        // residual doc points for imperfect-but-acceptable scans (at most ~4 at the default minimum quality)
+        double docPts = doc.quality() == null ? 0 : Math.round((1 - doc.quality()) * 10);
+        int score = (int) docPts;
+        return new RiskOutput(
+                new Result(score, "LOW",
+                        List.of("No sanctions matches", "Document MRZ valid and not expired", "No fraud heuristics fired"),
+                        "Proceed with standard onboarding."),
+                new Breakdown(0.0, docPts, 0.0),
+                null);
+    }
+
+    private static RiskOutput high(ScreeningResult sanctions, DocSignals doc, FraudResult fraud) {
+        List<String> reasons = new ArrayList<>();
+        ScreeningMatch top = sanctions.matches() == null ? null
+                : sanctions.matches().stream().filter(ScreeningMatch::strong).findFirst().orElse(null);
+        if (top != null && top.doc() != null) {
+            reasons.add("Strong sanctions match: " + top.doc().name()
+                    + (top.doc().list() == null ? "" : " (" + top.doc().list() + ")")
+                    + ", name similarity " + top.nameSimilarity() + ", DOB match");
+        } else {
+            reasons.add("Strong sanctions match (DOB match + high name similarity)");
+        }
+
+        double docPts = 0;
+        if (doc != null && !doc.hasError()) {
+            if (Boolean.FALSE.equals(doc.mrzValid())) { docPts += 10; reasons.add("MRZ invalid"); }
+            if (Boolean.TRUE.equals(doc.expired())) { docPts += 10; reasons.add("Document expired"); }
+            if (Boolean.TRUE.equals(doc.identityMismatch())) { docPts += 10; reasons.add("Identity mismatch"); }
+        }
+
+        double fraudPts = 0;
+        if (fraud != null) {
+            String lvl = fraud.suspicionLevel() == null ? "" : fraud.suspicionLevel().toUpperCase(Locale.ROOT);
+            fraudPts = "HIGH".equals(lvl) ? 10 : "MEDIUM".equals(lvl) ? 5 : 0;
+            if (fraud.heuristics() != null && !fraud.heuristics().isEmpty()) {
+                fraudPts = Math.min(10, fraudPts + 2 * fraud.heuristics().size());
+                reasons.add("Fraud heuristics: " + String.join(", ", fraud.heuristics()));
+            }
+        }
+
+        int score = (int) Math.min(100, 60 + docPts + fraudPts);
+        return new RiskOutput(
+                new Result(score, "HIGH", reasons, "Escalate to compliance; do not onboard pending review."),
+                new Breakdown(60.0, docPts, fraudPts),
+                null);
+    }
+
+    // ---------------- conditions ----------------
+
+    /** strongCount/weakCount are only set when a screening actually ran (not for "name missing"). */
+    private static boolean cleanScreening(ScreeningResult s) {
+        return s.strongCount() != null && s.weakCount() != null
+                && s.strongCount() == 0 && s.weakCount() == 0
+                && (s.matches() == null || s.matches().isEmpty());
+    }
+
+    private boolean cleanDoc(DocSignals d) {
+        return d != null && !d.hasError()
+                && Boolean.TRUE.equals(d.mrzValid())
+                && !Boolean.TRUE.equals(d.expired())
+                && !Boolean.TRUE.equals(d.identityMismatch())
+                && !Boolean.TRUE.equals(d.croppingHint())
+                && (d.quality() == null || d.quality() >= minQuality);
+    }
+
+    private static boolean cleanFraud(FraudResult f) {
+        if (f == null || f.raw() != null) return false; // unparsed model text is not evidence either way
+        boolean lowOrNone = f.suspicionLevel() == null || "LOW".equalsIgnoreCase(f.suspicionLevel());
+        return lowOrNone && (f.heuristics() == null || f.heuristics().isEmpty());
+    }
+
+    private static int n(Integer i) { return i == null ? 0 : i; }
+}
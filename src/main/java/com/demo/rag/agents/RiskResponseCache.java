@@ -0,0 +1,137 @@
+package com.demo.rag.agents;
+
+import com.demo.rag.dto.RiskEnvelope.RiskOutput;
+import com.demo.rag.util.Sha256;
+import com.demo.rag.util.TtlLruCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * RiskResponseCache
+ *
+ * RiskAgent answers keyed by SHA-256(deployment | prompt version | prompt input sections):
+ * - the sections are the {@link PromptCompactor} output the model actually reads, so fields it never sees
+ *   (debug blocks, document refs, backend scores, hit ids / aliases) do not split the cache; the prompt
+ *   version covers the encoding,
+ * - in memory: {@link TtlLruCache} bounded by RISK_CACHE_MAX (default 5000) and RISK_CACHE_TTL_SECONDS (default 86400),
+ * - on disk (optional): RISK_CACHE_FILE, an append-only NDJSON log {k, exp, v} replayed at startup;
+ *   expired lines are skipped and the log is rewritten when it holds more than twice the live entries.
+ *
+ * RISK_CACHE_ENABLED=false turns it off. Only parsed answers are cached (never raw / unparseable text).
+ */
+public final class RiskResponseCache {
+
+    /** Counters for /api/metrics. */
+    public record Stats(boolean enabled, String file, long persistErrors, TtlLruCache.Stats memory) { }
+
+    private final ObjectMapper om;
+    private final boolean enabled;
+    private final TtlLruCache<String, RiskOutput> cache;
+    private final Path file;
+    private BufferedWriter log;
+    private long persistErrors;
+
+    RiskResponseCache(ObjectMapper objectMapper) {
+        this.om = objectMapper;
+        this.enabled = Boolean.parseBoolean(Optional.ofNullable(System.getenv("RISK_CACHE_ENABLED")).orElse("true"));
+        this.cache = new TtlLruCache<>(
+                Integer.parseInt(Optional.ofNullable(System.getenv("RISK_CACHE_MAX")).orElse("5000")),
+                Long.parseLong(Optional.ofNullable(System.getenv("RISK_CACHE_TTL_SECONDS")).orElse("86400")) * 1000L);
+        this.file = Optional.ofNullable(System.getenv("RISK_CACHE_FILE"))
+                .filter(s -> !s.isBlank()).map(Path::of).orElse(null);
+
+        if (enabled && file != null) {
+            try {
+                restore();
+            } catch (IOException e) {
+                persistErrors++; // disk problems only cost hits, never a request
+            }
+        }
+    }
+
+    boolean enabled() { return enabled; }
+
+    /** Cache key of one scoring request; {@code sections}: the compacted prompt inputs, in prompt order. */
+    String key(String deployment, String promptVersion, String... sections) {
+        String[] parts = new String[sections.length + 2];
+        parts[0] = deployment;
+        parts[1] = promptVersion;
+        System.arraycopy(sections, 0, parts, 2, sections.length);
+        return Sha256.hex(parts);
+    }
+
+    RiskOutput get(String key) {
+        return enabled ? cache.get(key) : null;
+    }
+
+    void put(String key, RiskOutput output) {
+        if (!enabled || output == null || output.result() == null) return;
+        long exp = System.currentTimeMillis() + cache.ttlMillis();
+        cache.put(key, output, exp);
+        if (file != null) append(key, exp, output);
+    }
+
+    synchronized Stats stats() {
+        return new Stats(enabled, file == null ? null : file.toString(), persistErrors, cache.stats());
+    }
+
+    // ---------------- internals ----------------
+
+    private synchronized void append(String key, long exp, RiskOutput output) {
+        try {
+            if (log == null) {
+                if (file.getParent() != null) Files.createDirectories(file.getParent());
+                log = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("k", key);
+            line.put("exp", exp);
+            line.put("v", output);
+            log.write(om.writeValueAsString(line));
+            log.newLine();
+            log.flush();
+        } catch (IOException e) {
+            persistErrors++;
+        }
+    }
+
+    private void restore() throws IOException {
+        if (!Files.isRegularFile(file)) return;
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+        Map<String, String> live = new LinkedHashMap<>(); // later lines win, order = recency
+        for (String l : lines) {
+            if (l.isBlank()) continue;
+            try {
+                JsonNode n = om.readTree(l);
+                String k = n.path("k").asText();
+                long exp = n.path("exp").asLong();
+                RiskOutput v = om.treeToValue(n.get("v"), RiskOutput.class);
+                if (exp < now || v == null || v.result() == null) continue;
+                cache.put(k, v, exp);
+                live.remove(k);
+                live.put(k, l);
+            } catch (Exception e) {
+                persistErrors++; // torn / foreign line: skip
+            }
+        }
+        if (lines.size() > 2 * Math.max(live.size(), 1)) {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, live.values(), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -9,19 +9,66 @@ import com.azure.search.documents.models.QueryType;
 import com.azure.search.documents.models.SearchMode;
 import com.azure.search.documents.models.SearchOptions;
 import com.azure.search.documents.util.SearchPagedIterable;
-import org.apache.commons.text.similarity.JaroWinklerSimilarity;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.dto.ScreeningResult.SanctionsHit;
+import com.demo.rag.dto.ScreeningResult.ScreeningMatch;
+import com.demo.rag.screening.FuzzyMatcher;
+import com.demo.rag.screening.LocalSanctionsIndex;
+import com.demo.rag.screening.NameNormalizer;
+import com.demo.rag.screening.SanctionsListVersion;
+import com.demo.rag.util.SingleFlight;
+import com.demo.rag.util.TtlLruCache;
 import org.springframework.stereotype.Service;
 
-import java.text.Normalizer;
 import java.util.*;
 
+/**
+ * ScreeningAgent
+ *
+ * Backends (SCREENING_BACKEND):
+ * - "search" (default): phrase query against the Azure AI Search sanctions index.
+ * - "local": in-process trigram index built from the sanctions CSV (no network hop).
+ *
+ * Both return the same {@link ScreeningResult}: count, strongCount, weakCount, matches[], reasons[], debug.
+ *
+ * Results are cached (SCREENING_CACHE_MAX entries, SCREENING_CACHE_TTL_SECONDS) per
+ * list version + backend + normalized name + DOB. The version moves when the data the backend reads changes:
+ * a sanctions sync that modified Search, or (local backend) the rebuilt snapshot being swapped in.
+ * Both backends are queried with that normalized name, never the caller's spelling, so one key is always
+ * one query ("Müller" and "muller" both search for "MULLER").
+ */
 @Service
 public class ScreeningAgent {
 
-    private final SearchClient client;
-    private final JaroWinklerSimilarity jw = new JaroWinklerSimilarity();
+    private static final int TOP = 10;
+    private static final double STRONG_SIMILARITY = 0.92;
 
-    public ScreeningAgent() {
+    private final String backend;
+    private final SearchClient client;               // null when backend=local
+    private final LocalSanctionsIndex localIndex;
+    private final double localMinScore;
+    private final int localCandidates;
+    private final SanctionsListVersion listVersion;
+    private final TtlLruCache<String, ScreeningResult> cache;
+    private final SingleFlight<String, ScreeningResult> flight = new SingleFlight<>();
+
+    public ScreeningAgent(LocalSanctionsIndex localIndex, SanctionsListVersion listVersion) {
+        this.backend = Optional.ofNullable(System.getenv("SCREENING_BACKEND")).orElse("search")
+                .trim().toLowerCase(Locale.ROOT);
+        this.localIndex = localIndex;
+        this.localMinScore = Double.parseDouble(
+                Optional.ofNullable(System.getenv("SCREENING_LOCAL_MIN_SCORE")).orElse("0.45"));
+        this.localCandidates = Integer.parseInt(
+                Optional.ofNullable(System.getenv("SCREENING_LOCAL_CANDIDATES")).orElse("200"));
+        this.listVersion = listVersion;
+        this.cache = new TtlLruCache<>(
+                Integer.parseInt(Optional.ofNullable(System.getenv("SCREENING_CACHE_MAX")).orElse("10000")),
+                Long.parseLong(Optional.ofNullable(System.getenv("SCREENING_CACHE_TTL_SECONDS")).orElse("3600")) * 1000L);
+
+        if (isLocal()) {
+            this.client = null;
+            return;
+        }
         String endpoint = getenvOrThrow("SEARCH_ENDPOINT");
         String index    = Optional.ofNullable(System.getenv("SEARCH_INDEX")).orElse("sanctions-demo");
         String key      = getenvOrThrow("SEARCH_API_KEY");
@@ -32,19 +79,28 @@ public class ScreeningAgent {
                 .buildClient();
     }
 
-    public String sanctionsScreen(String name, String dob) {
-        Map<String,Object> out = new LinkedHashMap<>();
-        List<Map<String,Object>> hits = new ArrayList<>();
-        List<String> reasons = new ArrayList<>();
+    public boolean isLocal() { return "local".equals(backend); }
 
-        if (name == null || name.isBlank()) {
-            out.put("count", 0);
-            out.put("matches", hits);
-            out.put("reasons", List.of("name missing"));
-            return toJson(out);
-        }
+    public TtlLruCache.Stats cacheStats() { return cache.stats(); }
+
+    public SingleFlight.Stats flightStats() { return flight.stats(); }
+
+    public ScreeningResult sanctionsScreen(String name, String dob) {
+        String q = normalize(name); // "" for null / blank / punctuation-only names
+        if (q.isEmpty()) return ScreeningResult.empty("name missing");
+        String d = dob == null ? "" : dob.trim();
+        String key = listVersion.current() + "|" + backend + "|" + q + "|" + d;
+        // cache misses for the same key while a lookup is running share that lookup
+        return cache.getOrCompute(key, k -> flight.run(k, () -> isLocal() ? screenLocal(q, d) : screenSearch(q, d)));
+    }
+
+    // --------- Azure AI Search backend ---------
+    /** {@code normQ}: the normalized name of the cache key. */
+    private ScreeningResult screenSearch(String normQ, String dob) {
+        List<ScreeningMatch> hits = new ArrayList<>();
+        List<String> reasons = new ArrayList<>();
 
-        String searchText = "\"" + name.trim() + "\""; // phrase-like
+        String searchText = "\"" + normQ + "\""; // phrase-like
         String filter = null;
         if (dob != null && !dob.isBlank()) {
             // birthDate field'i şema önerimizde STRING'ti:
@@ -58,62 +114,112 @@ public class ScreeningAgent {
                 .setQueryType(QueryType.SIMPLE)
                 .setSearchMode(SearchMode.ALL)
                 .setIncludeTotalCount(true)
-                .setTop(10);
+                .setTop(TOP);
 
         if (filter != null) opts.setFilter(filter);
 
         SearchPagedIterable results = client.search(searchText, opts, Context.NONE);
 
-        int strong = 0, weak = 0;
-        String normQ = normalize(name);
+        char[] q  = normQ.toCharArray();
+        char[] qs = FuzzyMatcher.tokenSorted(normQ);
 
         results.forEach(r -> {
             SearchDocument d = r.getDocument(SearchDocument.class);
             String hitName = asStr(d.get("name"));
             String hitDob  = asStr(d.get("birthDate"));
+            Object hitKey   = d.get("nameKey");   // stored at load time; older indexes lack them
+            Object aliasKey = d.get("aliasKeys");
 
-            double sim = jw.apply(normQ, normalize(hitName));
+            // at most TOP hits, all reported: exact similarity over name + alias variants
+            char[][] keys = aliasKey != null
+                    ? hitKeys(hitKey != null ? String.valueOf(hitKey) : normalize(hitName), String.valueOf(aliasKey), false)
+                    : hitKeys(hitKey != null ? String.valueOf(hitKey) : normalize(hitName), asStr(d.get("aliases")), true);
+            double sim = Math.max(0.0, FuzzyMatcher.best(q, qs, keys, sortedKeys(keys), 0.0));
             boolean dobMatch = (dob != null && !dob.isBlank() && dob.equals(hitDob));
-            boolean strongMatch = dobMatch && sim >= 0.92;
-
-            Map<String,Object> row = new LinkedHashMap<>();
-            row.put("score", r.getScore());
-            row.put("nameSimilarity", round(sim));
-            row.put("dobMatch", dobMatch);
-            row.put("strength", strongMatch ? "strong" : "weak");
+            boolean strongMatch = dobMatch && sim >= STRONG_SIMILARITY;
 
             // sadece gerekli alanları döndür (tüm doc'u değil)
-            Map<String,Object> doc = new LinkedHashMap<>();
-            doc.put("id",        d.get("id"));
-            doc.put("name",      hitName);
-            doc.put("birthDate", hitDob);
-            doc.put("country",   d.get("country"));
-            doc.put("list",      d.get("list"));
-            doc.put("program",   d.get("program"));
-            doc.put("aliases",   d.get("aliases"));
-            row.put("doc", doc);
-
-            hits.add(row);
-            if (strongMatch) { /* captured in outer scope via array hack if needed */ }
+            SanctionsHit doc = new SanctionsHit(asStr(d.get("id")), hitName, hitDob, asStr(d.get("country")),
+                    asStr(d.get("list")), asStr(d.get("program")), asStr(d.get("aliases")));
+
+            hits.add(matchRow(r.getScore(), sim, dobMatch, strongMatch, doc));
         });
 
-        // strong/weak say: (foreach içinde final olmayan sayaç güncellemek için yeniden geç)
-        for (Map<String,Object> h : hits) {
-            if ("strong".equals(h.get("strength"))) strong++; else weak++;
+        // Özet + debug (filter may be null, so no Map.of here)
+        Map<String,Object> debug = new LinkedHashMap<>();
+        debug.put("backend", "search");
+        debug.put("searchText", searchText);
+        debug.put("filter", filter);
+        debug.put("top", TOP);
+        return summarize(results.getTotalCount(), hits, reasons, debug);
+    }
+
+    // --------- In-process backend ---------
+    /** {@code normQ}: the normalized name of the cache key. */
+    private ScreeningResult screenLocal(String normQ, String dob) {
+        long t0 = System.nanoTime();
+        List<ScreeningMatch> hits = new ArrayList<>();
+        List<String> reasons = new ArrayList<>();
+
+        boolean hasDob = dob != null && !dob.isBlank();
+        if (!hasDob) reasons.add("dob missing -> weak screening");
+
+        LocalSanctionsIndex.Lookup lookup = localIndex.lookup(normQ, dob, localMinScore, localCandidates);
+        char[] q  = normQ.toCharArray();
+        char[] qs = FuzzyMatcher.tokenSorted(normQ);
+
+        // Strong = DOB match + similarity >= threshold; candidates that cannot get there are pruned early
+        List<Scored> scored = new ArrayList<>(lookup.top().size());
+        for (LocalSanctionsIndex.Candidate c : lookup.top()) {
+            LocalSanctionsIndex.Entry e = c.entry();
+            boolean dobMatch = hasDob && e.hasDob(dob.trim());
+            double sim = dobMatch
+                    ? FuzzyMatcher.best(q, qs, e.keys(), e.sortedKeys(), STRONG_SIMILARITY)
+                    : FuzzyMatcher.BELOW;
+            scored.add(new Scored(c, dobMatch, sim));
+        }
+        scored.sort(Comparator.comparing((Scored x) -> x.sim() != FuzzyMatcher.BELOW).reversed()
+                .thenComparing(Comparator.comparingDouble((Scored x) -> x.candidate().score()).reversed()));
+
+        for (Scored sc : scored.subList(0, Math.min(TOP, scored.size()))) {
+            LocalSanctionsIndex.Entry e = sc.candidate().entry();
+            boolean strongMatch = sc.sim() != FuzzyMatcher.BELOW;
+            // only the reported rows get an exact (unpruned) similarity
+            double sim = strongMatch ? sc.sim() : Math.max(0.0, FuzzyMatcher.best(q, qs, e.keys(), e.sortedKeys(), 0.0));
+
+            SanctionsHit doc = new SanctionsHit(e.id(), e.name(), e.birthDate(), e.country(),
+                    e.list(), e.program(), e.aliases());
+
+            hits.add(matchRow(round(sc.candidate().score()), sim, sc.dobMatch(), strongMatch, doc));
         }
 
-        // Özet + debug
-        out.put("count", results.getTotalCount());
-        out.put("strongCount", strong);
-        out.put("weakCount", weak);
-        out.put("matches", hits);
-        out.put("reasons", reasons);
-        out.put("debug", Map.of(
-                "searchText", searchText,
-                "filter", filter,
-                "top", 10
-        ));
-        return toJson(out);
+        Map<String,Object> debug = new LinkedHashMap<>();
+        debug.put("backend", "local");
+        debug.put("query", normQ);
+        debug.put("dobFilter", hasDob ? dob.trim() : null);
+        debug.put("minScore", localMinScore);
+        debug.put("candidates", lookup.top().size());
+        debug.put("top", TOP);
+        debug.put("indexSize", localIndex.size());
+        debug.put("elapsedMicros", (System.nanoTime() - t0) / 1_000);
+        return summarize((long) lookup.total(), hits, reasons, debug);
+    }
+
+    private record Scored(LocalSanctionsIndex.Candidate candidate, boolean dobMatch, double sim) { }
+
+    // --------- shared result shape ---------
+    private static ScreeningMatch matchRow(double score, double sim, boolean dobMatch, boolean strongMatch,
+                                           SanctionsHit doc) {
+        return new ScreeningMatch(score, round(sim), dobMatch, strongMatch ? "strong" : "weak", doc);
+    }
+
+    private static ScreeningResult summarize(Long count, List<ScreeningMatch> hits,
+                                             List<String> reasons, Map<String,Object> debug) {
+        int strong = 0, weak = 0;
+        for (ScreeningMatch h : hits) {
+            if (h.strong()) strong++; else weak++;
+        }
+        return new ScreeningResult(count, strong, weak, List.copyOf(hits), List.copyOf(reasons), debug);
     }
 
     // --------- helpers ---------
@@ -125,20 +231,28 @@ public class ScreeningAgent {
     private static String asStr(Object o){ return o == null ? null : String.valueOf(o); }
     private static double round(double v){ return Math.round(v*1000.0)/1000.0; }
 
-    private static String normalize(String s){
-        if (s == null) return "";
-        String n = Normalizer.normalize(s, Normalizer.Form.NFD)
-                .replaceAll("\\p{M}","");            // aksanları kaldır
-        n = n.toUpperCase().replaceAll("[^A-Z ]"," ").replaceAll("\\s+"," ").trim();
-        return n;
+    /**
+     * Name key + alias keys of a Search hit. {@code aliases} is ';'-separated: the stored aliasKeys, or the raw
+     * aliases ({@code raw}, normalized here) for documents loaded before aliasKeys existed.
+     */
+    private static char[][] hitKeys(String nameKey, String aliases, boolean raw) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(nameKey);
+        if (aliases != null) for (String a : aliases.split(";")) keys.add(raw ? normalize(a) : a);
+        keys.remove("");
+        char[][] out = new char[keys.size()][];
+        int i = 0;
+        for (String k : keys) out[i++] = k.toCharArray();
+        return out;
     }
 
-    private static String toJson(Object o){
-        try {
-            return new com.fasterxml.jackson.databind.ObjectMapper()
-                    .writerWithDefaultPrettyPrinter().writeValueAsString(o);
-        } catch (Exception e) {
-            return "{\"error\":\"json-serialize\",\"message\":\""+e.getMessage()+"\"}";
-        }
+    private static char[][] sortedKeys(char[][] keys) {
+        char[][] out = new char[keys.length][];
+        for (int i = 0; i < keys.length; i++) out[i] = FuzzyMatcher.tokenSorted(new String(keys[i]));
+        return out;
+    }
+
+    private static String normalize(String s){
+        return NameNormalizer.normalize(s); // aksanları kaldır, Kiril/Arap/Yunan → Latin
     }
 }
@@ -0,0 +1,21 @@
+package com.demo.rag.config;
+
+import com.demo.rag.embedding.CachedVectorStoreEmbeddingModel;
+import com.demo.rag.embedding.EmbeddingCache;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/** Puts the persistent embedding cache in front of the auto-configured OpenAI embedding model (pgvector path). */
+@Configuration
+public class EmbeddingCacheConfig {
+  @Bean
+  @Primary
+  public EmbeddingModel cachedEmbeddingModel(OpenAiEmbeddingModel openAi, EmbeddingCache cache,
+      @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String model) {
+    return cache.enabled() ? new CachedVectorStoreEmbeddingModel(openAi, cache, model) : openAi;
+  }
+}
@@ -0,0 +1,42 @@
+package com.demo.rag.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * ExtractorAgent output ("docSignals"). Either the analysis fields are set (ok=true),
+ * or error/message describe why the document could not be analyzed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DocSignals(
+        String documentRef,
+        IdInfo idInfo,
+        Boolean mrzValid,
+        Boolean identityMismatch,
+        Boolean expired,
+        Double quality,
+        Boolean croppingHint,
+        List<String> reasons,
+        Boolean ok,
+        String error,
+        String message
+) {
+
+    /** Identity as read from the document (visual fields first, MRZ as fallback). */
+    public record IdInfo(String fullName, String dob, String docNo, String country) { }
+
+    public static DocSignals error(String code, String message) {
+        return new DocSignals(null, null, null, null, null, null, null, null, null, code, message == null ? "" : message);
+    }
+
+    public static DocSignals error(String documentRef, String code, String message) {
+        return new DocSignals(documentRef, null, null, null, null, null, null, null, null, code, message);
+    }
+
+    @JsonIgnore
+    public boolean hasError() { return error != null; }
+}
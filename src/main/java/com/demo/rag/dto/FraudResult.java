@@ -0,0 +1,30 @@
+package com.demo.rag.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * FraudAgent output ("fraudSignals"). suspicionLevel/reasons/references come from the model
+ * (see schemas/fraud.schema.json); heuristics are the deterministic transaction flags fed into it.
+ * raw holds the model text when it was not valid JSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record FraudResult(
+        String suspicionLevel,
+        List<String> reasons,
+        List<String> references,
+        List<String> heuristics,
+        String raw
+) {
+
+    public FraudResult withHeuristics(List<String> h) {
+        return new FraudResult(suspicionLevel, reasons, references, h, raw);
+    }
+
+    public static FraudResult raw(String text, List<String> heuristics) {
+        return new FraudResult(null, null, null, heuristics, text);
+    }
+}
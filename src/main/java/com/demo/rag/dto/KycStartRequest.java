@@ -2,7 +2,14 @@ package com.demo.rag.dto;
 
 import java.util.List;
 
-public record KycStartRequest(String name, String birthDate, String question, String documentText, List<TransactionDto> transactions) {
+/**
+ * customerId (optional): when the customer has live state from /api/fraud/events, its signals are
+ * merged with those of the attached transactions.
+ * mrz (optional): MRZ lines the caller already read (TD1 / TD2 / TD3); the document is then not sent to
+ * Document Intelligence, documentText only names it.
+ */
+public record KycStartRequest(String name, String birthDate, String question, String documentText,
+                              List<TransactionDto> transactions, String customerId, String mrz) {
 
     public KycStartRequest {
         if (transactions == null) transactions = List.of();
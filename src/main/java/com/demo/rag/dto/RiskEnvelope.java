@@ -0,0 +1,54 @@
+package com.demo.rag.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * RiskAgent output: the inputs the score was based on, which model produced it, and the score itself.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record RiskEnvelope(RiskInputs inputs, ModelInfo model, RiskOutput output) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record RiskInputs(
+            ScreeningResult sanctionsContext,
+            DocSignals docSignals,
+            FraudResult fraudSignals,
+            IdentityUsed identityUsed,
+            String documentRef
+    ) { }
+
+    /** Identity that was screened; source is "document" or "request". */
+    public record IdentityUsed(String name, String dob, String source) { }
+
+    /**
+     * path: "rules" (deterministic fast path, no model call), "cache" (earlier model answer) or "llm";
+     * cached=true when the output was served from the RiskAgent response cache.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ModelInfo(String provider, String deployment, String promptVersion, String path, boolean cached) { }
+
+    /** Model answer (see schemas/risk.schema.json); raw holds the text when it was not valid JSON. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record RiskOutput(Result result, Breakdown breakdown, String raw) {
+
+        public static RiskOutput raw(String text) { return new RiskOutput(null, null, text); }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Result(Integer riskScore, String level, List<String> reasons, String recommendation) { }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Breakdown(Double sanctions, Double doc, Double fraud) { }
+
+    /** Same envelope with the screened identity and document reference recorded in the inputs. */
+    public RiskEnvelope withIdentity(IdentityUsed identity, String documentRef) {
+        RiskInputs in = inputs == null ? new RiskInputs(null, null, null, null, null) : inputs;
+        return new RiskEnvelope(
+                new RiskInputs(in.sanctionsContext(), in.docSignals(), in.fraudSignals(), identity, documentRef),
+                model, output);
+    }
+}
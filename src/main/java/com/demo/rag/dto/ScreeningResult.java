@@ -0,0 +1,40 @@
+package com.demo.rag.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ScreeningAgent output ("sanctionsContext"): candidate matches plus strong/weak counts.
+ * debug carries backend-specific diagnostics (query, filter, timings) and is not interpreted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ScreeningResult(
+        Long count,
+        Integer strongCount,
+        Integer weakCount,
+        List<ScreeningMatch> matches,
+        List<String> reasons,
+        Map<String, Object> debug
+) {
+
+    /** One candidate: backend score, name similarity and whether it counts as a strong hit. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record ScreeningMatch(double score, double nameSimilarity, boolean dobMatch, String strength,
+                                 SanctionsHit doc) {
+        public boolean strong() { return "strong".equals(strength); }
+    }
+
+    /** The sanctions list row behind a match. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record SanctionsHit(String id, String name, String birthDate, String country, String list,
+                               String program, String aliases) { }
+
+    public static ScreeningResult empty(String reason) {
+        return new ScreeningResult(0L, null, null, List.of(), List.of(reason), null);
+    }
+}
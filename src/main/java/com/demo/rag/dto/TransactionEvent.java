@@ -0,0 +1,12 @@
+// com/demo/rag/dto/TransactionEvent.java
+package com.demo.rag.dto;
+
+/** One live transaction for /api/fraud/events: a {@link TransactionDto} plus the customer it belongs to. */
+public record TransactionEvent(
+    String customerId,
+    String ts,       // ISO-8601, e.g. "2025-02-10T09:12:00Z"
+    Double amt,
+    String country,
+    String channel,
+    String device
+) {}
@@ -0,0 +1,82 @@
+package com.demo.rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CachedEmbeddingModel
+ *
+ * langchain4j {@link EmbeddingModel} in front of {@link EmbeddingCache}:
+ * - cached texts are served from disk,
+ * - only the misses of a batch are sent to the delegate (one request, original order preserved),
+ * - fresh vectors are written back under the deployment name.
+ */
+public class CachedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String deployment;
+
+    public CachedEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String deployment) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.deployment = deployment;
+    }
+
+    /** Wraps {@code delegate} unless it is null or the cache is disabled. */
+    public static EmbeddingModel wrap(EmbeddingModel delegate, EmbeddingCache cache, String deployment) {
+        if (delegate == null || cache == null || !cache.enabled()) return delegate;
+        return new CachedEmbeddingModel(delegate, cache, deployment);
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return embed(TextSegment.from(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment segment) {
+        return Response.from(embedAll(List.of(segment)).content().get(0));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        Embedding[] out = new Embedding[segments.size()];
+        int[] missAt = new int[segments.size()];
+        List<TextSegment> misses = new ArrayList<>();
+
+        for (int i = 0; i < segments.size(); i++) {
+            float[] v = cache.get(deployment, segments.get(i).text());
+            if (v != null) out[i] = Embedding.from(v);
+            else {
+                missAt[misses.size()] = i;
+                misses.add(segments.get(i));
+            }
+        }
+        if (misses.isEmpty()) return Response.from(Arrays.asList(out));
+
+        Response<List<Embedding>> fresh = delegate.embedAll(misses);
+        List<Embedding> computed = fresh.content();
+        if (computed.size() != misses.size()) {
+            throw new IllegalStateException("Embedding count mismatch: " + computed.size() + " != " + misses.size());
+        }
+        for (int k = 0; k < computed.size(); k++) {
+            Embedding e = computed.get(k);
+            out[missAt[k]] = e;
+            cache.put(deployment, misses.get(k).text(), e.vector());
+        }
+        // token usage only reflects what was actually sent to the model
+        return new Response<>(Arrays.asList(out), fresh.tokenUsage(), null);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
@@ -0,0 +1,77 @@
+package com.demo.rag.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CachedVectorStoreEmbeddingModel
+ *
+ * Spring AI counterpart of {@link CachedEmbeddingModel}, used by the pgvector store
+ * (/api/load/sanctions-to-vector): every embedding request is split into cached and missing
+ * instructions and only the missing ones are sent to the delegate.
+ */
+public class CachedVectorStoreEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String defaultModel;
+
+    public CachedVectorStoreEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String defaultModel) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.defaultModel = defaultModel;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel() : defaultModel;
+        List<String> texts = request.getInstructions();
+
+        float[][] out = new float[texts.size()][];
+        List<Integer> missAt = new ArrayList<>();
+        List<String> misses = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            out[i] = cache.get(model, texts.get(i));
+            if (out[i] == null) {
+                missAt.add(i);
+                misses.add(texts.get(i));
+            }
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!misses.isEmpty()) {
+            EmbeddingResponse fresh = delegate.call(new EmbeddingRequest(misses, request.getOptions()));
+            for (Embedding e : fresh.getResults()) {
+                int k = e.getIndex();
+                out[missAt.get(k)] = e.getOutput();
+                cache.put(model, misses.get(k), e.getOutput());
+            }
+            metadata = fresh.getMetadata();
+        }
+
+        List<Embedding> results = new ArrayList<>(out.length);
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == null) throw new IllegalStateException("No embedding returned for input " + i);
+            results.add(new Embedding(out[i], i));
+        }
+        return new EmbeddingResponse(results, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,225 @@
+package com.demo.rag.embedding;
+
+import com.demo.rag.util.Sha256;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * EmbeddingCache
+ *
+ * Persistent embedding cache keyed by model/deployment + SHA-256 of the text (first 128 bits).
+ * Storage (EMBEDDING_CACHE_DIR, default data/embedding-cache):
+ * - vectors.f32: contiguous little-endian float32 vectors, memory-mapped in 64 MiB segments,
+ * - index.bin: append-only records {keyHi, keyLo, offset, dim, crc32c}, replayed into a hash map at startup.
+ *
+ * Reads copy straight from the mapping into a float[] (no boxed floats, no JSON). A record whose CRC does
+ * not match (e.g. torn write before a crash) is treated as a miss. The cache stops growing at
+ * EMBEDDING_CACHE_MAX_MB; EMBEDDING_CACHE_ENABLED=false turns it into a pass-through.
+ */
+@Component
+public class EmbeddingCache {
+
+    private static final int MAGIC = 0x454D4243;        // "EMBC"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 32;
+    private static final long SEGMENT_BYTES = 64L << 20;
+
+    private record Key(long hi, long lo) { }
+
+    private record Slot(long offset, int dim, int crc) { }
+
+    /** Counters for /api/metrics. */
+    public record Stats(boolean enabled, String disabledReason, int entries, long bytes, long hits, long misses,
+                        long puts, long rejected) { }
+
+    private final boolean enabled;
+    private final String disabledReason; // null unless the cache was switched off because its files could not be opened
+    private final long maxBytes;
+    private final ConcurrentHashMap<Key, Slot> index = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(),
+            puts = new AtomicLong(), rejected = new AtomicLong();
+
+    private FileChannel data;
+    private FileChannel idx;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long dataEnd;
+
+    public EmbeddingCache() {
+        boolean on = Boolean.parseBoolean(
+                Optional.ofNullable(System.getenv("EMBEDDING_CACHE_ENABLED")).orElse("true"));
+        this.maxBytes = Long.parseLong(
+                Optional.ofNullable(System.getenv("EMBEDDING_CACHE_MAX_MB")).orElse("1024")) << 20;
+        Path dir = Path.of(Optional.ofNullable(System.getenv("EMBEDDING_CACHE_DIR")).orElse("data/embedding-cache"));
+
+        String reason = null;
+        if (on) {
+            try {
+                open(dir);
+            } catch (IOException e) {
+                // cache is an optimization: run without it rather than fail startup; /api/metrics shows why
+                reason = "cannot open " + dir + ": " + e.getMessage();
+                closeQuietly();
+                on = false;
+            }
+        }
+        this.enabled = on;
+        this.disabledReason = reason;
+    }
+
+    public boolean enabled() { return enabled; }
+
+    /** Cached vector for (model, text), or null. */
+    public float[] get(String model, String text) {
+        if (!enabled) return null;
+        Key key = key(model, text);
+        Slot s = index.get(key);
+        float[] v = s == null ? null : read(s);
+        if (v == null) {
+            if (s != null) index.remove(key, s); // corrupt record: forget it, it will be re-put
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return v;
+    }
+
+    /** Stores a vector; ignored when disabled, already present or the size cap is reached. */
+    public void put(String model, String text, float[] vector) {
+        if (!enabled || vector == null || vector.length == 0) return;
+        Key key = key(model, text);
+        if (index.containsKey(key)) return;
+        synchronized (this) {
+            if (index.containsKey(key)) return;
+            int len = vector.length * Float.BYTES;
+            long offset = dataEnd;
+            if (offset % SEGMENT_BYTES + len > SEGMENT_BYTES) offset = (offset / SEGMENT_BYTES + 1) * SEGMENT_BYTES;
+            if (offset + len > maxBytes) {
+                rejected.incrementAndGet();
+                return;
+            }
+            try {
+                ByteBuffer region = segment(offset).slice((int) (offset % SEGMENT_BYTES), len)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                region.asFloatBuffer().put(vector);
+                int crc = crc(region);
+
+                ByteBuffer rec = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                rec.putLong(key.hi()).putLong(key.lo()).putLong(offset).putInt(vector.length).putInt(crc).flip();
+                while (rec.hasRemaining()) idx.write(rec, idx.size());
+
+                dataEnd = offset + len;
+                index.put(key, new Slot(offset, vector.length, crc));
+                puts.incrementAndGet();
+            } catch (IOException e) {
+                rejected.incrementAndGet();
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, disabledReason, index.size(), dataEnd, hits.get(), misses.get(), puts.get(), rejected.get());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (MappedByteBuffer m : segments) if (m != null) m.force();
+        closeQuietly();
+    }
+
+    // ---------------- storage ----------------
+
+    private void open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        data = FileChannel.open(dir.resolve("vectors.f32"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        idx = FileChannel.open(dir.resolve("index.bin"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long size = idx.size();
+        if (size < HEADER_BYTES) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            h.putInt(MAGIC).putInt(FORMAT).flip();
+            idx.truncate(0);
+            while (h.hasRemaining()) idx.write(h, h.position());
+            return;
+        }
+
+        MappedByteBuffer m = idx.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        m.order(ByteOrder.LITTLE_ENDIAN);
+        if (m.getInt(0) != MAGIC || m.getInt(4) != FORMAT) throw new IOException("unknown cache format");
+
+        long dataSize = data.size();
+        long whole = HEADER_BYTES + (size - HEADER_BYTES) / RECORD_BYTES * RECORD_BYTES;
+        for (long p = HEADER_BYTES; p < whole; p += RECORD_BYTES) {
+            int at = (int) p;
+            long offset = m.getLong(at + 16);
+            int dim = m.getInt(at + 24);
+            long end = offset + (long) dim * Float.BYTES;
+            if (dim <= 0 || end > dataSize) continue; // data never made it to disk
+            index.put(new Key(m.getLong(at), m.getLong(at + 8)), new Slot(offset, dim, m.getInt(at + 28)));
+            dataEnd = Math.max(dataEnd, end);
+        }
+        if (whole != size) idx.truncate(whole); // drop a torn trailing record
+    }
+
+    private float[] read(Slot s) {
+        MappedByteBuffer[] segs = segments;
+        int seg = (int) (s.offset() / SEGMENT_BYTES);
+        MappedByteBuffer m;
+        try {
+            m = seg < segs.length && segs[seg] != null ? segs[seg] : segment(s.offset());
+        } catch (IOException e) {
+            return null;
+        }
+        ByteBuffer region = m.slice((int) (s.offset() % SEGMENT_BYTES), s.dim() * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (crc(region) != s.crc()) return null;
+        float[] out = new float[s.dim()];
+        region.asFloatBuffer().get(out);
+        return out;
+    }
+
+    /** Mapping of the segment holding {@code offset}; mapping READ_WRITE grows the file as needed. */
+    private synchronized MappedByteBuffer segment(long offset) throws IOException {
+        int seg = (int) (offset / SEGMENT_BYTES);
+        MappedByteBuffer[] segs = segments;
+        if (seg < segs.length && segs[seg] != null) return segs[seg];
+        MappedByteBuffer[] grown = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+        grown[seg] = data.map(FileChannel.MapMode.READ_WRITE, seg * SEGMENT_BYTES, SEGMENT_BYTES);
+        segments = grown;
+        return grown[seg];
+    }
+
+    private static int crc(ByteBuffer region) {
+        CRC32C c = new CRC32C();
+        c.update(region.duplicate());
+        return (int) c.getValue();
+    }
+
+    /** SHA-256 of "model 0x1f text" (no trailing separator: the on-disk index was written with these keys). */
+    private static Key key(String model, String text) {
+        long[] h = Sha256.bits128((model + "\u001f" + text).getBytes(StandardCharsets.UTF_8));
+        return new Key(h[0], h[1]);
+    }
+
+    private void closeQuietly() {
+        try { if (idx != null) idx.close(); } catch (IOException ignored) { }
+        try { if (data != null) data.close(); } catch (IOException ignored) { }
+    }
+}
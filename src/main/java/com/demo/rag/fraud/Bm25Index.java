@@ -0,0 +1,86 @@
+package com.demo.rag.fraud;
+
+import java.util.*;
+
+/**
+ * Bm25Index
+ *
+ * Okapi BM25 keyword scoring (k1 = 1.2, b = 0.75) over a fixed set of short texts.
+ * Tokens are lower-cased runs of letters/digits (Unicode aware, so Turkish text works too);
+ * postings are primitive arrays of (doc, term frequency).
+ */
+final class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /** Search result: document id and BM25 score. */
+    record Scored(int id, double score) { }
+
+    private record Posting(int[] docs, int[] tfs) { }
+
+    private final int docCount;
+    private final int[] docLength;
+    private final double avgLength;
+    private final Map<String, Posting> postings;
+
+    Bm25Index(List<String> texts) {
+        this.docCount = texts.size();
+        this.docLength = new int[docCount];
+
+        Map<String, Map<Integer, Integer>> tmp = new HashMap<>();
+        long total = 0;
+        for (int d = 0; d < docCount; d++) {
+            List<String> tokens = tokenize(texts.get(d));
+            docLength[d] = tokens.size();
+            total += tokens.size();
+            for (String t : tokens) tmp.computeIfAbsent(t, k -> new TreeMap<>()).merge(d, 1, Integer::sum);
+        }
+        this.avgLength = docCount == 0 ? 0 : (double) total / docCount;
+
+        this.postings = new HashMap<>(tmp.size() * 2);
+        for (Map.Entry<String, Map<Integer, Integer>> e : tmp.entrySet()) {
+            int[] docs = new int[e.getValue().size()];
+            int[] tfs = new int[docs.length];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> p : e.getValue().entrySet()) {
+                docs[i] = p.getKey();
+                tfs[i++] = p.getValue();
+            }
+            postings.put(e.getKey(), new Posting(docs, tfs));
+        }
+    }
+
+    /** Top-k documents for the query terms (documents sharing no term are not returned). */
+    List<Scored> search(String query, int k) {
+        double[] scores = new double[docCount];
+        boolean any = false;
+        for (String t : new LinkedHashSet<>(tokenize(query))) {
+            Posting p = postings.get(t);
+            if (p == null) continue;
+            double idf = Math.log(1.0 + (docCount - p.docs().length + 0.5) / (p.docs().length + 0.5));
+            for (int i = 0; i < p.docs().length; i++) {
+                int d = p.docs()[i];
+                double tf = p.tfs()[i];
+                double norm = K1 * (1 - B + B * docLength[d] / avgLength);
+                scores[d] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+            any = true;
+        }
+        if (!any) return List.of();
+
+        List<Scored> out = new ArrayList<>();
+        for (int d = 0; d < docCount; d++) if (scores[d] > 0) out.add(new Scored(d, scores[d]));
+        out.sort(Comparator.comparingDouble(Scored::score).reversed());
+        return out.size() > k ? out.subList(0, k) : out;
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) return List.of();
+        List<String> out = new ArrayList<>();
+        for (String t : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (t.length() >= 2) out.add(t);
+        }
+        return out;
+    }
+}
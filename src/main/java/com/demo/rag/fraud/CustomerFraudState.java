@@ -0,0 +1,98 @@
+package com.demo.rag.fraud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.demo.rag.fraud.FraudRules.*;
+
+/**
+ * CustomerFraudState
+ *
+ * Incrementally maintained {@link FraudRules} state of one customer, fed one transaction at a time:
+ * - 24h velocity and 72h near-threshold cash windows ({@link TimeWindow}),
+ * - 48h distinct devices ({@link DistinctWindow}),
+ * - running near-threshold cash count and a sticky high-risk-wire flag.
+ *
+ * Signals use the peak of each window over the whole stream, i.e. the same "any window" semantics
+ * as the batch {@link TransactionAnalytics}; "current" values are relative to the newest event time.
+ * Out-of-order events are placed in time order; an event older than a window's width behind the newest
+ * event is left out of that window (and counted in lateEvents) but still updates the running counters.
+ */
+public final class CustomerFraudState {
+
+    /** Point-in-time view; times are event times (epoch millis). */
+    public record Snapshot(String customerId, long events, long lateEvents, Long lastEventTs,
+                           int in24h, int nearCashIn72h, int devicesIn48h,
+                           int peakIn24h, int peakNearCashIn72h, int peakDevicesIn48h,
+                           int nearThresholdCash, boolean highRiskWire, List<String> signals) { }
+
+    private final String customerId;
+    private final TimeWindow velocity = new TimeWindow(VELOCITY_WINDOW_MS);
+    private final TimeWindow nearCash = new TimeWindow(STRUCTURING_WINDOW_MS);
+    private final DistinctWindow devices = new DistinctWindow(DEVICE_WINDOW_MS);
+
+    private long events, late;
+    private long newest = TransactionColumns.NO_TS;
+    private int peakVelocity, peakNear, peakDevices, nearTotal;
+    private boolean highRiskWire;
+    private volatile long touchedAt = System.currentTimeMillis();
+
+    public CustomerFraudState(String customerId) {
+        this.customerId = customerId;
+    }
+
+    /** Applies one transaction; ts is epoch millis or {@link TransactionColumns#NO_TS}. */
+    public synchronized void apply(long ts, double amount, String country, String channel, String device) {
+        events++;
+        touchedAt = System.currentTimeMillis();
+
+        String ch = channel == null ? "" : channel.toLowerCase(Locale.ROOT);
+        boolean near = CASH_DEPOSIT.equals(ch) && nearThreshold(amount);
+        if (near) nearTotal++;
+        if (WIRE_OUT.equals(ch) && country != null
+                && HIGH_RISK_COUNTRIES.contains(country.toUpperCase(Locale.ROOT))) highRiskWire = true;
+
+        if (ts == TransactionColumns.NO_TS) return; // windows need a timestamp
+
+        boolean missed = false;
+        int v = velocity.add(ts);
+        if (v < 0) missed = true;
+        else peakVelocity = Math.max(peakVelocity, v);
+        if (near) {
+            int n = nearCash.add(ts);
+            if (n < 0) missed = true;
+            else peakNear = Math.max(peakNear, n);
+        }
+        if (device != null && !device.isBlank()) {
+            int d = devices.add(ts, device);
+            if (d < 0) missed = true;
+            else peakDevices = Math.max(peakDevices, d);
+        }
+        if (missed) late++;
+        newest = Math.max(newest, ts);
+    }
+
+    public synchronized Snapshot snapshot() {
+        boolean none = newest == TransactionColumns.NO_TS;
+        // all three at the customer's newest event: near-cash and device-less events move it too
+        return new Snapshot(customerId, events, late, none ? null : newest,
+                none ? 0 : velocity.current(newest), none ? 0 : nearCash.current(newest), none ? 0 : devices.current(newest),
+                peakVelocity, peakNear, peakDevices, nearTotal, highRiskWire, signals());
+    }
+
+    /** Wall-clock time of the last update (for idle eviction). */
+    public long touchedAt() { return touchedAt; }
+
+    // ---------------- internals ----------------
+
+    private List<String> signals() {
+        List<String> s = new ArrayList<>(5);
+        if (nearTotal >= SKIRTING_MIN) s.add(THRESHOLD_SKIRTING);
+        if (peakVelocity >= VELOCITY_MIN) s.add(VELOCITY_SPIKE);
+        if (peakNear >= STRUCTURING_MIN) s.add(STRUCTURING_PATTERN);
+        if (highRiskWire) s.add(GEO_RISK);
+        if (peakDevices >= DEVICE_MIN) s.add(DEVICE_HOPPING);
+        return s;
+    }
+}
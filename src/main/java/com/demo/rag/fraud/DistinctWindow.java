@@ -0,0 +1,121 @@
+package com.demo.rag.fraud;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DistinctWindow
+ *
+ * Event-time sliding window of distinct keys (e.g. devices) in [t - width, t]; the keyed counterpart
+ * of {@link TimeWindow}, with the same 2 * width history so late events are scored exactly.
+ *
+ * In-order events cost O(1) amortized; late events cost O(events retained). Not thread-safe.
+ */
+final class DistinctWindow {
+
+    private final long width;
+    private long[] ts = new long[16];
+    private String[] keys = new String[16];
+    private int head, size;
+    private int lo; // first event inside the current window; counts cover [lo, size)
+    private final Map<String, int[]> counts = new HashMap<>();
+
+    DistinctWindow(long width) {
+        this.width = width;
+    }
+
+    /**
+     * Adds a key seen at t.
+     *
+     * @return the largest number of distinct keys in any window containing t,
+     *         or -1 when t is more than width behind the newest event and was not recorded
+     */
+    int add(long t, String key) {
+        if (size > 0 && t < newest() - width) return -1;
+        if (size == 0 || t >= newest()) {
+            push(t, key);
+            inc(key);
+            expire(t); // first, so nothing dropped below is still counted
+            long horizon = t - 2 * width;
+            while (tsAt(0) < horizon) { keys[head] = null; head = (head + 1) % ts.length; size--; lo--; }
+            return counts.size();
+        }
+        insertSorted(t, key); // t >= newest - width and lo only moves in add(), so it lands at or after lo
+        inc(key);
+        return peakAround(t);
+    }
+
+    /**
+     * Distinct keys in the window ending at {@code now} (>= the newest event). Read-only: moving lo here
+     * would let a later late event land before it, and in-order adds would undercount.
+     */
+    int current(long now) {
+        int from = lo;
+        while (from < size && tsAt(from) < now - width) from++;
+        if (from == lo) return counts.size();
+        Set<String> live = new HashSet<>();
+        for (int i = from; i < size; i++) live.add(keyAt(i));
+        return live.size();
+    }
+
+    // ---------------- internals ----------------
+
+    private void expire(long now) {
+        while (lo < size && tsAt(lo) < now - width) {
+            String k = keyAt(lo++);
+            int[] c = counts.get(k);
+            if (--c[0] == 0) counts.remove(k);
+        }
+    }
+
+    private int peakAround(long t) {
+        Map<String, int[]> win = new HashMap<>();
+        int best = 0;
+        for (int k = 0, from = 0; k < size; k++) {
+            long e = tsAt(k);
+            win.computeIfAbsent(keyAt(k), x -> new int[1])[0]++;
+            while (tsAt(from) < e - width) {
+                String old = keyAt(from++);
+                int[] c = win.get(old);
+                if (--c[0] == 0) win.remove(old);
+            }
+            if (e >= t && e - t <= width) best = Math.max(best, win.size());
+        }
+        return best;
+    }
+
+    private void inc(String key) { counts.computeIfAbsent(key, k -> new int[1])[0]++; }
+
+    private long newest() { return tsAt(size - 1); }
+
+    private long tsAt(int i) { return ts[(head + i) % ts.length]; }
+
+    private String keyAt(int i) { return keys[(head + i) % ts.length]; }
+
+    private void set(int i, long t, String key) {
+        int p = (head + i) % ts.length;
+        ts[p] = t;
+        keys[p] = key;
+    }
+
+    private void push(long t, String key) {
+        if (size == ts.length) {
+            long[] nt = new long[ts.length * 2];
+            String[] nk = new String[ts.length * 2];
+            for (int i = 0; i < size; i++) { nt[i] = tsAt(i); nk[i] = keyAt(i); }
+            ts = nt;
+            keys = nk;
+            head = 0;
+        }
+        set(size++, t, key);
+    }
+
+    private void insertSorted(long t, String key) {
+        push(t, key);
+        int i = size - 1;
+        while (i > 0 && tsAt(i - 1) > t) { set(i, tsAt(i - 1), keyAt(i - 1)); i--; }
+        set(i, t, key);
+    }
+}
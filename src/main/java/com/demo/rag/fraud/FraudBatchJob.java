@@ -0,0 +1,354 @@
+package com.demo.rag.fraud;
+
+import com.demo.rag.agents.FraudAgent;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.TransactionDto;
+import com.demo.rag.load.BatchJobs;
+import com.demo.rag.load.CsvColumns;
+import com.demo.rag.load.CsvReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.demo.rag.load.CsvColumns.col;
+
+/**
+ * FraudBatchJob
+ *
+ * Scores a whole transaction file (tens of millions of rows) with the {@link FraudRules} heuristics:
+ * 1) partition: the CSV is streamed once and every row is spilled to one of FRAUD_BATCH_PARTITIONS
+ *    binary files by hash(customerId), so a customer's rows end up together and memory stays flat;
+ * 2) score: partitions are processed in parallel on a ForkJoinPool (all cores by default) — each one is
+ *    grouped by customer into {@link TransactionColumns} and run through {@link TransactionAnalytics};
+ *    flagged customers are written to {@code <jobId>.flagged.ndjson};
+ * 3) triage (optional): only flagged customers (up to FRAUD_BATCH_TRIAGE_MAX) go to the LLM via
+ *    {@link FraudAgent}, results in {@code <jobId>.triage.ndjson}.
+ *
+ * Input CSV header: customerId,ts,amt,country,channel,device (any order, extra columns ignored).
+ * Files are read from and written to FRAUD_BATCH_DIR (default data/fraud-batch). Jobs run one at a time.
+ */
+@Service
+public class FraudBatchJob {
+
+    private static final String[] COLUMNS = {"customerId", "ts", "amt", "country", "channel", "device"};
+    private static final int KEEP_JOBS = 20;
+
+    public enum State { QUEUED, PARTITIONING, SCORING, TRIAGE, DONE, FAILED }
+
+    /** Progress snapshot; rowsPerSec is measured over the partition (read) phase. */
+    public record Status(String jobId, State state, String input, String output, String triageOutput,
+                         long rowsRead, long badRows, int partitionsDone, int partitions,
+                         long customers, long flagged, int triaged, long elapsedMs, long rowsPerSec,
+                         Instant startedAt, String error) { }
+
+    private final ObjectMapper om;
+    private final FraudAgent fraudAgent;
+    private final Path baseDir;
+    private final int partitions;
+    private final int triageMax;
+    private final int triageTxs;
+    private final int triageConcurrency;
+    private final BatchJobs<Job> jobs = new BatchJobs<>("fraud-batch", KEEP_JOBS);
+    private final ForkJoinPool scorers;
+
+    public FraudBatchJob(ObjectMapper objectMapper, FraudAgent fraudAgent) {
+        this.om = objectMapper;
+        this.fraudAgent = fraudAgent;
+        this.baseDir = Path.of(Optional.ofNullable(System.getenv("FRAUD_BATCH_DIR")).orElse("data/fraud-batch"))
+                .toAbsolutePath().normalize();
+        this.partitions = Math.max(1,
+                Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_BATCH_PARTITIONS")).orElse("128")));
+        this.triageMax = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_BATCH_TRIAGE_MAX")).orElse("100"));
+        this.triageTxs = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_BATCH_TRIAGE_TXS")).orElse("200"));
+        this.triageConcurrency = Integer.parseInt(
+                Optional.ofNullable(System.getenv("FRAUD_BATCH_TRIAGE_CONCURRENCY")).orElse("4"));
+        int parallelism = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_BATCH_PARALLELISM"))
+                .orElse(String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        this.scorers = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.shutdown();
+        scorers.shutdownNow();
+    }
+
+    public Path baseDir() { return baseDir; }
+
+    /**
+     * Queues a job over {@code input} (a file under FRAUD_BATCH_DIR).
+     *
+     * @param triage   also run the LLM triage for flagged customers
+     * @param question analyst question passed to the triage
+     */
+    public Status submit(Path input, boolean triage, String question) {
+        Path in = baseDir.resolve(input).normalize();
+        if (!in.startsWith(baseDir) || !Files.isRegularFile(in)) {
+            throw new IllegalArgumentException("input must name a file under " + baseDir);
+        }
+        Job job = new Job(UUID.randomUUID().toString().substring(0, 8), in, triage, question);
+        return jobs.submit(job, () -> run(job)).status();
+    }
+
+    public Optional<Status> status(String jobId) {
+        return jobs.get(jobId).map(Job::status);
+    }
+
+    public List<Status> list() {
+        return jobs.list().stream().map(Job::status).toList();
+    }
+
+    // ---------------- job ----------------
+
+    private void run(Job job) {
+        Path spillDir = baseDir.resolve(job.id + ".spill");
+        try {
+            Files.createDirectories(spillDir);
+            job.state = State.PARTITIONING;
+            partition(job, spillDir);
+            job.readMillis = job.elapsedMs();
+
+            job.state = State.SCORING;
+            List<Flagged> forTriage = Collections.synchronizedList(new ArrayList<>());
+            try (BufferedWriter out = Files.newBufferedWriter(job.output, StandardCharsets.UTF_8)) {
+                scorers.invoke(new ScoreTask(job, spillDir, 0, partitions, out, forTriage));
+            }
+
+            if (job.triage && !forTriage.isEmpty()) {
+                job.state = State.TRIAGE;
+                triage(job, forTriage);
+            }
+            job.state = State.DONE;
+        } catch (Throwable e) {
+            job.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            job.state = State.FAILED;
+        } finally {
+            deleteQuietly(spillDir);
+        }
+    }
+
+    /** Phase 1: stream the CSV once, spilling each row to its customer's hash partition. */
+    private void partition(Job job, Path spillDir) throws IOException {
+        DataOutputStream[] spill = new DataOutputStream[partitions];
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(job.input, StandardCharsets.UTF_8))) {
+            for (int p = 0; p < partitions; p++) {
+                spill[p] = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(spillFile(spillDir, p)), 32 * 1024));
+            }
+            String[] header = csv.next();
+            if (header == null) throw new IllegalArgumentException("CSV is empty: " + job.input);
+            int[] idx = columns(new CsvColumns(header));
+
+            for (String[] f = csv.next(); f != null; f = csv.next()) {
+                String customer = col(f, idx[0]);
+                if (customer.isBlank()) {
+                    job.badRows.incrementAndGet();
+                    continue;
+                }
+                double amt;
+                try {
+                    String a = col(f, idx[2]);
+                    amt = a.isBlank() ? 0 : Double.parseDouble(a);
+                } catch (NumberFormatException e) {
+                    job.badRows.incrementAndGet();
+                    continue;
+                }
+                DataOutputStream o = spill[Math.floorMod(customer.hashCode(), partitions)];
+                o.writeUTF(customer);
+                o.writeLong(TransactionColumns.parseTs(col(f, idx[1])));
+                o.writeDouble(amt);
+                o.writeUTF(col(f, idx[3]));
+                o.writeUTF(col(f, idx[4]));
+                o.writeUTF(col(f, idx[5]));
+                job.rows.incrementAndGet();
+            }
+        } finally {
+            for (DataOutputStream o : spill) if (o != null) o.close();
+        }
+    }
+
+    /** Phase 2: fork/join over partition ranges; a leaf scores one partition. */
+    private final class ScoreTask extends RecursiveAction {
+        private final Job job;
+        private final Path spillDir;
+        private final int from, to;
+        private final BufferedWriter out;
+        private final List<Flagged> forTriage;
+
+        ScoreTask(Job job, Path spillDir, int from, int to, BufferedWriter out, List<Flagged> forTriage) {
+            this.job = job;
+            this.spillDir = spillDir;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+            this.forTriage = forTriage;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoreTask(job, spillDir, from, mid, out, forTriage),
+                        new ScoreTask(job, spillDir, mid, to, out, forTriage));
+                return;
+            }
+            try {
+                scorePartition(job, spillFile(spillDir, from), out, forTriage);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            job.partitionsDone.incrementAndGet();
+        }
+    }
+
+    private void scorePartition(Job job, Path file, BufferedWriter out, List<Flagged> forTriage) throws IOException {
+        Map<String, TransactionColumns> byCustomer = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            while (true) {
+                String customer;
+                try {
+                    customer = in.readUTF();
+                } catch (EOFException eof) {
+                    break;
+                }
+                long ts = in.readLong();
+                double amt = in.readDouble();
+                String country = in.readUTF(), channel = in.readUTF(), device = in.readUTF();
+                byCustomer.computeIfAbsent(customer, k -> new TransactionColumns(8))
+                        .add(ts, amt, country, channel, device);
+            }
+        }
+        Files.deleteIfExists(file);
+
+        StringBuilder lines = new StringBuilder();
+        long flagged = 0;
+        for (Map.Entry<String, TransactionColumns> e : byCustomer.entrySet()) {
+            TransactionAnalytics.Summary s = TransactionAnalytics.analyze(e.getValue());
+            if (s.signals().isEmpty()) continue; // no signals: nothing to write, no LLM call
+            flagged++;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("customerId", e.getKey());
+            row.put("signals", s.signals());
+            row.put("summary", s);
+            lines.append(om.writeValueAsString(row)).append('\n');
+
+            if (job.triage && job.triageSlots.getAndDecrement() > 0) {
+                forTriage.add(new Flagged(e.getKey(), s.signals(), lastTransactions(e.getValue(), triageTxs)));
+            }
+        }
+        synchronized (out) {
+            out.write(lines.toString());
+        }
+        job.customers.addAndGet(byCustomer.size());
+        job.flagged.addAndGet(flagged);
+    }
+
+    /** Phase 3: LLM triage of flagged customers, a few at a time. */
+    private void triage(Job job, List<Flagged> flagged) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, triageConcurrency));
+        try (BufferedWriter out = Files.newBufferedWriter(job.triageOutput, StandardCharsets.UTF_8)) {
+            List<Future<String>> lines = new ArrayList<>(flagged.size());
+            for (Flagged f : flagged) {
+                lines.add(pool.submit(() -> {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("customerId", f.customerId());
+                    row.put("signals", f.signals());
+                    try {
+                        FraudResult r = fraudAgent.triage(job.question, f.transactions());
+                        row.put("triage", r);
+                    } catch (Exception e) {
+                        row.put("error", e.getMessage());
+                    }
+                    job.triaged.incrementAndGet();
+                    return om.writeValueAsString(row);
+                }));
+            }
+            for (Future<String> l : lines) {
+                out.write(l.get());
+                out.newLine();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ---------------- helpers ----------------
+
+    private record Flagged(String customerId, List<String> signals, List<TransactionDto> transactions) { }
+
+    /** The customer's latest {@code n} transactions, oldest first, for the triage prompt. */
+    private static List<TransactionDto> lastTransactions(TransactionColumns c, int n) {
+        int[] order = c.sortedOrder();
+        List<TransactionDto> out = new ArrayList<>(Math.min(n, order.length));
+        for (int p = Math.max(0, order.length - n); p < order.length; p++) {
+            int i = order[p];
+            long ts = c.ts(i);
+            out.add(new TransactionDto(ts == TransactionColumns.NO_TS ? null : Instant.ofEpochMilli(ts).toString(),
+                    c.amount(i), c.countryName(c.country(i)), c.channelName(c.channel(i)),
+                    c.deviceName(c.device(i))));
+        }
+        return out;
+    }
+
+    private static int[] columns(CsvColumns cols) {
+        int[] idx = new int[COLUMNS.length];
+        for (int c = 0; c < COLUMNS.length; c++) idx[c] = cols.first(COLUMNS[c]);
+        if (idx[0] < 0) throw new IllegalArgumentException("CSV has no 'customerId' column");
+        return idx;
+    }
+
+    private static Path spillFile(Path dir, int p) { return dir.resolve("p" + p + ".bin"); }
+
+    private static void deleteQuietly(Path dir) {
+        try (var files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.deleteIfExists(f);
+            Files.deleteIfExists(dir);
+        } catch (IOException ignored) { }
+    }
+
+    private final class Job extends BatchJobs.Job {
+        final Path input, output, triageOutput;
+        final boolean triage;
+        final String question;
+        final AtomicLong rows = new AtomicLong(), badRows = new AtomicLong(),
+                customers = new AtomicLong(), flagged = new AtomicLong();
+        final AtomicInteger partitionsDone = new AtomicInteger(), triaged = new AtomicInteger(),
+                triageSlots;
+        volatile State state = State.QUEUED;
+        volatile long readMillis;
+        volatile String error;
+
+        Job(String id, Path input, boolean triage, String question) {
+            super(id);
+            this.input = input;
+            this.output = baseDir.resolve(id + ".flagged.ndjson");
+            this.triageOutput = baseDir.resolve(id + ".triage.ndjson");
+            this.triage = triage;
+            this.question = question;
+            this.triageSlots = new AtomicInteger(triageMax);
+        }
+
+        @Override
+        public boolean finished() { return state == State.DONE || state == State.FAILED; }
+
+        Status status() {
+            long ms = elapsedMs();
+            long rps = (long) perSec(rows.get(), readMillis > 0 ? readMillis : ms);
+            return new Status(id, state, baseDir.relativize(input).toString(), output.getFileName().toString(),
+                    triage ? triageOutput.getFileName().toString() : null,
+                    rows.get(), badRows.get(), partitionsDone.get(), partitions, customers.get(), flagged.get(),
+                    triaged.get(), ms, rps, startedAt(), error);
+        }
+    }
+}
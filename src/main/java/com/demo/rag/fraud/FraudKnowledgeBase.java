@@ -0,0 +1,254 @@
+package com.demo.rag.fraud;
+
+import com.azure.core.credential.AzureKeyCredential;
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.SearchDocument;
+import com.azure.search.documents.models.SearchOptions;
+import com.azure.search.documents.models.SearchResult;
+import com.demo.rag.embedding.CachedEmbeddingModel;
+import com.demo.rag.embedding.EmbeddingCache;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.azure.AzureOpenAiEmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * FraudKnowledgeBase
+ *
+ * In-process copy of the fraud KB used by FraudAgent for RAG, so triage does not query Azure AI Search.
+ * - Source (first match): FRAUD_KB_FILE (JSON array on disk), a one-off export of the FRAUD_INDEX
+ *   Search index, or the bundled fraud-kb/fraud_kb.json.
+ * - Retrieval is hybrid: BM25 over title/typology/body, plus HNSW cosine search when an embedding
+ *   deployment (AZURE_OPENAI_EMBEDDING) is configured; both lists are fused with Reciprocal Rank Fusion.
+ * - Loaded at startup; {@link #refresh()} rebuilds a new snapshot and swaps it in atomically.
+ *
+ * Query vectors go through {@link EmbeddingCache}, so repeated questions cost no network call at all.
+ */
+@Component
+public class FraudKnowledgeBase {
+
+    private static final String SEED = "fraud-kb/fraud_kb.json";
+    private static final int RRF_K = 60;     // standard RRF damping constant
+    private static final int FUSE_DEPTH = 20; // candidates taken from each ranker
+
+    /** One KB note (same fields as the FRAUD_INDEX documents). */
+    public record KbDocument(String id, String title, String typology, String body, String ref) {
+        String searchText() {
+            return String.join("\n", Objects.toString(title, ""), Objects.toString(typology, ""),
+                    Objects.toString(body, ""));
+        }
+    }
+
+    /** Fused hit; ranks are 1-based positions in each ranker (null when that ranker did not return it). */
+    public record Hit(KbDocument doc, double score, Integer keywordRank, Integer vectorRank) { }
+
+    public record Status(String source, int documents, boolean vectors, int dimension,
+                         Instant loadedAt, long loadMillis, String error) { }
+
+    private record Snapshot(List<KbDocument> docs, Bm25Index bm25, HnswIndex hnsw, Status status) { }
+
+    /** HNSW index (null = keyword-only) and why the vectors could not be built, if they failed. */
+    private record Vectors(HnswIndex hnsw, String error) { }
+
+    private final ObjectMapper om;
+    private final EmbeddingModel embed;   // null: keyword-only retrieval
+    private final SearchClient search;    // null: no FRAUD_INDEX to export from
+    private final String kbFile;
+    private final int hnswM, hnswEfConstruction, hnswEfSearch;
+    private volatile Snapshot snapshot = new Snapshot(List.of(), new Bm25Index(List.of()), null,
+            new Status("none", 0, false, 0, null, 0, null));
+
+    public FraudKnowledgeBase(ObjectMapper objectMapper, EmbeddingCache embeddingCache) {
+        this.om = objectMapper;
+        this.kbFile = System.getenv("FRAUD_KB_FILE");
+        this.hnswM = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_KB_HNSW_M")).orElse("16"));
+        this.hnswEfConstruction = Integer.parseInt(
+                Optional.ofNullable(System.getenv("FRAUD_KB_HNSW_EF_CONSTRUCTION")).orElse("100"));
+        this.hnswEfSearch = Integer.parseInt(Optional.ofNullable(System.getenv("FRAUD_KB_HNSW_EF")).orElse("50"));
+
+        String aoaiEndpoint = System.getenv("AZURE_OPENAI_ENDPOINT");
+        String aoaiKey = System.getenv("AZURE_OPENAI_API_KEY");
+        String embDeploy = System.getenv("AZURE_OPENAI_EMBEDDING");
+        EmbeddingModel embTmp = null;
+        if (embDeploy != null && !embDeploy.isBlank() && aoaiEndpoint != null && aoaiKey != null) {
+            embTmp = CachedEmbeddingModel.wrap(AzureOpenAiEmbeddingModel.builder()
+                    .endpoint(aoaiEndpoint)
+                    .apiKey(aoaiKey)
+                    .deploymentName(embDeploy)
+                    .build(), embeddingCache, embDeploy);
+        }
+        this.embed = embTmp;
+
+        SearchClient s = null;
+        String searchEndpoint = System.getenv("SEARCH_ENDPOINT");
+        String searchApiKey = System.getenv("SEARCH_API_KEY");
+        String fraudIndex = System.getenv("FRAUD_INDEX");
+        if (searchEndpoint != null && searchApiKey != null && fraudIndex != null && !fraudIndex.isBlank()) {
+            s = new SearchClientBuilder()
+                    .endpoint(searchEndpoint)
+                    .credential(new AzureKeyCredential(searchApiKey))
+                    .indexName(fraudIndex)
+                    .buildClient();
+        }
+        this.search = s;
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // triage still works without KB context; /api/fraud/kb/refresh can retry later
+            Status st = snapshot.status();
+            snapshot = new Snapshot(snapshot.docs(), snapshot.bm25(), snapshot.hnsw(),
+                    new Status(st.source(), st.documents(), st.vectors(), st.dimension(), st.loadedAt(),
+                            st.loadMillis(), e.getMessage()));
+        }
+    }
+
+    public Status status() { return snapshot.status(); }
+
+    /** Reloads the KB from its source and rebuilds both indexes; the old snapshot serves until the swap. */
+    public synchronized Status refresh() throws Exception {
+        long t0 = System.currentTimeMillis();
+        String source;
+        List<KbDocument> docs;
+        List<float[]> stored = new ArrayList<>();
+        if (kbFile != null && !kbFile.isBlank()) {
+            source = "file:" + kbFile;
+            try (InputStream in = Files.newInputStream(Path.of(kbFile))) {
+                docs = om.readValue(in, new TypeReference<List<KbDocument>>() { });
+            }
+        } else if (search != null) {
+            source = "search:" + System.getenv("FRAUD_INDEX");
+            docs = exportIndex(stored);
+        } else {
+            source = "classpath:" + SEED;
+            try (InputStream in = Objects.requireNonNull(
+                    FraudKnowledgeBase.class.getClassLoader().getResourceAsStream(SEED), "Classpath not found: " + SEED)) {
+                docs = om.readValue(in, new TypeReference<List<KbDocument>>() { });
+            }
+        }
+
+        Bm25Index bm25 = new Bm25Index(docs.stream().map(KbDocument::searchText).toList());
+        Vectors v = buildVectors(docs, stored);
+        HnswIndex hnsw = v.hnsw();
+
+        // a failed embedding call still swaps in the BM25 snapshot; status.error says why vectors are off
+        Status st = new Status(source, docs.size(), hnsw != null, hnsw == null ? 0 : hnsw.dimension(),
+                Instant.now(), System.currentTimeMillis() - t0, v.error());
+        snapshot = new Snapshot(List.copyOf(docs), bm25, hnsw, st);
+        return st;
+    }
+
+    /**
+     * Top-k KB notes for a question. BM25 and HNSW rankings are fused with RRF; when the question
+     * cannot be embedded (no deployment, or the call fails) the keyword ranking is used alone.
+     */
+    public List<Hit> search(String question, int k) {
+        Snapshot s = snapshot;
+        if (s.docs().isEmpty() || k <= 0) return List.of();
+        if (question == null || question.isBlank()) {
+            List<Hit> out = new ArrayList<>();
+            for (int i = 0; i < s.docs().size() && i < k; i++) out.add(new Hit(s.docs().get(i), 0.0, null, null));
+            return out;
+        }
+
+        Map<Integer, double[]> fused = new LinkedHashMap<>(); // doc -> {score, keywordRank, vectorRank}
+        List<Bm25Index.Scored> kw = s.bm25().search(question, FUSE_DEPTH);
+        for (int r = 0; r < kw.size(); r++) {
+            double[] f = fused.computeIfAbsent(kw.get(r).id(), x -> new double[3]);
+            f[0] += 1.0 / (RRF_K + r + 1);
+            f[1] = r + 1;
+        }
+        if (s.hnsw() != null) {
+            float[] q = embedQuestion(question);
+            if (q != null && q.length == s.hnsw().dimension()) {
+                List<HnswIndex.Neighbor> nn = s.hnsw().search(q, FUSE_DEPTH, Math.max(hnswEfSearch, FUSE_DEPTH));
+                for (int r = 0; r < nn.size(); r++) {
+                    double[] f = fused.computeIfAbsent(nn.get(r).id(), x -> new double[3]);
+                    f[0] += 1.0 / (RRF_K + r + 1);
+                    f[2] = r + 1;
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(fused.size());
+        for (Map.Entry<Integer, double[]> e : fused.entrySet()) {
+            double[] f = e.getValue();
+            hits.add(new Hit(s.docs().get(e.getKey()), f[0],
+                    f[1] == 0 ? null : (int) f[1], f[2] == 0 ? null : (int) f[2]));
+        }
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+        return hits.size() > k ? hits.subList(0, k) : hits;
+    }
+
+    // ---------------- loading ----------------
+
+    /** Reads every document of FRAUD_INDEX once; stored vectors (if retrievable) are reused. */
+    private List<KbDocument> exportIndex(List<float[]> stored) {
+        List<KbDocument> docs = new ArrayList<>();
+        for (SearchResult r : search.search("*", new SearchOptions().setTop(1000), null)) {
+            SearchDocument d = r.getDocument(SearchDocument.class);
+            docs.add(new KbDocument(str(d.get("id")), str(d.get("title")), str(d.get("typology")),
+                    str(d.get("body")), str(d.get("ref"))));
+            stored.add(toFloats(d.get("embedding")));
+        }
+        return docs;
+    }
+
+    /**
+     * HNSW over stored or freshly computed vectors; no index when vectors are not available for every doc
+     * or the embedding call fails (retrieval is then keyword-only).
+     */
+    private Vectors buildVectors(List<KbDocument> docs, List<float[]> stored) {
+        if (docs.isEmpty()) return new Vectors(null, null);
+        float[][] vectors = new float[docs.size()][];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < docs.size(); i++) {
+            vectors[i] = i < stored.size() ? stored.get(i) : null;
+            if (vectors[i] == null) missing.add(i);
+        }
+        if (!missing.isEmpty()) {
+            if (embed == null) return new Vectors(null, null);
+            List<TextSegment> segs = new ArrayList<>(missing.size());
+            for (int i : missing) segs.add(TextSegment.from(docs.get(i).searchText()));
+            try {
+                List<Embedding> out = embed.embedAll(segs).content();
+                for (int j = 0; j < missing.size(); j++) vectors[missing.get(j)] = out.get(j).vector();
+            } catch (RuntimeException e) {
+                return new Vectors(null, "embedding failed, keyword-only retrieval: " + e.getMessage());
+            }
+        }
+        return new Vectors(new HnswIndex(vectors, hnswM, hnswEfConstruction), null);
+    }
+
+    private float[] embedQuestion(String question) {
+        if (embed == null) return null;
+        try {
+            return embed.embed(question).content().vector();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static float[] toFloats(Object o) {
+        if (!(o instanceof List<?> l) || l.isEmpty()) return null;
+        float[] v = new float[l.size()];
+        for (int i = 0; i < v.length; i++) v[i] = ((Number) l.get(i)).floatValue();
+        return v;
+    }
+
+    private static String str(Object o) { return o == null ? null : String.valueOf(o); }
+}
@@ -0,0 +1,50 @@
+package com.demo.rag.fraud;
+
+import java.util.Set;
+
+/**
+ * FraudRules
+ *
+ * Thresholds and signal names of the deterministic transaction heuristics, shared by the
+ * triage path ({@link TransactionAnalytics}) and anything else that evaluates the same rules.
+ */
+public final class FraudRules {
+
+    private FraudRules() { }
+
+    // Signal names (stable: they appear in FraudResult.heuristics and prompts)
+    public static final String THRESHOLD_SKIRTING = "THRESHOLD_SKIRTING";
+    public static final String VELOCITY_SPIKE = "VELOCITY_SPIKE";
+    public static final String STRUCTURING_PATTERN = "STRUCTURING_PATTERN";
+    public static final String GEO_RISK = "GEO_RISK";
+    public static final String DEVICE_HOPPING = "DEVICE_HOPPING";
+
+    // Channels (compared case-insensitively; columns store them lower-cased)
+    public static final String CASH_DEPOSIT = "cash_deposit";
+    public static final String WIRE_OUT = "wire_out";
+
+    /** Near-threshold cash deposit: NEAR_LOW <= amount < NEAR_HIGH. */
+    public static final double NEAR_LOW = 9000;
+    public static final double NEAR_HIGH = 10000;
+    /** Near-threshold cash deposits (any time) needed for THRESHOLD_SKIRTING. */
+    public static final int SKIRTING_MIN = 3;
+
+    /** VELOCITY_SPIKE: at least VELOCITY_MIN transactions within VELOCITY_WINDOW_MS. */
+    public static final long VELOCITY_WINDOW_MS = 24L * 3600_000;
+    public static final int VELOCITY_MIN = 5;
+
+    /** STRUCTURING_PATTERN: at least STRUCTURING_MIN near-threshold cash deposits within STRUCTURING_WINDOW_MS. */
+    public static final long STRUCTURING_WINDOW_MS = 72L * 3600_000;
+    public static final int STRUCTURING_MIN = 3;
+
+    /** DEVICE_HOPPING: at least DEVICE_MIN distinct devices within DEVICE_WINDOW_MS. */
+    public static final long DEVICE_WINDOW_MS = 48L * 3600_000;
+    public static final int DEVICE_MIN = 3;
+
+    /** GEO_RISK: an outbound wire to one of these ISO-2 countries. */
+    public static final Set<String> HIGH_RISK_COUNTRIES = Set.of("IR", "KP", "SY", "RU", "BY", "AF", "YE");
+
+    public static boolean nearThreshold(double amount) {
+        return amount >= NEAR_LOW && amount < NEAR_HIGH;
+    }
+}
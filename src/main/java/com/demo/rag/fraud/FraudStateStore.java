@@ -0,0 +1,84 @@
+package com.demo.rag.fraud;
+
+import com.demo.rag.dto.TransactionEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FraudStateStore
+ *
+ * Live per-customer fraud state fed by /api/fraud/events; FraudAgent reads it during triage.
+ * - One {@link CustomerFraudState} per customerId; updates of different customers do not contend.
+ * - Customers idle (wall clock) for FRAUD_STATE_IDLE_HOURS (default 168) are dropped, and the store
+ *   holds at most FRAUD_STATE_MAX_CUSTOMERS (default 100000), evicting the least recently updated.
+ *
+ * State is in memory only; after a restart it is rebuilt from the event stream.
+ */
+@Component
+public class FraudStateStore {
+
+    private static final int SWEEP_EVERY = 10_000; // events between idle sweeps
+
+    public record Stats(int customers, long events, long rejected, long evicted) { }
+
+    private final ConcurrentHashMap<String, CustomerFraudState> states = new ConcurrentHashMap<>();
+    private final int maxCustomers;
+    private final long idleMillis;
+    private final AtomicLong events = new AtomicLong(), rejected = new AtomicLong(), evicted = new AtomicLong();
+
+    public FraudStateStore() {
+        this.maxCustomers = Integer.parseInt(
+                Optional.ofNullable(System.getenv("FRAUD_STATE_MAX_CUSTOMERS")).orElse("100000"));
+        this.idleMillis = Long.parseLong(
+                Optional.ofNullable(System.getenv("FRAUD_STATE_IDLE_HOURS")).orElse("168")) * 3600_000L;
+    }
+
+    /** Applies one event; false (and counted as rejected) when it has no customerId. */
+    public boolean ingest(TransactionEvent e) {
+        if (e == null || e.customerId() == null || e.customerId().isBlank()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        CustomerFraudState s = states.computeIfAbsent(e.customerId().trim(), CustomerFraudState::new);
+        s.apply(TransactionColumns.parseTs(e.ts()), e.amt() == null ? 0 : e.amt(), e.country(), e.channel(), e.device());
+
+        long n = events.incrementAndGet();
+        if (n % SWEEP_EVERY == 0 || states.size() > maxCustomers) sweep();
+        return true;
+    }
+
+    public Optional<CustomerFraudState.Snapshot> snapshot(String customerId) {
+        if (customerId == null || customerId.isBlank()) return Optional.empty();
+        CustomerFraudState s = states.get(customerId.trim());
+        return s == null ? Optional.empty() : Optional.of(s.snapshot());
+    }
+
+    public Stats stats() {
+        return new Stats(states.size(), events.get(), rejected.get(), evicted.get());
+    }
+
+    private synchronized void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        states.entrySet().removeIf(en -> {
+            boolean idle = en.getValue().touchedAt() < cutoff;
+            if (idle) evicted.incrementAndGet();
+            return idle;
+        });
+        int over = states.size() - maxCustomers;
+        if (over <= 0) return;
+        // over capacity: drop the least recently updated tenth (at least the overflow) in one go
+        states.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, CustomerFraudState> en) -> en.getValue().touchedAt()))
+                .limit(Math.max(over, maxCustomers / 10))
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(k -> {
+                    if (states.remove(k) != null) evicted.incrementAndGet();
+                });
+    }
+}
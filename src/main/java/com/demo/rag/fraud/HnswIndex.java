@@ -0,0 +1,202 @@
+package com.demo.rag.fraud;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * HnswIndex
+ *
+ * Hierarchical Navigable Small World graph (Malkov & Yashunin) for cosine nearest-neighbour search.
+ * - Vectors are L2-normalized and stored back to back in one float[] (no per-vector objects),
+ * - links are int arrays per node and layer; layer 0 keeps up to 2*M neighbours, upper layers M,
+ * - built once from a fixed set of vectors and read-only afterwards, so searches need no locking.
+ */
+final class HnswIndex {
+
+    /** Search result: node id and cosine similarity. */
+    record Neighbor(int id, double similarity) { }
+
+    private record Node(int id, float dist) { }
+
+    private final int dim;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMult;
+    private final float[] vectors;
+    private final int[][][] links;   // node -> layer -> neighbour ids
+    private final int[][] linkCount; // node -> layer -> used slots
+    private int entry = -1;
+    private int maxLevel = -1;
+
+    /**
+     * @param vectors        one vector per document, all of the same dimension
+     * @param m              links per node on upper layers (layer 0 keeps 2*m)
+     * @param efConstruction candidate list size while inserting
+     */
+    HnswIndex(float[][] vectors, int m, int efConstruction) {
+        this.dim = vectors.length == 0 ? 0 : vectors[0].length;
+        this.m = Math.max(2, m);
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMult = 1.0 / Math.log(this.m);
+        this.vectors = new float[vectors.length * dim];
+        this.links = new int[vectors.length][][];
+        this.linkCount = new int[vectors.length][];
+
+        Random rnd = new Random(42); // deterministic graph for a given KB
+        for (int i = 0; i < vectors.length; i++) {
+            if (vectors[i].length != dim) throw new IllegalArgumentException("vector " + i + " has dimension " + vectors[i].length);
+            normalizeInto(vectors[i], this.vectors, i * dim);
+            insert(i, (int) (-Math.log(1.0 - rnd.nextDouble()) * levelMult));
+        }
+    }
+
+    int size() { return links.length; }
+
+    int dimension() { return dim; }
+
+    /** Top-k most similar nodes to {@code query}; ef is the layer-0 candidate list size (>= k). */
+    List<Neighbor> search(float[] query, int k, int ef) {
+        if (entry < 0 || k <= 0) return List.of();
+        if (query.length != dim) throw new IllegalArgumentException("query dimension " + query.length + " != " + dim);
+        float[] q = new float[dim];
+        normalizeInto(query, q, 0);
+
+        int ep = entry;
+        for (int level = maxLevel; level > 0; level--) ep = greedy(q, 0, ep, level);
+        PriorityQueue<Node> found = searchLayer(q, 0, new int[]{ep}, Math.max(ef, k), 0);
+
+        Node[] sorted = found.toArray(new Node[0]);
+        Arrays.sort(sorted, (a, b) -> Float.compare(a.dist(), b.dist()));
+        List<Neighbor> out = new ArrayList<>(Math.min(k, sorted.length));
+        for (int i = 0; i < sorted.length && i < k; i++) out.add(new Neighbor(sorted[i].id(), 1.0 - sorted[i].dist()));
+        return out;
+    }
+
+    // ---------------- construction ----------------
+
+    private void insert(int id, int level) {
+        links[id] = new int[level + 1][];
+        linkCount[id] = new int[level + 1];
+        for (int l = 0; l <= level; l++) links[id][l] = new int[maxLinks(l) + 1]; // +1: room before pruning
+
+        if (entry < 0) {
+            entry = id;
+            maxLevel = level;
+            return;
+        }
+
+        int ep = entry;
+        for (int l = maxLevel; l > level; l--) ep = greedy(vectors, id * dim, ep, l);
+
+        int[] eps = {ep};
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Node> found = searchLayer(vectors, id * dim, eps, efConstruction, l);
+            Node[] sorted = found.toArray(new Node[0]);
+            Arrays.sort(sorted, (a, b) -> Float.compare(a.dist(), b.dist()));
+
+            for (int i = 0; i < sorted.length && i < m; i++) {
+                int nb = sorted[i].id();
+                link(id, nb, l);
+                link(nb, id, l);
+            }
+            eps = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) eps[i] = sorted[i].id();
+        }
+
+        if (level > maxLevel) {
+            entry = id;
+            maxLevel = level;
+        }
+    }
+
+    /** Adds {@code to} to {@code from}'s list on a layer, dropping the farthest link when the list is full. */
+    private void link(int from, int to, int level) {
+        int[] list = links[from][level];
+        int n = linkCount[from][level];
+        list[n++] = to;
+        if (n > maxLinks(level)) {
+            int worst = 0;
+            float worstDist = -1f;
+            for (int i = 0; i < n; i++) {
+                float d = dist(vectors, from * dim, list[i]);
+                if (d > worstDist) { worstDist = d; worst = i; }
+            }
+            list[worst] = list[--n];
+        }
+        linkCount[from][level] = n;
+    }
+
+    private int maxLinks(int level) { return level == 0 ? 2 * m : m; }
+
+    // ---------------- search ----------------
+
+    /** Greedy walk on one layer towards the vector at q[qOff..]. */
+    private int greedy(float[] q, int qOff, int ep, int level) {
+        int cur = ep;
+        float curDist = dist(q, qOff, cur);
+        for (boolean moved = true; moved; ) {
+            moved = false;
+            int[] list = links[cur][level];
+            for (int i = 0, n = linkCount[cur][level]; i < n; i++) {
+                float d = dist(q, qOff, list[i]);
+                if (d < curDist) { curDist = d; cur = list[i]; moved = true; }
+            }
+        }
+        return cur;
+    }
+
+    /** Beam search on one layer; returns (as a max-heap on distance) up to ef closest nodes. */
+    private PriorityQueue<Node> searchLayer(float[] q, int qOff, int[] eps, int ef, int level) {
+        boolean[] visited = new boolean[links.length];
+        PriorityQueue<Node> candidates = new PriorityQueue<>((a, b) -> Float.compare(a.dist(), b.dist()));
+        PriorityQueue<Node> found = new PriorityQueue<>((a, b) -> Float.compare(b.dist(), a.dist()));
+        for (int ep : eps) {
+            if (visited[ep]) continue;
+            visited[ep] = true;
+            Node n = new Node(ep, dist(q, qOff, ep));
+            candidates.add(n);
+            found.add(n);
+            if (found.size() > ef) found.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            Node c = candidates.poll();
+            if (found.size() >= ef && c.dist() > found.peek().dist()) break;
+            if (links[c.id()].length <= level) continue;
+            int[] list = links[c.id()][level];
+            for (int i = 0, n = linkCount[c.id()][level]; i < n; i++) {
+                int nb = list[i];
+                if (visited[nb]) continue;
+                visited[nb] = true;
+                float d = dist(q, qOff, nb);
+                if (found.size() < ef || d < found.peek().dist()) {
+                    Node x = new Node(nb, d);
+                    candidates.add(x);
+                    found.add(x);
+                    if (found.size() > ef) found.poll();
+                }
+            }
+        }
+        return found;
+    }
+
+    // ---------------- vectors ----------------
+
+    /** Cosine distance between q[qOff..qOff+dim) and stored node {@code id} (both normalized). */
+    private float dist(float[] q, int qOff, int id) {
+        int off = id * dim;
+        float dot = 0f;
+        for (int i = 0; i < dim; i++) dot += q[qOff + i] * vectors[off + i];
+        return 1f - dot;
+    }
+
+    private static void normalizeInto(float[] v, float[] out, int off) {
+        double norm = 0;
+        for (float x : v) norm += (double) x * x;
+        float inv = norm == 0 ? 0f : (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) out[off + i] = v[i] * inv;
+    }
+}
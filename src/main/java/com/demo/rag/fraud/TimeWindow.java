@@ -0,0 +1,85 @@
+package com.demo.rag.fraud;
+
+/**
+ * TimeWindow
+ *
+ * Event-time sliding window counter: how many events fall in [t - width, t].
+ * Timestamps sit in a sorted ring buffer that keeps 2 * width of history, so a late event
+ * (at most width behind the newest) can still be scored against every window it belongs to.
+ *
+ * In-order events cost O(1) amortized; late events cost O(events retained). Not thread-safe.
+ */
+final class TimeWindow {
+
+    private final long width;
+    private long[] buf = new long[16];
+    private int head, size;
+    private int lo; // logical index of the first event inside [newest - width, newest]
+
+    TimeWindow(long width) {
+        this.width = width;
+    }
+
+    /**
+     * Adds an event at t.
+     *
+     * @return the largest count of any window containing t (for in-order events: the current window),
+     *         or -1 when t is more than width behind the newest event and was not recorded
+     */
+    int add(long t) {
+        if (size > 0 && t < newest() - width) return -1;
+        if (size == 0 || t >= newest()) {
+            push(t);
+            long horizon = t - 2 * width;
+            while (get(0) < horizon) { head = (head + 1) % buf.length; size--; lo--; }
+            if (lo < 0) lo = 0;
+            while (get(lo) < t - width) lo++;
+            return size - lo;
+        }
+        insertSorted(t); // t >= newest - width, so it lands at or after lo
+        return peakAround(t);
+    }
+
+    /** Events in the window ending at {@code now} (>= the newest event); does not move the window. */
+    int current(long now) {
+        int from = lo;
+        while (from < size && get(from) < now - width) from++;
+        return size - from;
+    }
+
+    // ---------------- ring buffer ----------------
+
+    private long newest() { return get(size - 1); }
+
+    private long get(int i) { return buf[(head + i) % buf.length]; }
+
+    private void set(int i, long v) { buf[(head + i) % buf.length] = v; }
+
+    private void push(long t) {
+        if (size == buf.length) {
+            long[] n = new long[buf.length * 2];
+            for (int i = 0; i < size; i++) n[i] = get(i);
+            buf = n;
+            head = 0;
+        }
+        set(size++, t);
+    }
+
+    private void insertSorted(long t) {
+        push(t);
+        int i = size - 1;
+        while (i > 0 && get(i - 1) > t) { set(i, get(i - 1)); i--; }
+        set(i, t);
+    }
+
+    /** Max over windows [e - width, e] with e in [t, t + width]; history reaches back 2 * width, so counts are exact. */
+    private int peakAround(long t) {
+        int best = 0;
+        for (int k = 0, from = 0; k < size; k++) {
+            long e = get(k);
+            while (get(from) < e - width) from++;
+            if (e >= t && e - t <= width) best = Math.max(best, k - from + 1);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,85 @@
+package com.demo.rag.fraud;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.demo.rag.fraud.FraudRules.*;
+
+/**
+ * TransactionAnalytics
+ *
+ * Evaluates every {@link FraudRules} heuristic in one pass over {@link TransactionColumns} in time order:
+ * - velocity and device windows are two-pointer sliding windows over the same sorted sweep,
+ * - near-threshold cash deposits feed their own window as they are met (no second filter/sort),
+ * - device counts are an int[] indexed by the interned device id (no map churn).
+ *
+ * O(n) after the sort (which is skipped for already ordered input). Windows only consider rows
+ * with a timestamp; amount/country rules (skirting, geo) consider every row.
+ */
+public final class TransactionAnalytics {
+
+    private TransactionAnalytics() { }
+
+    /** Raw rule measurements plus the resulting signals, in stable order. */
+    public record Summary(int transactions, int timestamped, int nearThresholdCash, int maxIn24h,
+                          int maxNearCashIn72h, int maxDevicesIn48h, boolean highRiskWire, List<String> signals) { }
+
+    public static Summary analyze(TransactionColumns c) {
+        int n = c.size();
+        int[] order = c.sortedOrder();
+
+        int cash = c.channelId(CASH_DEPOSIT);
+        int wire = c.channelId(WIRE_OUT);
+        boolean[] riskyCountry = new boolean[c.countryCount()];
+        for (int i = 0; i < riskyCountry.length; i++) riskyCountry[i] = HIGH_RISK_COUNTRIES.contains(c.countryName(i));
+
+        int[] deviceCount = new int[c.deviceCount()];
+        long[] nearTs = new long[n];
+        int nearHead = 0, nearTail = 0;
+        int velLeft = -1, devLeft = -1, distinctDevices = 0;
+
+        int timestamped = 0, nearTotal = 0, maxVel = 0, maxNear = 0, maxDev = 0;
+        boolean geo = false;
+
+        for (int p = 0; p < n; p++) {
+            int i = order[p];
+            boolean near = cash >= 0 && c.channel(i) == cash && nearThreshold(c.amount(i));
+            if (near) nearTotal++;
+            if (!geo && wire >= 0 && c.channel(i) == wire && c.country(i) >= 0 && riskyCountry[c.country(i)]) geo = true;
+
+            long t = c.ts(i);
+            if (t == TransactionColumns.NO_TS) continue; // sorted first, so windows start after them
+            timestamped++;
+            if (velLeft < 0) velLeft = devLeft = p;
+
+            // velocity: transactions within the last 24h (inclusive)
+            while (t - c.ts(order[velLeft]) > VELOCITY_WINDOW_MS) velLeft++;
+            maxVel = Math.max(maxVel, p - velLeft + 1);
+
+            // structuring: near-threshold cash deposits within the last 72h
+            if (near) {
+                nearTs[nearTail++] = t;
+                while (t - nearTs[nearHead] > STRUCTURING_WINDOW_MS) nearHead++;
+                maxNear = Math.max(maxNear, nearTail - nearHead);
+            }
+
+            // device hopping: distinct devices within the last 48h
+            int d = c.device(i);
+            if (d >= 0 && deviceCount[d]++ == 0) distinctDevices++;
+            while (t - c.ts(order[devLeft]) > DEVICE_WINDOW_MS) {
+                int od = c.device(order[devLeft++]);
+                if (od >= 0 && --deviceCount[od] == 0) distinctDevices--;
+            }
+            maxDev = Math.max(maxDev, distinctDevices);
+        }
+
+        List<String> signals = new ArrayList<>(5);
+        if (nearTotal >= SKIRTING_MIN) signals.add(THRESHOLD_SKIRTING);
+        if (maxVel >= VELOCITY_MIN) signals.add(VELOCITY_SPIKE);
+        if (maxNear >= STRUCTURING_MIN) signals.add(STRUCTURING_PATTERN);
+        if (geo) signals.add(GEO_RISK);
+        if (maxDev >= DEVICE_MIN) signals.add(DEVICE_HOPPING);
+
+        return new Summary(n, timestamped, nearTotal, maxVel, maxNear, maxDev, geo, signals);
+    }
+}
@@ -0,0 +1,218 @@
+package com.demo.rag.fraud;
+
+import com.demo.rag.dto.TransactionDto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * TransactionColumns
+ *
+ * Column-oriented transaction batch for the fraud heuristics:
+ * - timestamps as epoch millis ({@code long[]}, {@link #NO_TS} when missing/unparseable),
+ * - amounts as {@code double[]},
+ * - channel / country / device interned to dense int ids per batch (-1 when blank).
+ *
+ * Channels are stored lower-case and countries upper-case, so rule lookups are exact.
+ * ISO-8601 UTC timestamps ("2025-02-10T09:12:00Z", optional fraction) are parsed without allocation;
+ * anything else falls back to {@link Instant#parse}.
+ */
+public final class TransactionColumns {
+
+    public static final long NO_TS = Long.MIN_VALUE;
+
+    private long[] ts;
+    private double[] amt;
+    private int[] channel, country, device;
+    private int size;
+
+    private final Dictionary channels = new Dictionary();
+    private final Dictionary countries = new Dictionary();
+    private final Dictionary devices = new Dictionary();
+
+    public TransactionColumns(int capacity) {
+        int c = Math.max(capacity, 8);
+        ts = new long[c];
+        amt = new double[c];
+        channel = new int[c];
+        country = new int[c];
+        device = new int[c];
+    }
+
+    public static TransactionColumns of(List<TransactionDto> txs) {
+        TransactionColumns c = new TransactionColumns(txs == null ? 0 : txs.size());
+        if (txs == null) return c;
+        for (TransactionDto t : txs) {
+            if (t == null) continue;
+            c.add(parseTs(t.ts()), t.amt() == null ? 0 : t.amt(), t.country(), t.channel(), t.device());
+        }
+        return c;
+    }
+
+    public void add(long tsMillis, double amount, String countryCode, String channelName, String deviceId) {
+        if (size == ts.length) grow();
+        ts[size] = tsMillis;
+        amt[size] = amount;
+        channel[size] = channels.id(channelName == null ? null : channelName.toLowerCase(Locale.ROOT));
+        country[size] = countries.id(countryCode == null ? null : countryCode.toUpperCase(Locale.ROOT));
+        device[size] = devices.id(deviceId);
+        size++;
+    }
+
+    public int size() { return size; }
+
+    public long ts(int i) { return ts[i]; }
+
+    public double amount(int i) { return amt[i]; }
+
+    public int channel(int i) { return channel[i]; }
+
+    public int country(int i) { return country[i]; }
+
+    public int device(int i) { return device[i]; }
+
+    /** Id of a (lower-case) channel name in this batch, -1 if it does not occur. */
+    public int channelId(String name) { return channels.lookup(name); }
+
+    public String countryName(int id) { return countries.name(id); }
+
+    public String channelName(int id) { return channels.name(id); }
+
+    public String deviceName(int id) { return devices.name(id); }
+
+    public int countryCount() { return countries.size(); }
+
+    public int deviceCount() { return devices.size(); }
+
+    /** Row indices ordered by timestamp (stable; rows without a timestamp first). */
+    public int[] sortedOrder() {
+        int[] order = new int[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            if (i > 0 && ts[i] < ts[i - 1]) sorted = false;
+        }
+        if (sorted) return order;
+        int[] tmp = new int[size];
+        mergeSort(order, tmp, 0, size);
+        return order;
+    }
+
+    // ---------------- parsing ----------------
+
+    /** Epoch millis of an ISO-8601 instant, or {@link #NO_TS}. */
+    public static long parseTs(String s) {
+        if (s == null || s.isEmpty()) return NO_TS;
+        long fast = parseUtc(s);
+        if (fast != NO_TS) return fast;
+        try {
+            return Instant.parse(s).toEpochMilli();
+        } catch (Exception e) {
+            return NO_TS;
+        }
+    }
+
+    /** yyyy-MM-ddTHH:mm:ss[.SSS…]Z → epoch millis; NO_TS if the string has any other shape. */
+    private static long parseUtc(String s) {
+        int n = s.length();
+        if (n < 20 || s.charAt(n - 1) != 'Z' || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':') return NO_TS;
+        int y = digits(s, 0, 4), mo = digits(s, 5, 2), d = digits(s, 8, 2);
+        int h = digits(s, 11, 2), mi = digits(s, 14, 2), se = digits(s, 17, 2);
+        if (y < 0 || mo < 1 || mo > 12 || d < 1 || d > monthLength(y, mo) || h < 0 || h > 23
+                || mi < 0 || mi > 59 || se < 0 || se > 59) return NO_TS;
+
+        int millis = 0;
+        if (n > 20) {
+            if (s.charAt(19) != '.' || n == 21) return NO_TS;
+            for (int i = 20, scale = 100; i < n - 1; i++, scale /= 10) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') return NO_TS;
+                millis += (c - '0') * scale; // digits past millis contribute 0
+            }
+        } else if (s.charAt(19) != 'Z') {
+            return NO_TS;
+        }
+        return ((daysFromCivil(y, mo, d) * 24 + h) * 60 + mi) * 60_000L + se * 1000L + millis;
+    }
+
+    private static int digits(String s, int from, int len) {
+        int v = 0;
+        for (int i = from; i < from + len; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int monthLength(int y, int m) {
+        if (m == 2) return (y % 4 == 0 && (y % 100 != 0 || y % 400 == 0)) ? 29 : 28;
+        return (m == 4 || m == 6 || m == 9 || m == 11) ? 30 : 31;
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's algorithm). */
+    private static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    // ---------------- helpers ----------------
+
+    private void grow() {
+        int c = ts.length * 2;
+        ts = Arrays.copyOf(ts, c);
+        amt = Arrays.copyOf(amt, c);
+        channel = Arrays.copyOf(channel, c);
+        country = Arrays.copyOf(country, c);
+        device = Arrays.copyOf(device, c);
+    }
+
+    private void mergeSort(int[] a, int[] tmp, int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid);
+        mergeSort(a, tmp, mid, to);
+        if (ts[a[mid - 1]] <= ts[a[mid]]) return;
+        System.arraycopy(a, from, tmp, from, to - from);
+        for (int i = from, l = from, r = mid; i < to; i++) {
+            if (r >= to || (l < mid && ts[tmp[l]] <= ts[tmp[r]])) a[i] = tmp[l++];
+            else a[i] = tmp[r++];
+        }
+    }
+
+    /** String → dense id; blank strings map to -1. */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int id(String s) {
+            if (s == null || s.isBlank()) return -1;
+            Integer id = ids.get(s);
+            if (id == null) {
+                id = names.size();
+                ids.put(s, id);
+                names.add(s);
+            }
+            return id;
+        }
+
+        int lookup(String s) {
+            Integer id = s == null ? null : ids.get(s);
+            return id == null ? -1 : id;
+        }
+
+        String name(int id) { return id < 0 ? null : names.get(id); }
+
+        int size() { return names.size(); }
+    }
+}
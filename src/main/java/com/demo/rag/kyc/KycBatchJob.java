@@ -0,0 +1,414 @@
+package com.demo.rag.kyc;
+
+import com.demo.rag.agents.ExtractorAgent;
+import com.demo.rag.agents.FraudAgent;
+import com.demo.rag.agents.RiskAgent;
+import com.demo.rag.agents.ScreeningAgent;
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.RiskEnvelope;
+import com.demo.rag.dto.RiskEnvelope.IdentityUsed;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.load.BatchJobs;
+import com.demo.rag.load.CsvColumns;
+import com.demo.rag.load.CsvReader;
+import com.demo.rag.util.AsyncLimiter;
+import com.demo.rag.util.Bulkhead;
+import com.demo.rag.util.RateLimiter;
+import com.demo.rag.util.VirtualThreads;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.demo.rag.load.CsvColumns.col;
+
+/**
+ * KycBatchJob
+ *
+ * Onboards a whole customer file (shaped like static/docs/kyc_customers_sample.csv) through the
+ * /api/kyc/start stages, streaming: rows are read one by one and each customer flows through
+ * extraction → screening and fraud → risk as soon as its inputs are ready, so all four remote services
+ * are busy at the same time instead of one batch step after another.
+ * - every stage has its own concurrency limit and request rate: KYC_BATCH_{EXTRACTOR,SCREENING,FRAUD,RISK}_CONCURRENCY
+ *   (defaults 4 / 16 / 8 / 8) and KYC_BATCH_..._RPS (calls per second, default 0 = unlimited) — set them to the quotas,
+ * - extraction is non-blocking: waiting for its slot and the Document Intelligence polling hold no thread
+ *   (ExtractorAgent's DOCINT_MAX_IN_FLIGHT / DOCINT_MAX_QUEUED apply on top),
+ * - at most KYC_BATCH_MAX_IN_FLIGHT (default 64) customers are in flight; reading waits for a free slot,
+ * - results are appended to {@code <jobId>.results.ndjson} as each customer finishes (completion order,
+ *   one line per customer with its row number); the file is the checkpoint: resuming a job skips the rows
+ *   that already have an "ok" line and retries the rest; a customer whose document could not be analyzed
+ *   ("analyze-failed" / "extractor-busy") is written as failed, without a risk call, so it is retried too.
+ *
+ * Input CSV header: customer_id, full_name, dob and optional document (URL or classpath path) and question;
+ * camelCase names (customerId, name, birthDate, documentText) work too, other columns are ignored.
+ * Files live under KYC_BATCH_DIR (default data/kyc-batch). Jobs run one at a time.
+ */
+@Service
+public class KycBatchJob {
+
+    private static final int KEEP_JOBS = 20;
+    private static final String DEFAULT_QUESTION = "Assess KYC/AML onboarding risk for this customer.";
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    /** concurrency for blocking stages, inFlight for the non-blocking extractor stage. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record StageStats(Bulkhead.Stats concurrency, AsyncLimiter.Stats inFlight, RateLimiter.Stats rate) { }
+
+    /** Progress snapshot; customersPerSec counts finished customers (ok + failed) of this run. */
+    public record Status(String jobId, State state, String input, String output, boolean resumed,
+                         long rowsRead, long skipped, long badRows, long ok, long failed, int inFlight,
+                         long elapsedMs, double customersPerSec, Map<String, StageStats> stages,
+                         Instant startedAt, String error) { }
+
+    /** Stored next to the results so a job can be resumed after a restart. */
+    private record Meta(String jobId, String input, String question, Instant createdAt) { }
+
+    private record Row(int row, String customerId, String name, String dob, String doc, String question) { }
+
+    private final ObjectMapper om;
+    private final ExtractorAgent extractor;
+    private final ScreeningAgent screening;
+    private final FraudAgent fraud;
+    private final RiskAgent risk;
+    private final Path baseDir;
+    private final int maxInFlight;
+    private final Stage extractStage, screenStage, fraudStage, riskStage;
+    private final BatchJobs<Job> jobs = new BatchJobs<>("kyc-batch", KEEP_JOBS);
+    private final ExecutorService exec;
+
+    public KycBatchJob(ObjectMapper objectMapper, ExtractorAgent extractor, ScreeningAgent screening,
+                       FraudAgent fraud, RiskAgent risk) {
+        this.om = objectMapper;
+        this.extractor = extractor;
+        this.screening = screening;
+        this.fraud = fraud;
+        this.risk = risk;
+        this.baseDir = Path.of(Optional.ofNullable(System.getenv("KYC_BATCH_DIR")).orElse("data/kyc-batch"))
+                .toAbsolutePath().normalize();
+        this.maxInFlight = Integer.parseInt(Optional.ofNullable(System.getenv("KYC_BATCH_MAX_IN_FLIGHT")).orElse("64"));
+        this.extractStage = new Stage("extractor", 4, true);
+        this.screenStage = new Stage("screening", 16, false);
+        this.fraudStage = new Stage("fraud", 8, false);
+        this.riskStage = new Stage("risk", 8, false);
+
+        this.exec = VirtualThreads.newPerTaskExecutor("kyc-batch-");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.shutdown();
+        exec.shutdownNow();
+    }
+
+    /**
+     * Queues a new job over {@code input} (a file under KYC_BATCH_DIR).
+     *
+     * @param question default analyst question, for rows without a question column
+     */
+    public Status submit(Path input, String question) {
+        Path in = baseDir.resolve(input).normalize();
+        if (!in.startsWith(baseDir) || !Files.isRegularFile(in)) {
+            throw new IllegalArgumentException("input must name a file under " + baseDir);
+        }
+        Job job = new Job(UUID.randomUUID().toString().substring(0, 8), in,
+                question == null || question.isBlank() ? DEFAULT_QUESTION : question, false);
+        return queue(job);
+    }
+
+    /** Queues job {@code jobId} again; customers with an "ok" result line are skipped. */
+    public Status resume(String jobId) {
+        Job current = jobs.get(jobId).orElse(null);
+        if (current != null && !current.finished()) throw new IllegalStateException("job " + jobId + " is still " + current.state);
+        Path metaFile = baseDir.resolve(jobId + ".job.json").normalize();
+        if (!metaFile.startsWith(baseDir) || !Files.isRegularFile(metaFile)) {
+            throw new IllegalArgumentException("unknown job: " + jobId);
+        }
+        Meta meta;
+        try {
+            meta = om.readValue(metaFile.toFile(), Meta.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unreadable job file " + metaFile.getFileName() + ": " + e.getMessage());
+        }
+        Path in = baseDir.resolve(meta.input()).normalize();
+        if (!in.startsWith(baseDir) || !Files.isRegularFile(in)) {
+            throw new IllegalArgumentException("input of job " + jobId + " is gone: " + meta.input());
+        }
+        return queue(new Job(jobId, in, meta.question(), true));
+    }
+
+    public Optional<Status> status(String jobId) {
+        return jobs.get(jobId).map(Job::status);
+    }
+
+    public List<Status> list() {
+        return jobs.list().stream().map(Job::status).toList();
+    }
+
+    public Map<String, StageStats> stageStats() {
+        Map<String, StageStats> out = new LinkedHashMap<>();
+        for (Stage s : List.of(extractStage, screenStage, fraudStage, riskStage)) out.put(s.name, s.stats());
+        return out;
+    }
+
+    // ---------------- job ----------------
+
+    private Status queue(Job job) {
+        return jobs.submit(job, () -> run(job)).status();
+    }
+
+    private void run(Job job) {
+        job.state = State.RUNNING;
+        Semaphore slots = new Semaphore(Math.max(1, maxInFlight));
+        try {
+            BitSet done = new BitSet();
+            if (job.resumed) {
+                done = loadDone(job.output);
+            } else {
+                om.writeValue(baseDir.resolve(job.id + ".job.json").toFile(),
+                        new Meta(job.id, baseDir.relativize(job.input).toString(), job.question, Instant.now()));
+            }
+
+            try (CsvReader csv = new CsvReader(Files.newBufferedReader(job.input, StandardCharsets.UTF_8));
+                 BufferedWriter out = Files.newBufferedWriter(job.output, StandardCharsets.UTF_8,
+                         StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                String[] header = csv.next();
+                if (header == null) throw new IllegalArgumentException("CSV is empty: " + job.input);
+                int[] idx = columns(new CsvColumns(header));
+
+                int row = 0;
+                for (String[] f = csv.next(); f != null; f = csv.next()) {
+                    row++;
+                    job.rows.incrementAndGet();
+                    if (done.get(row)) {
+                        job.skipped.incrementAndGet();
+                        continue;
+                    }
+                    String customer = col(f, idx[0]);
+                    if (customer.isBlank()) {
+                        job.badRows.incrementAndGet();
+                        continue;
+                    }
+                    String q = col(f, idx[4]);
+                    Row r = new Row(row, customer, col(f, idx[1]), col(f, idx[2]), col(f, idx[3]),
+                            q.isBlank() ? job.question : q);
+
+                    slots.acquire(); // back-pressure: reading never runs far ahead of the slowest stage
+                    job.inFlight.incrementAndGet();
+                    process(job, r, out).whenComplete((v, e) -> {
+                        job.inFlight.decrementAndGet();
+                        slots.release();
+                    });
+                }
+                slots.acquire(Math.max(1, maxInFlight)); // wait for the last customers
+            }
+            job.state = job.writeError != null ? State.FAILED : State.DONE;
+            if (job.writeError != null) job.error = "result write failed: " + job.writeError;
+        } catch (Throwable e) {
+            job.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            job.state = State.FAILED;
+        }
+    }
+
+    /** One customer through the stages; completes after its result line is written. */
+    private CompletableFuture<Void> process(Job job, Row r, BufferedWriter out) {
+        long t0 = System.nanoTime();
+        CompletableFuture<DocSignals> fDoc = r.doc().isBlank()
+                ? CompletableFuture.completedFuture(DocSignals.error("no-document", null))
+                : extract(r.doc());
+        CompletableFuture<FraudResult> fFraud = CompletableFuture.supplyAsync(() ->
+                fraudStage.call(() -> fraud.triage(r.question(), List.of(), r.customerId())), exec);
+        CompletableFuture<IdentityUsed> fIdentity = fDoc.thenApply(d -> KycPipeline.pickIdentity(d, r.name(), r.dob()));
+        CompletableFuture<ScreeningResult> fScreen = fIdentity.thenApplyAsync(id ->
+                screenStage.call(() -> screening.sanctionsScreen(id.name(), id.dob())), exec);
+
+        return CompletableFuture.allOf(fDoc, fFraud, fScreen)
+                .thenApplyAsync(v -> {
+                    // no "ok" line without the document: the row fails and a resumed job runs it again
+                    DocSignals d = fDoc.join();
+                    if (KycPipeline.retryableDoc(d)) {
+                        throw new IllegalStateException("extraction " + d.error()
+                                + (d.message() == null || d.message().isBlank() ? "" : ": " + d.message()));
+                    }
+                    return riskStage.call(() -> risk.scoreDetailed(fScreen.join(), d, fFraud.join(), null)
+                            .withIdentity(fIdentity.join(), r.doc().isBlank() ? null : r.doc()));
+                }, exec)
+                .handle((env, e) -> {
+                    write(job, out, r, env, e, (System.nanoTime() - t0) / 1_000_000);
+                    return null;
+                });
+    }
+
+    /** Non-blocking Document Intelligence call inside the extractor stage limits; failures become docSignals errors. */
+    private CompletableFuture<DocSignals> extract(String docRef) {
+        return extractStage.callAsync(() -> KycPipeline.inspectAsync(extractor, docRef), exec)
+                .exceptionally(e -> KycPipeline.extractFailed(docRef, e));
+    }
+
+    private void write(Job job, BufferedWriter out, Row r, RiskEnvelope env, Throwable e, long ms) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("row", r.row());
+        line.put("customerId", r.customerId());
+        if (e == null) {
+            line.put("status", "ok");
+            line.put("envelope", env);
+        } else {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            line.put("status", "failed");
+            line.put("error", cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage());
+        }
+        line.put("ms", ms);
+        try {
+            String json = om.writeValueAsString(line);
+            synchronized (out) {
+                out.write(json);
+                out.newLine();
+                out.flush(); // the line is the checkpoint of this customer
+            }
+            (e == null ? job.ok : job.failed).incrementAndGet();
+        } catch (IOException io) {
+            job.failed.incrementAndGet();
+            job.writeError = io.getMessage();
+        }
+    }
+
+    /** Rows with an "ok" line; a half-written last line (crash while writing) is cut off first. */
+    private BitSet loadDone(Path results) throws IOException {
+        BitSet done = new BitSet();
+        if (!Files.isRegularFile(results)) return done;
+        try (FileChannel ch = FileChannel.open(results, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long keep = ch.size();
+            ByteBuffer b = ByteBuffer.allocate(1);
+            while (keep > 0) {
+                b.clear();
+                ch.read(b, keep - 1);
+                if (b.get(0) == '\n') break;
+                keep--;
+            }
+            ch.truncate(keep);
+        }
+        try (BufferedReader in = Files.newBufferedReader(results, StandardCharsets.UTF_8)) {
+            for (String l = in.readLine(); l != null; l = in.readLine()) {
+                if (l.isBlank()) continue;
+                try {
+                    JsonNode n = om.readTree(l);
+                    if ("ok".equals(n.path("status").asText())) done.set(n.path("row").asInt());
+                } catch (IOException ignore) {
+                    // unreadable line: that customer is simply run again
+                }
+            }
+        }
+        return done;
+    }
+
+    // ---------------- helpers ----------------
+
+    /** Column indexes of customerId, name, dob, document, question (-1 when absent). */
+    private static int[] columns(CsvColumns cols) {
+        int[] idx = {
+                cols.first("customer_id"),
+                cols.first("full_name", "name"),
+                cols.first("dob", "birthDate"),
+                cols.first("document", "documentText", "documentRef"),
+                cols.first("question")};
+        if (idx[0] < 0) throw new IllegalArgumentException("CSV has no 'customer_id' column");
+        if (idx[1] < 0 && idx[3] < 0) throw new IllegalArgumentException("CSV needs a 'full_name' or 'document' column");
+        return idx;
+    }
+
+    /**
+     * Concurrency limit + request rate of one remote service; callers wait (no rejection) for both.
+     * A non-blocking stage ({@code async}) queues its calls instead of parking a thread on the slot and the rate.
+     */
+    private static final class Stage {
+        final String name;
+        final Bulkhead slots;          // blocking stages
+        final AsyncLimiter asyncSlots; // async stages
+        final RateLimiter rate;
+
+        Stage(String name, int defaultConcurrency, boolean async) {
+            String env = "KYC_BATCH_" + name.toUpperCase(Locale.ROOT);
+            int limit = Math.max(1, Integer.parseInt(Optional.ofNullable(System.getenv(env + "_CONCURRENCY"))
+                    .orElse(String.valueOf(defaultConcurrency))));
+            double rps = Double.parseDouble(Optional.ofNullable(System.getenv(env + "_RPS")).orElse("0"));
+            this.name = name;
+            this.slots = async ? null : new Bulkhead("batch-" + name, limit, Long.MAX_VALUE);
+            this.asyncSlots = async ? new AsyncLimiter("batch-" + name, limit, Integer.MAX_VALUE) : null;
+            this.rate = new RateLimiter(rps, limit);
+        }
+
+        <T> T call(Supplier<T> work) {
+            return slots.call(() -> {
+                try {
+                    rate.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException(name + " interrupted");
+                }
+                return work.get();
+            });
+        }
+
+        /** Starts {@code work} on {@code exec} once a slot is free and the rate allows; the slot is held until it completes. */
+        <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> work, Executor exec) {
+            return asyncSlots.submit(() -> {
+                long wait = rate.reserve();
+                Executor start = wait > 0 ? CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, exec) : exec;
+                return CompletableFuture.supplyAsync(work, start).thenCompose(f -> f);
+            });
+        }
+
+        StageStats stats() {
+            return new StageStats(slots == null ? null : slots.stats(),
+                    asyncSlots == null ? null : asyncSlots.stats(), rate.stats());
+        }
+    }
+
+    private final class Job extends BatchJobs.Job {
+        final Path input, output;
+        final String question;
+        final boolean resumed;
+        final AtomicLong rows = new AtomicLong(), skipped = new AtomicLong(), badRows = new AtomicLong(),
+                ok = new AtomicLong(), failed = new AtomicLong();
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile State state = State.QUEUED;
+        volatile String error, writeError;
+
+        Job(String id, Path input, String question, boolean resumed) {
+            super(id);
+            this.input = input;
+            this.output = baseDir.resolve(id + ".results.ndjson");
+            this.question = question;
+            this.resumed = resumed;
+        }
+
+        @Override
+        public boolean finished() { return state == State.DONE || state == State.FAILED; }
+
+        Status status() {
+            long ms = elapsedMs();
+            double cps = Math.round(perSec(ok.get() + failed.get(), ms) * 10) / 10.0;
+            return new Status(id, state, baseDir.relativize(input).toString(), output.getFileName().toString(),
+                    resumed, rows.get(), skipped.get(), badRows.get(), ok.get(), failed.get(), inFlight.get(),
+                    ms, cps, stageStats(), startedAt(), error);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.demo.rag.kyc;
+
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.KycStartRequest;
+import com.demo.rag.dto.RiskEnvelope;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.kyc.KycJobStore.Job;
+import com.demo.rag.kyc.KycJobStore.Stage;
+import com.demo.rag.kyc.KycJobStore.State;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KycJobService
+ *
+ * Asynchronous /api/kyc/start: submit stores the request in {@link KycJobStore} and returns at once;
+ * KYC_JOB_WORKERS (default 4) worker threads claim jobs and run them through {@link KycPipeline}.
+ * - every stage (docSignals, fraud, screening) is checkpointed as soon as it completes, so a retry only
+ *   re-runs the stages that failed; a docSignals "extractor-busy" or "analyze-failed" answer is not kept and fails
+ *   the attempt (so extraction and screening run again), except on the last attempt, which scores without it,
+ * - a failed attempt is re-queued with exponential backoff (2^attempt s, max 60 s) up to KYC_JOB_MAX_ATTEMPTS
+ *   (default 3), then the job is FAILED,
+ * - a claim is a lease of KYC_JOB_LEASE_SECONDS (default 300), renewed by each checkpoint; jobs of a crashed
+ *   worker or node are claimed again when the lease runs out,
+ * - idle workers poll every KYC_JOB_POLL_MS (default 1000); submits on this node wake them at once.
+ * Waiters ({@link #onFinished}) are notified when a job ends on this node; other nodes see it on their next read.
+ * When the table cannot be created (no database) the service stays disabled and the API answers 503.
+ */
+@Service
+public class KycJobService {
+
+    /** The job API when the store is unavailable. */
+    public static class UnavailableException extends RuntimeException {
+        public UnavailableException(String message) { super(message); }
+    }
+
+    /** API view of a job; result is the RiskEnvelope once SUCCEEDED. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record JobView(String id, State state, int attempts, int maxAttempts, List<String> stagesDone,
+                          JsonNode result, String error, Instant createdAt, Instant updatedAt) {
+
+        public boolean finished() { return state == State.SUCCEEDED || state == State.FAILED; }
+    }
+
+    public record Stats(boolean enabled, String node, int workers, long processed, long succeeded, long retried,
+                        long failed, long leaseLost, Map<String, Object> jobs, String error) { }
+
+    private static final long MAX_BACKOFF_SECONDS = 60;
+
+    private final KycJobStore store;
+    private final KycPipeline pipeline;
+    private final ObjectMapper om;
+    private final int workers;
+    private final long pollMs;
+    private final long leaseSeconds;
+    private final int maxAttempts;
+    private final String node = "node-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final Object wake = new Object();
+    private final Map<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+    private final AtomicLong processed = new AtomicLong(), succeeded = new AtomicLong(), retried = new AtomicLong(),
+            failed = new AtomicLong(), leaseLost = new AtomicLong();
+    private volatile boolean running;
+    private volatile String initError;
+
+    public KycJobService(KycJobStore store, KycPipeline pipeline, ObjectMapper objectMapper) {
+        this.store = store;
+        this.pipeline = pipeline;
+        this.om = objectMapper;
+        this.workers = Integer.parseInt(Optional.ofNullable(System.getenv("KYC_JOB_WORKERS")).orElse("4"));
+        this.pollMs = Long.parseLong(Optional.ofNullable(System.getenv("KYC_JOB_POLL_MS")).orElse("1000"));
+        this.leaseSeconds = Long.parseLong(Optional.ofNullable(System.getenv("KYC_JOB_LEASE_SECONDS")).orElse("300"));
+        this.maxAttempts = Integer.parseInt(Optional.ofNullable(System.getenv("KYC_JOB_MAX_ATTEMPTS")).orElse("3"));
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            store.createSchema();
+        } catch (Exception e) {
+            // the synchronous /api/kyc/start still works without a database
+            initError = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            return;
+        }
+        running = true;
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            String owner = node + "/" + i;
+            Thread t = new Thread(() -> work(owner), "kyc-job-" + i);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        threads.forEach(Thread::interrupt); // leases of interrupted jobs expire and another node picks them up
+    }
+
+    public JobView submit(KycStartRequest req) {
+        requireEnabled();
+        String id = UUID.randomUUID().toString();
+        store.insert(id, json(req), Math.max(1, maxAttempts));
+        synchronized (wake) { wake.notifyAll(); }
+        return find(id).orElseThrow();
+    }
+
+    public Optional<JobView> find(String id) {
+        requireEnabled();
+        return store.find(id).map(this::view);
+    }
+
+    /**
+     * Runs {@code callback} once when job {@code id} ends on this node; returns the unregister action.
+     * Check the job again after registering — it may have ended just before.
+     */
+    public Runnable onFinished(String id, Runnable callback) {
+        waiters.computeIfAbsent(id, k -> new CopyOnWriteArraySet<>()).add(callback);
+        return () -> waiters.computeIfPresent(id, (k, set) -> {
+            set.remove(callback);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    public Stats stats() {
+        Map<String, Object> jobs = null;
+        if (initError == null) {
+            try { jobs = store.counts(); } catch (Exception e) { jobs = Map.of("error", String.valueOf(e.getMessage())); }
+        }
+        return new Stats(initError == null, node, threads.size(), processed.get(), succeeded.get(), retried.get(),
+                failed.get(), leaseLost.get(), jobs, initError);
+    }
+
+    // -------- worker --------
+
+    private void work(String owner) {
+        while (running) {
+            try {
+                List<Job> claimed = store.claim(owner, 1, leaseSeconds);
+                if (claimed.isEmpty()) {
+                    synchronized (wake) { wake.wait(pollMs); }
+                    continue;
+                }
+                process(claimed.get(0), owner);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // database hiccup: back off one poll interval and try again
+                try { Thread.sleep(pollMs); } catch (InterruptedException ie) { return; }
+            }
+        }
+    }
+
+    private void process(Job job, String owner) {
+        processed.incrementAndGet();
+        boolean lastAttempt = job.attempts() >= job.maxAttempts();
+        try {
+            KycStartRequest req = om.readValue(job.request(), KycStartRequest.class);
+            KycPipeline.Stages st = pipeline.resume(req,
+                    read(job.doc(), DocSignals.class),
+                    read(job.fraud(), FraudResult.class),
+                    read(job.screening(), ScreeningResult.class));
+
+            // checkpoint each stage as it completes; allOf waits for all of them even if one fails
+            CompletableFuture<Void> saved = CompletableFuture.allOf(
+                    job.doc() != null ? st.doc().thenApply(d -> null) : st.doc().thenAccept(d -> {
+                        if (lastAttempt || !KycPipeline.retryableDoc(d)) save(job, owner, Stage.DOC, d);
+                    }),
+                    job.fraud() != null ? st.fraud().thenApply(f -> null)
+                            : st.fraud().thenAccept(f -> save(job, owner, Stage.FRAUD, f)),
+                    job.screening() != null ? st.screening().thenApply(s -> null) : st.screening().thenAccept(s -> {
+                        // screening used the fallback identity when extraction failed: redo it with the document
+                        if (lastAttempt || !KycPipeline.retryableDoc(st.doc().join())) save(job, owner, Stage.SCREENING, s);
+                    }));
+            saved.join();
+
+            // fraud is checkpointed; retry the extraction (and screening) instead of scoring without the document
+            DocSignals doc = st.doc().join();
+            if (!lastAttempt && KycPipeline.retryableDoc(doc)) {
+                throw new IllegalStateException("extraction " + doc.error() + (doc.message() == null || doc.message().isBlank() ? "" : ": " + doc.message()));
+            }
+
+            RiskEnvelope env = pipeline.score(req, st, null);
+            if (store.succeed(job.id(), owner, json(env))) {
+                succeeded.incrementAndGet();
+                finished(job.id());
+            } else {
+                leaseLost.incrementAndGet();
+            }
+        } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof LeaseLostException) {
+                leaseLost.incrementAndGet(); // another worker owns the job now
+                return;
+            }
+            String msg = cause.getClass().getSimpleName() + (cause.getMessage() == null ? "" : ": " + cause.getMessage());
+            if (lastAttempt) {
+                if (store.fail(job.id(), owner, msg)) {
+                    failed.incrementAndGet();
+                    finished(job.id());
+                }
+            } else if (store.retry(job.id(), owner, msg, backoffSeconds(job.attempts()))) {
+                retried.incrementAndGet();
+            }
+        }
+    }
+
+    private void save(Job job, String owner, Stage stage, Object value) {
+        if (!store.checkpoint(job.id(), owner, stage, json(value), leaseSeconds)) throw new LeaseLostException();
+    }
+
+    private void finished(String id) {
+        Set<Runnable> set = waiters.remove(id);
+        if (set != null) set.forEach(Runnable::run);
+    }
+
+    static long backoffSeconds(int attempt) {
+        return Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempt, 6));
+    }
+
+    // -------- helpers --------
+
+    private JobView view(Job j) {
+        List<String> done = new ArrayList<>(3);
+        if (j.doc() != null) done.add("docSignals");
+        if (j.fraud() != null) done.add("fraud");
+        if (j.screening() != null) done.add("screening");
+        JsonNode result = null;
+        if (j.result() != null) {
+            try { result = om.readTree(j.result()); } catch (Exception ignore) { }
+        }
+        return new JobView(j.id(), j.state(), j.attempts(), j.maxAttempts(), done, result, j.error(),
+                j.createdAt(), j.updatedAt());
+    }
+
+    private void requireEnabled() {
+        if (initError != null) throw new UnavailableException("KYC job store unavailable: " + initError);
+    }
+
+    private <T> T read(String json, Class<T> type) throws Exception {
+        return json == null ? null : om.readValue(json, type);
+    }
+
+    private String json(Object o) {
+        try { return om.writeValueAsString(o); }
+        catch (Exception e) { throw new IllegalStateException("serialize failed: " + e.getMessage(), e); }
+    }
+
+    /** The lease moved to another worker (this one was too slow); stop without touching the row. */
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException() { super("lease lost", null, false, false); }
+    }
+}
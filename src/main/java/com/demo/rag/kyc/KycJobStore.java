@@ -0,0 +1,162 @@
+package com.demo.rag.kyc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * KycJobStore
+ *
+ * Durable KYC job queue in the spring.datasource Postgres (table kyc_jobs, created on first use):
+ * - submit inserts a QUEUED row with the request JSON,
+ * - claim takes due rows with FOR UPDATE SKIP LOCKED, so any number of workers / instances drain the queue
+ *   without blocking each other, and sets a lease; RUNNING rows whose lease expired (worker or node died)
+ *   are claimed again — that is the crash recovery — unless they have used all their attempts: those are
+ *   failed instead, so a job that keeps killing its worker is not retried forever,
+ * - each finished stage is checkpointed into its own jsonb column, so a retry re-runs only what is missing,
+ * - finish / retry / fail close the attempt; all writes of a claimed job check the lease owner.
+ */
+@Component
+public class KycJobStore {
+
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    /** A job row; stage columns are raw JSON (null until the stage is done). */
+    public record Job(String id, State state, String request, String doc, String fraud, String screening,
+                      String result, int attempts, int maxAttempts, String error,
+                      Instant createdAt, Instant updatedAt) { }
+
+    /** Stage columns that can be checkpointed. */
+    public enum Stage {
+        DOC("doc"), FRAUD("fraud"), SCREENING("screening");
+
+        final String column;
+
+        Stage(String column) { this.column = column; }
+    }
+
+    private static final String COLUMNS =
+            "id, state, request::text AS request, doc::text AS doc, fraud::text AS fraud, screening::text AS screening, "
+                    + "result::text AS result, attempts, max_attempts, error, created_at, updated_at";
+
+    private static final RowMapper<Job> MAPPER = (rs, n) -> new Job(
+            rs.getString("id"),
+            State.valueOf(rs.getString("state")),
+            rs.getString("request"),
+            rs.getString("doc"),
+            rs.getString("fraud"),
+            rs.getString("screening"),
+            rs.getString("result"),
+            rs.getInt("attempts"),
+            rs.getInt("max_attempts"),
+            rs.getString("error"),
+            instant(rs.getTimestamp("created_at")),
+            instant(rs.getTimestamp("updated_at")));
+
+    private final JdbcTemplate jdbc;
+
+    public KycJobStore(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public void createSchema() {
+        jdbc.execute("""
+                CREATE TABLE IF NOT EXISTS kyc_jobs (
+                    id           TEXT PRIMARY KEY,
+                    state        TEXT        NOT NULL,
+                    request      JSONB       NOT NULL,
+                    doc          JSONB,
+                    fraud        JSONB,
+                    screening    JSONB,
+                    result       JSONB,
+                    attempts     INT         NOT NULL DEFAULT 0,
+                    max_attempts INT         NOT NULL,
+                    error        TEXT,
+                    lease_owner  TEXT,
+                    lease_until  TIMESTAMPTZ,
+                    next_run_at  TIMESTAMPTZ NOT NULL DEFAULT now(),
+                    created_at   TIMESTAMPTZ NOT NULL DEFAULT now(),
+                    updated_at   TIMESTAMPTZ NOT NULL DEFAULT now()
+                )""");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS kyc_jobs_due ON kyc_jobs (next_run_at) WHERE state = 'QUEUED'");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS kyc_jobs_lease ON kyc_jobs (lease_until) WHERE state = 'RUNNING'");
+    }
+
+    public void insert(String id, String requestJson, int maxAttempts) {
+        jdbc.update("INSERT INTO kyc_jobs (id, state, request, max_attempts) VALUES (?, 'QUEUED', ?::jsonb, ?)",
+                id, requestJson, maxAttempts);
+    }
+
+    public Optional<Job> find(String id) {
+        List<Job> rows = jdbc.query("SELECT " + COLUMNS + " FROM kyc_jobs WHERE id = ?", MAPPER, id);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    /**
+     * Claims up to {@code limit} due jobs (queued, or running with an expired lease and attempts left) for
+     * {@code owner}. Expired leases without attempts left are failed first.
+     */
+    public List<Job> claim(String owner, int limit, long leaseSeconds) {
+        jdbc.update("""
+                UPDATE kyc_jobs SET state = 'FAILED', error = 'lease expired after ' || attempts || ' attempts',
+                       lease_owner = NULL, lease_until = NULL, updated_at = now()
+                WHERE state = 'RUNNING' AND lease_until < now() AND attempts >= max_attempts""");
+        return jdbc.query("""
+                UPDATE kyc_jobs SET state = 'RUNNING', lease_owner = ?, lease_until = now() + make_interval(secs => ?),
+                       attempts = attempts + 1, updated_at = now()
+                WHERE id IN (
+                    SELECT id FROM kyc_jobs
+                    WHERE (state = 'QUEUED' AND next_run_at <= now())
+                       OR (state = 'RUNNING' AND lease_until < now() AND attempts < max_attempts)
+                    ORDER BY next_run_at
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING\s""" + COLUMNS, MAPPER, owner, leaseSeconds, limit);
+    }
+
+    /** Stores one finished stage and extends the lease; false when the lease was lost. */
+    public boolean checkpoint(String id, String owner, Stage stage, String json, long leaseSeconds) {
+        return jdbc.update("UPDATE kyc_jobs SET " + stage.column + " = ?::jsonb, "
+                        + "lease_until = now() + make_interval(secs => ?), updated_at = now() "
+                        + "WHERE id = ? AND lease_owner = ? AND state = 'RUNNING'",
+                json, leaseSeconds, id, owner) == 1;
+    }
+
+    public boolean succeed(String id, String owner, String resultJson) {
+        return jdbc.update("UPDATE kyc_jobs SET state = 'SUCCEEDED', result = ?::jsonb, error = NULL, "
+                        + "lease_owner = NULL, lease_until = NULL, updated_at = now() "
+                        + "WHERE id = ? AND lease_owner = ? AND state = 'RUNNING'",
+                resultJson, id, owner) == 1;
+    }
+
+    /** Puts the job back in the queue after a failed attempt, due after {@code delaySeconds}. */
+    public boolean retry(String id, String owner, String error, long delaySeconds) {
+        return jdbc.update("UPDATE kyc_jobs SET state = 'QUEUED', error = ?, lease_owner = NULL, lease_until = NULL, "
+                        + "next_run_at = now() + make_interval(secs => ?), updated_at = now() "
+                        + "WHERE id = ? AND lease_owner = ? AND state = 'RUNNING'",
+                error, delaySeconds, id, owner) == 1;
+    }
+
+    public boolean fail(String id, String owner, String error) {
+        return jdbc.update("UPDATE kyc_jobs SET state = 'FAILED', error = ?, lease_owner = NULL, lease_until = NULL, "
+                        + "updated_at = now() WHERE id = ? AND lease_owner = ? AND state = 'RUNNING'",
+                error, id, owner) == 1;
+    }
+
+    /** Row counts per state. */
+    public Map<String, Object> counts() {
+        Map<String, Object> out = new java.util.LinkedHashMap<>();
+        for (Map<String, Object> r : jdbc.queryForList("SELECT state, count(*) AS n FROM kyc_jobs GROUP BY state")) {
+            out.put(String.valueOf(r.get("state")), r.get("n"));
+        }
+        return out;
+    }
+
+    private static Instant instant(Timestamp t) { return t == null ? null : t.toInstant(); }
+}
@@ -0,0 +1,207 @@
+package com.demo.rag.kyc;
+
+import com.demo.rag.agents.ExtractorAgent;
+import com.demo.rag.agents.FraudAgent;
+import com.demo.rag.agents.RiskAgent;
+import com.demo.rag.agents.ScreeningAgent;
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.KycStartRequest;
+import com.demo.rag.dto.RiskEnvelope;
+import com.demo.rag.dto.RiskEnvelope.IdentityUsed;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.util.AsyncLimiter;
+import com.demo.rag.util.Bulkhead;
+import com.demo.rag.util.VirtualThreads;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * KycPipeline
+ *
+ * The /api/kyc/start flow as stages, shared by the plain and the streaming (SSE) endpoint:
+ * - extraction (docSignals) and fraud triage start at once, in parallel,
+ * - screening starts as soon as extraction has decided the identity (document first, request as fallback),
+ * - risk scoring runs when all three are done; with a token consumer the model answer is streamed.
+ *
+ * Extraction uses the non-blocking Document Intelligence path (no thread waits while the analysis is polled;
+ * ExtractorAgent bounds documents in flight). The other stages run on their own thread from a thread-per-task
+ * executor (virtual threads on Java 21+, see {@link VirtualThreads}) inside a per-agent {@link Bulkhead}, so one
+ * slow backend cannot use up the capacity of the others. Limits: KYC_BULKHEAD_SCREENING (default 32),
+ * KYC_BULKHEAD_FRAUD (16), KYC_BULKHEAD_RISK (16); a call waits at most KYC_BULKHEAD_WAIT_MS (default 5000) for a slot.
+ */
+@Service
+public class KycPipeline {
+
+    /** Running stages of one request; each future completes independently. */
+    public record Stages(CompletableFuture<DocSignals> doc,
+                         CompletableFuture<IdentityUsed> identity,
+                         CompletableFuture<FraudResult> fraud,
+                         CompletableFuture<ScreeningResult> screening) {
+
+        public CompletableFuture<Void> all() { return CompletableFuture.allOf(doc, fraud, screening); }
+    }
+
+    /** DocSignals.error code when the extractor had no free in-flight slot (transient). */
+    public static final String EXTRACTOR_BUSY = "extractor-busy";
+
+    /** DocSignals.error code when Document Intelligence (or reading the document) failed. */
+    public static final String ANALYZE_FAILED = "analyze-failed";
+
+    private final ExtractorAgent extractor;
+    private final ScreeningAgent screening;
+    private final FraudAgent fraud;
+    private final RiskAgent risk;
+    private final ExecutorService exec;
+    private final Bulkhead screenBulkhead, fraudBulkhead, riskBulkhead;
+
+    public KycPipeline(ExtractorAgent extractor, ScreeningAgent screening, FraudAgent fraud, RiskAgent risk) {
+        this.extractor = extractor;
+        this.screening = screening;
+        this.fraud = fraud;
+        this.risk = risk;
+        this.exec = VirtualThreads.newPerTaskExecutor("kyc-");
+
+        long waitMs = Long.parseLong(Optional.ofNullable(System.getenv("KYC_BULKHEAD_WAIT_MS")).orElse("5000"));
+        this.screenBulkhead = bulkhead("screening", "KYC_BULKHEAD_SCREENING", 32, waitMs);
+        this.fraudBulkhead = bulkhead("fraud", "KYC_BULKHEAD_FRAUD", 16, waitMs);
+        this.riskBulkhead = bulkhead("risk", "KYC_BULKHEAD_RISK", 16, waitMs);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        exec.shutdownNow();
+    }
+
+    /** Starts extraction, fraud and (after extraction) screening; does not wait. */
+    public Stages start(KycStartRequest req) {
+        return resume(req, null, null, null);
+    }
+
+    /**
+     * Like {@link #start(KycStartRequest)}, but stages with a result from an earlier attempt (non-null
+     * arguments) are not run again; used by the job queue to retry only what failed.
+     */
+    public Stages resume(KycStartRequest req, DocSignals doneDoc, FraudResult doneFraud, ScreeningResult doneScreening) {
+        // 1) Extraction (docSignals)
+        CompletableFuture<DocSignals> fExtract = doneDoc != null
+                ? CompletableFuture.completedFuture(doneDoc)
+                : extract(req.documentText(), req.mrz());
+
+        // 2) Fraud
+        CompletableFuture<FraudResult> fFraud = doneFraud != null
+                ? CompletableFuture.completedFuture(doneFraud)
+                : CompletableFuture.supplyAsync(() -> fraudBulkhead.call(() ->
+                        fraud.triage(String.valueOf(req.question()), req.transactions(), req.customerId())), exec);
+
+        // 3) Screening — extraction -> identity seçimi -> screening
+        CompletableFuture<IdentityUsed> fIdentity = fExtract.thenApply(d -> pickIdentity(d, req.name(), req.birthDate()));
+        CompletableFuture<ScreeningResult> fScreen = doneScreening != null
+                ? CompletableFuture.completedFuture(doneScreening)
+                : fIdentity.thenApplyAsync(id -> screenBulkhead.call(() ->
+                        screening.sanctionsScreen(id.name(), id.dob())), exec);
+
+        return new Stages(fExtract, fIdentity, fFraud, fScreen);
+    }
+
+    /**
+     * 4) Hepsini birleştir → RiskAgent. Call once {@link Stages#all()} is done.
+     *
+     * @param onToken receives streamed model text, or null for a plain call
+     */
+    public RiskEnvelope score(KycStartRequest req, Stages s, Consumer<String> onToken) {
+        return riskBulkhead.call(() ->
+                risk.scoreDetailed(s.screening().join(), s.doc().join(), s.fraud().join(), onToken)
+                        .withIdentity(s.identity().join(), req.documentText()));
+    }
+
+    /** The whole flow; completes with the envelope, or exceptionally (e.g. {@link Bulkhead.RejectedException}). */
+    public CompletableFuture<RiskEnvelope> runAsync(KycStartRequest req) {
+        Stages s = start(req);
+        return s.all().thenApplyAsync(v -> score(req, s, null), exec);
+    }
+
+    /** Risk step off the calling thread, once the stages are done. */
+    public CompletableFuture<RiskEnvelope> scoreAsync(KycStartRequest req, Stages s, Consumer<String> onToken) {
+        return s.all().thenApplyAsync(v -> score(req, s, onToken), exec);
+    }
+
+    /** The whole flow, blocking. */
+    public RiskEnvelope run(KycStartRequest req) {
+        return runAsync(req).join();
+    }
+
+    public List<Bulkhead.Stats> bulkheadStats() {
+        return List.of(screenBulkhead.stats(), fraudBulkhead.stats(), riskBulkhead.stats());
+    }
+
+    public String threads() { return VirtualThreads.available() ? "virtual" : "platform"; }
+
+    // -------- helpers --------
+
+    /**
+     * MRZ verilmişse yerel parse; URL ise inspectAsync(url), değilse classpath'ten; failures become DocSignals errors.
+     */
+    private CompletableFuture<DocSignals> extract(String docRef, String mrz) {
+        if (mrz != null && !mrz.isBlank()) {
+            return CompletableFuture.completedFuture(extractor.inspectMrz(mrz, docRef == null || docRef.isBlank() ? "mrz" : docRef));
+        }
+        if (docRef == null || docRef.isBlank()) {
+            return CompletableFuture.completedFuture(DocSignals.error("no-document", null));
+        }
+        CompletableFuture<DocSignals> f;
+        try {
+            f = inspectAsync(extractor, docRef);
+        } catch (Exception e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        return f.exceptionally(e -> extractFailed(docRef, e)); // screening falls back to the request identity
+    }
+
+    /** Non-blocking extraction of a URL or classpath document; completes exceptionally (e.g. limiter full). */
+    static CompletableFuture<DocSignals> inspectAsync(ExtractorAgent extractor, String docRef) {
+        return docRef.startsWith("http") ? extractor.inspectAsync(docRef) : extractor.inspectFromResourceAsync(docRef);
+    }
+
+    /** docSignals for a failed extraction: "extractor-busy" when the limiter was full, else "analyze-failed". */
+    static DocSignals extractFailed(String docRef, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof AsyncLimiter.RejectedException) {
+            return DocSignals.error(docRef, EXTRACTOR_BUSY, cause.getMessage());
+        }
+        return DocSignals.error(docRef, ANALYZE_FAILED, cause.getMessage());
+    }
+
+    /** Extraction did not get a usable answer this time (busy or analyze failure); another attempt may. */
+    public static boolean retryableDoc(DocSignals d) {
+        return d != null && (EXTRACTOR_BUSY.equals(d.error()) || ANALYZE_FAILED.equals(d.error()));
+    }
+
+    /** docSignals içinden idInfo.fullName / idInfo.dob'u çek; yoksa body'dekilere düş */
+    static IdentityUsed pickIdentity(DocSignals doc, String reqName, String reqDob) {
+        String dn = null, dd = null;
+        if (doc != null && doc.idInfo() != null) {
+            dn = doc.idInfo().fullName();
+            dd = doc.idInfo().dob();
+        }
+        String source = (doc == null || doc.hasError()) ? "request" : "document";
+        return new IdentityUsed(coalesce(dn, reqName), coalesce(dd, reqDob), source);
+    }
+
+    private static Bulkhead bulkhead(String name, String env, int def, long waitMs) {
+        int limit = Integer.parseInt(Optional.ofNullable(System.getenv(env)).orElse(String.valueOf(def)));
+        return new Bulkhead(name, Math.max(1, limit), waitMs);
+    }
+
+    private static String coalesce(String... ss){
+        for (String s: ss) if (s != null && !s.isBlank()) return s;
+        return null;
+    }
+}
@@ -3,33 +3,62 @@ package com.demo.rag.load;
 import com.azure.core.credential.AzureKeyCredential;
 import com.azure.search.documents.SearchClient;
 import com.azure.search.documents.SearchClientBuilder;
+import com.azure.search.documents.SearchDocument;
 import com.azure.search.documents.indexes.SearchIndexClient;
 import com.azure.search.documents.indexes.SearchIndexClientBuilder;
 import com.azure.search.documents.indexes.models.*;
-import com.azure.search.documents.models.IndexDocumentsResult;
-import dev.langchain4j.data.embedding.Embedding;
+import com.demo.rag.embedding.CachedEmbeddingModel;
+import com.demo.rag.embedding.EmbeddingCache;
+import com.demo.rag.screening.NameNormalizer;
+import com.demo.rag.util.Sha256;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.azure.AzureOpenAiEmbeddingModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** Uploads CSV rows into Azure AI Search with vector index (no semantic config). */
+/**
+ * Uploads CSV rows into Azure AI Search with vector index (no semantic config).
+ *
+ * {@link #sync} is the incremental path: a persisted {@link SyncManifest} (SANCTIONS_MANIFEST) records
+ * what the index holds, so only added/changed rows are sent, removed ids are deleted, and rows whose
+ * embedded text did not change are merged without recomputing their vector.
+ *
+ * Embedding and upload go through an {@link IndexingPipeline}: SEARCH_EMBED_BATCH texts per embedding request,
+ * SEARCH_EMBED_CONCURRENCY requests in parallel, SEARCH_UPLOAD_CHUNK documents per upload.
+ * Vectors are looked up in the persistent {@link EmbeddingCache} first, so a full reload (or an index
+ * rebuild) only pays for texts that were never embedded with this deployment.
+ */
 @Service
 public class AzureSearchLoaderService {
 
     private final String indexName;
     private final SearchIndexClient indexClient;
     private final SearchClient searchClient;
+    private final ObjectMapper om;
+    private final Path manifestPath;
+    private final ExecutorService embedPool;
+    private final IndexingPipeline pipeline;
+    private final int syncChunk;
 
     // Optional embedding (if AOAI env is present)
     private final EmbeddingModel embedModel; // can be null
     private static final int VECTOR_DIM = 1536; // text-embedding-3-small
 
-    public AzureSearchLoaderService() {
+    public AzureSearchLoaderService(ObjectMapper objectMapper, EmbeddingCache embeddingCache) {
         String endpoint = reqEnv("SEARCH_ENDPOINT");
         String key = reqEnv("SEARCH_API_KEY");
         this.indexName = Optional.ofNullable(System.getenv("SEARCH_INDEX")).orElse("sanctions-demo");
+        this.om = objectMapper;
+        this.manifestPath = Path.of(Optional.ofNullable(System.getenv("SANCTIONS_MANIFEST"))
+                .orElse("data/sanctions-manifest.json"));
 
         this.indexClient = new SearchIndexClientBuilder()
                 .endpoint(endpoint)
@@ -48,16 +77,35 @@ public class AzureSearchLoaderService {
         String embDeployment = Optional.ofNullable(System.getenv("AZURE_OPENAI_EMBEDDING"))
                 .orElse("text-embedding-3-small");
         if (notBlank(aoaiEndpoint) && notBlank(aoaiKey) && notBlank(embDeployment)) {
-            this.embedModel = AzureOpenAiEmbeddingModel.builder()
+            this.embedModel = CachedEmbeddingModel.wrap(AzureOpenAiEmbeddingModel.builder()
                     .endpoint(aoaiEndpoint)
                     .apiKey(aoaiKey)
                     .deploymentName(embDeployment)
-                    .build();
+                    .build(), embeddingCache, embDeployment);
         } else {
             this.embedModel = null;
         }
+
+        int embedBatch = Integer.parseInt(Optional.ofNullable(System.getenv("SEARCH_EMBED_BATCH")).orElse("64"));
+        int embedConcurrency = Integer.parseInt(
+                Optional.ofNullable(System.getenv("SEARCH_EMBED_CONCURRENCY")).orElse("4"));
+        int uploadChunk = Integer.parseInt(Optional.ofNullable(System.getenv("SEARCH_UPLOAD_CHUNK")).orElse("500"));
+
+        AtomicInteger seq = new AtomicInteger();
+        this.embedPool = Executors.newFixedThreadPool(Math.max(1, embedConcurrency), r -> {
+            Thread t = new Thread(r, "search-embed-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.syncChunk = Math.max(1, Integer.parseInt(
+                Optional.ofNullable(System.getenv("SEARCH_SYNC_CHUNK")).orElse("2000")));
+        this.pipeline = new IndexingPipeline(searchClient, embedModel, embedPool,
+                embedBatch, embedConcurrency, uploadChunk);
     }
 
+    @PreDestroy
+    void shutdown() { embedPool.shutdownNow(); }
+
     /** Create or update AI Search index with vector config (no semantic settings). */
     public void ensureIndex() {
         // --- Fields ---
@@ -73,6 +121,10 @@ public class AzureSearchLoaderService {
         fields.add(new SearchField("aliases", SearchFieldDataType.STRING)
                 .setSearchable(true));
 
+        // Normalized screening keys (NameNormalizer), computed once at load; retrievable only
+        fields.add(new SearchField("nameKey", SearchFieldDataType.STRING));
+        fields.add(new SearchField("aliasKeys", SearchFieldDataType.STRING)); // ';'-separated
+
         fields.add(new SearchField("country", SearchFieldDataType.STRING)
                 .setFilterable(true)
                 .setFacetable(true));
@@ -107,58 +159,149 @@ public class AzureSearchLoaderService {
         indexClient.createOrUpdateIndex(index);
     }
 
-    /** Upsert many rows (CSV records). Computes embeddings if AOAI is configured. */
-    public int upsertMany(List<Map<String, Object>> rows) {
-        List<SanctionDoc> docs = new ArrayList<>(rows.size());
-
-        for (Map<String, Object> r : rows) {
-            SanctionDoc d = new SanctionDoc();
-            d.id = str(r.get("id"), UUID.randomUUID().toString());
-            d.name = str(r.get("name"), "");
-            d.aliases = str(r.get("aliases"), "");
-            d.country = str(r.get("country"), "");
-            d.birthDate = str(r.get("birthDate"), "");
-            d.program = str(r.get("program"), "");
-            d.list = str(r.get("list"), "");
-
-            // If caller already provided embedding, use it; otherwise compute if embedModel exists
-            Object pre = r.get("embedding");
-            if (pre instanceof List) {
-                //noinspection unchecked
-                d.embedding = (List<Float>) pre;
-            } else if (embedModel != null) {
-                String content = (d.name + " " + d.aliases + " " + d.program).trim();
-                try {
-                    Embedding emb = embedModel.embed(content).content();
-                    float[] vec = emb.vector();
-                    d.embedding = new ArrayList<>(vec.length);
-                    for (float v : vec) d.embedding.add(v);
-                } catch (Throwable ignored) {
-                    // leave embedding null if embedding failed
+    /** Outcome of a {@link #sync}; failed ids stay as they were in the manifest and are retried next time. */
+    public record SyncReport(String mode, int rows, int added, int changed, int reembedded, int unchanged,
+                             int deleted, int failed, long elapsedMs, List<LoadReport.Failure> failures) {
+        public boolean modified() { return added + changed + deleted > 0; }
+    }
+
+    /**
+     * Brings the index in line with {@code rows}, using the manifest to skip what is already there.
+     * Rows are consumed in chunks of SEARCH_SYNC_CHUNK, so only one chunk is held in memory
+     * (plus the manifest and the set of ids seen, needed to detect deletions).
+     *
+     * @param full true re-uploads and re-embeds every row (e.g. the index was rebuilt);
+     *             ids that disappeared from the list are deleted in both modes
+     */
+    public synchronized SyncReport sync(Iterator<SanctionRow> rows, boolean full) throws IOException {
+        long t0 = System.nanoTime();
+        SyncManifest manifest = SyncManifest.load(manifestPath, indexName, om);
+
+        Set<String> seen = new HashSet<>();
+        List<LoadReport.Failure> failures = new ArrayList<>();
+        int total = 0, added = 0, changed = 0, unchanged = 0, reembedded = 0, failedCount = 0;
+
+        while (rows.hasNext()) {
+            List<SanctionDoc> upload = new ArrayList<>();        // new vector needed
+            List<SearchDocument> merge = new ArrayList<>();      // fields changed, vector still valid
+            Map<String, SyncManifest.Entry> pending = new HashMap<>();
+
+            for (int n = 0; n < syncChunk && rows.hasNext(); n++) {
+                SanctionDoc d = toDoc(rows.next());
+                total++;
+                if (!seen.add(d.id)) continue; // duplicate id in the file: first row wins
+
+                String rowHash = Sha256.hex128(d.name, d.nameKey, d.aliases, d.aliasKeys, d.country, d.birthDate,
+                        d.program, d.list);
+                String embedHash = Sha256.hex128(embeddingText(d));
+                SyncManifest.Entry prev = manifest.get(d.id);
+
+                if (!full && prev != null && prev.rowHash().equals(rowHash)) {
+                    unchanged++;
+                    continue;
+                }
+                if (prev == null) added++; else changed++;
+                pending.put(d.id, new SyncManifest.Entry(rowHash, embedHash));
+
+                if (full || prev == null || !embedHash.equals(prev.embedHash())) {
+                    upload.add(d);
+                } else {
+                    merge.add(withoutEmbedding(d));
                 }
             }
 
-            docs.add(d);
+            LoadReport uploaded = pipeline.upload(upload, AzureSearchLoaderService::embeddingText);
+            reembedded += uploaded.embedded();
+            failures.addAll(uploaded.failures());
+            Set<String> failed = new HashSet<>(uploaded.failedIds());
+            failed.addAll(pipeline.chunked(merge, searchClient::mergeDocuments, m -> String.valueOf(m.get("id")),
+                    "merge", failures));
+
+            for (Map.Entry<String, SyncManifest.Entry> e : pending.entrySet()) {
+                if (!failed.contains(e.getKey())) manifest.put(e.getKey(), e.getValue());
+            }
+            failedCount += failed.size();
         }
 
-        IndexDocumentsResult res = searchClient.uploadDocuments(docs);
-        // Optionally inspect res.getResults()
-        return docs.size();
+        List<SearchDocument> delete = new ArrayList<>();
+        for (String id : manifest.entries().keySet()) {
+            if (!seen.contains(id)) {
+                SearchDocument del = new SearchDocument();
+                del.put("id", id);
+                delete.add(del);
+            }
+        }
+        Set<String> failedDeletes = pipeline.chunked(delete, searchClient::deleteDocuments,
+                m -> String.valueOf(m.get("id")), "delete", failures);
+        for (SearchDocument del : delete) {
+            String id = String.valueOf(del.get("id"));
+            if (!failedDeletes.contains(id)) manifest.remove(id);
+        }
+        manifest.save(om);
+
+        return new SyncReport(full ? "full" : "incremental", total, added, changed, reembedded, unchanged,
+                delete.size() - failedDeletes.size(), failedCount + failedDeletes.size(),
+                (System.nanoTime() - t0) / 1_000_000, failures);
     }
 
     // ----------- POJO Azure Search will serialize -----------
     public static class SanctionDoc {
         public String id;
         public String name;
+        public String nameKey;
         public String aliases;
+        public String aliasKeys;
         public String country;
         public String birthDate;
         public String program;
         public String list;
-        public List<Float> embedding; // optional
+        public List<Float> embedding; // optional; FloatList when computed here
     }
 
     // ---------------- helpers ----------------
+    /** Rows without an id get a stable one derived from their identity, so re-syncs do not duplicate them. */
+    private static SanctionDoc toDoc(SanctionRow r) {
+        SanctionDoc d = new SanctionDoc();
+        d.id = r.id().isBlank() ? Sha256.hex128(r.name(), r.birthDate(), r.list()) : r.id().trim();
+        d.name = r.name();
+        d.nameKey = NameNormalizer.normalize(d.name);
+        d.aliases = r.aliases();
+        d.aliasKeys = aliasKeys(d.aliases, d.nameKey);
+        d.country = r.country();
+        d.birthDate = r.birthDate();
+        d.program = r.program();
+        d.list = r.list();
+        return d;
+    }
+
+    /** Distinct normalized alias keys other than the name key, ';'-separated (keys never contain ';'). */
+    private static String aliasKeys(String aliases, String nameKey) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String a : aliases.split(";")) keys.add(NameNormalizer.normalize(a));
+        keys.remove("");
+        keys.remove(nameKey);
+        return String.join(";", keys);
+    }
+
+    private static String embeddingText(SanctionDoc d) {
+        return (d.name + " " + d.aliases + " " + d.program).trim();
+    }
+
+    /** Merge payload: every field except the vector, so the stored embedding is kept. */
+    private static SearchDocument withoutEmbedding(SanctionDoc d) {
+        SearchDocument m = new SearchDocument();
+        m.put("id", d.id);
+        m.put("name", d.name);
+        m.put("nameKey", d.nameKey);
+        m.put("aliases", d.aliases);
+        m.put("aliasKeys", d.aliasKeys);
+        m.put("country", d.country);
+        m.put("birthDate", d.birthDate);
+        m.put("program", d.program);
+        m.put("list", d.list);
+        return m;
+    }
+
     private static String reqEnv(String key) {
         String v = System.getenv(key);
         if (v == null || v.isBlank()) {
@@ -167,5 +310,4 @@ public class AzureSearchLoaderService {
         return v;
     }
     private static boolean notBlank(String s) { return s != null && !s.trim().isEmpty(); }
-    private static String str(Object v, String def) { return v == null ? def : String.valueOf(v); }
 }
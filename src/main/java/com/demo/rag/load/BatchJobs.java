@@ -0,0 +1,89 @@
+package com.demo.rag.load;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BatchJobs
+ *
+ * Job registry and runner shared by the file batch jobs (FraudBatchJob, KycBatchJob):
+ * - jobs run one at a time, in submission order, on a single daemon thread,
+ * - the most recent {@code keep} jobs stay visible to status / list; beyond that finished jobs are dropped,
+ *   oldest first (running and queued ones never are),
+ * - {@link Job} records when the run started and finished, for the elapsed time and throughput figures.
+ */
+public final class BatchJobs<J extends BatchJobs.Job> {
+
+    /** Base of a batch job: its id plus run timing; the start is taken when it runs, not when it is queued. */
+    public abstract static class Job {
+        public final String id;
+        private volatile long started, finishedAt;
+
+        protected Job(String id) { this.id = id; }
+
+        public abstract boolean finished();
+
+        /** Epoch millis when the run started; 0 while queued. */
+        public long started() { return started; }
+
+        public Instant startedAt() { return started > 0 ? Instant.ofEpochMilli(started) : null; }
+
+        /** Run time so far, or of the whole run once it finished; 0 while queued. */
+        public long elapsedMs() {
+            long now = System.currentTimeMillis();
+            return (finishedAt > 0 ? finishedAt : now) - (started > 0 ? started : now);
+        }
+
+        /** {@code count} per second over {@code ms}; 0 before any time has passed. */
+        public static double perSec(long count, long ms) {
+            return ms <= 0 ? 0 : count * 1000.0 / ms;
+        }
+    }
+
+    private final int keep;
+    private final ExecutorService runner;
+    private final Map<String, J> jobs = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public BatchJobs(String threadName, int keep) {
+        this.keep = keep;
+        this.runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Registers {@code job} (replacing an earlier run with the same id) and queues {@code run} for it. */
+    public J submit(J job, Runnable run) {
+        synchronized (jobs) {
+            jobs.remove(job.id);
+            jobs.put(job.id, job);
+            Iterator<J> it = jobs.values().iterator();
+            while (jobs.size() > keep && it.hasNext()) {
+                if (it.next().finished()) it.remove();
+            }
+        }
+        Job timed = job;
+        runner.submit(() -> {
+            timed.started = System.currentTimeMillis();
+            try {
+                run.run();
+            } finally {
+                timed.finishedAt = System.currentTimeMillis();
+            }
+        });
+        return job;
+    }
+
+    public Optional<J> get(String id) { return Optional.ofNullable(jobs.get(id)); }
+
+    public List<J> list() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    public void shutdown() { runner.shutdownNow(); }
+}
@@ -0,0 +1,38 @@
+package com.demo.rag.load;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CsvColumns
+ *
+ * Header lookup for the batch CSV inputs: columns are found by name in any order, ignoring case, underscores
+ * and surrounding spaces (customer_id = customerId); the first column of a given name wins.
+ */
+public final class CsvColumns {
+
+    private final Map<String, Integer> index = new HashMap<>();
+
+    public CsvColumns(String[] header) {
+        for (int i = 0; i < header.length; i++) index.putIfAbsent(key(header[i]), i);
+    }
+
+    /** Index of the first of {@code names} present in the header, -1 when none is. */
+    public int first(String... names) {
+        for (String n : names) {
+            Integer i = index.get(key(n));
+            if (i != null) return i;
+        }
+        return -1;
+    }
+
+    /** Trimmed field {@code i} of a record; "" when the column is absent or the record is short. */
+    public static String col(String[] f, int i) {
+        return i >= 0 && i < f.length && f[i] != null ? f[i].trim() : "";
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT).replace("_", "");
+    }
+}
@@ -0,0 +1,104 @@
+package com.demo.rag.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvReader
+ *
+ * Streaming RFC 4180 reader: one record per {@link #next()}, read through a fixed-size char buffer.
+ * - quoted fields may contain commas, doubled quotes ("") and line breaks,
+ * - CRLF, LF and CR line endings are accepted; a leading UTF-8 BOM is skipped,
+ * - empty lines are skipped.
+ */
+public class CsvReader implements Closeable {
+
+    private static final int EOF = -1;
+
+    private final Reader in;
+    private final char[] buf = new char[16 * 1024];
+    private int pos, len;
+    private boolean first = true;
+    private long records;
+
+    private final StringBuilder field = new StringBuilder(64);
+    private final List<String> row = new ArrayList<>();
+
+    public CsvReader(Reader in) { this.in = in; }
+
+    /** Next record, or null at end of input. */
+    public String[] next() throws IOException {
+        row.clear();
+        field.setLength(0);
+        boolean inQuotes = false, any = false;
+
+        while (true) {
+            int c = read();
+            if (first) {
+                first = false;
+                if (c == '\uFEFF') continue;
+            }
+            if (c == EOF) {
+                if (inQuotes) throw new IOException("Unterminated quoted field in record " + (records + 1));
+                if (!any) return null;
+                return finish();
+            }
+            any = true;
+
+            if (inQuotes) {
+                if (c == '"') {
+                    if (peek() == '"') { read(); field.append('"'); }
+                    else inQuotes = false;
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') read();
+                if (row.isEmpty() && field.length() == 0) { any = false; continue; } // blank line
+                return finish();
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+
+    /** Number of records returned so far. */
+    public long records() { return records; }
+
+    @Override
+    public void close() throws IOException { in.close(); }
+
+    // ---------------- helpers ----------------
+
+    private String[] finish() {
+        row.add(field.toString());
+        field.setLength(0);
+        records++;
+        return row.toArray(new String[0]);
+    }
+
+    private int read() throws IOException {
+        if (pos == len && !fill()) return EOF;
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == len && !fill()) return EOF;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        len = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (len <= 0) { len = 0; return false; }
+        return true;
+    }
+}
@@ -0,0 +1,24 @@
+package com.demo.rag.load;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only {@code List<Float>} view over a {@code float[]}.
+ * Embedding vectors stay primitive (6 KB per 1536-dim vector instead of ~25 KB of boxed Floats);
+ * values are boxed one at a time only while the document is being serialized.
+ */
+public final class FloatList extends AbstractList<Float> implements RandomAccess {
+
+    private final float[] values;
+
+    public FloatList(float[] values) { this.values = values; }
+
+    @Override
+    public Float get(int index) { return values[index]; }
+
+    @Override
+    public int size() { return values.length; }
+
+    public float[] array() { return values; }
+}
@@ -0,0 +1,182 @@
+package com.demo.rag.load;
+
+import com.azure.search.documents.SearchClient;
+import com.azure.search.documents.models.IndexBatchException;
+import com.azure.search.documents.models.IndexDocumentsResult;
+import com.azure.search.documents.models.IndexingResult;
+import com.demo.rag.load.AzureSearchLoaderService.SanctionDoc;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * IndexingPipeline
+ *
+ * Embeds and uploads documents to Azure AI Search in a bounded pipeline:
+ * - texts are embedded in multi-input requests of embedBatch rows,
+ * - at most embedConcurrency batches are embedded at once, and the producer blocks while
+ *   maxInFlight batches are outstanding (backpressure: memory is bounded by batches, not by file size),
+ * - finished rows are uploaded in uploadChunk-sized chunks on the calling thread as soon as a chunk fills,
+ * - a failed batch is retried row by row, so one bad text only fails itself; failures are reported per id.
+ */
+public class IndexingPipeline {
+
+    private final SearchClient searchClient;
+    private final EmbeddingModel embedModel; // null: upload without vectors
+    private final ExecutorService embedPool;
+    private final int embedBatch;
+    private final int maxInFlight;
+    private final int uploadChunk;
+
+    public IndexingPipeline(SearchClient searchClient, EmbeddingModel embedModel, ExecutorService embedPool,
+                            int embedBatch, int embedConcurrency, int uploadChunk) {
+        this.searchClient = searchClient;
+        this.embedModel = embedModel;
+        this.embedPool = embedPool;
+        this.embedBatch = Math.max(1, embedBatch);
+        this.maxInFlight = Math.max(1, embedConcurrency) * 2;
+        this.uploadChunk = Math.max(1, uploadChunk);
+    }
+
+    /** Embeds (where needed) and uploads {@code docs}; text gives the string to embed for a document. */
+    public LoadReport upload(List<SanctionDoc> docs, Function<SanctionDoc, String> text) {
+        long t0 = System.nanoTime();
+        List<LoadReport.Failure> failures = new ArrayList<>();
+        List<SanctionDoc> pending = new ArrayList<>(uploadChunk);
+        int embedded = 0, uploaded = 0, batches = 0, chunks = 0;
+
+        ExecutorCompletionService<EmbedResult> ecs = new ExecutorCompletionService<>(embedPool);
+        int next = 0, submitted = 0, completed = 0;
+        while (next < docs.size() || completed < submitted) {
+            // keep up to maxInFlight batches outstanding
+            while (next < docs.size() && submitted - completed < maxInFlight) {
+                List<SanctionDoc> batch = docs.subList(next, Math.min(next + embedBatch, docs.size()));
+                next += batch.size();
+                ecs.submit(() -> embed(batch, text));
+                submitted++;
+                batches++;
+            }
+
+            EmbedResult r = take(ecs);
+            completed++;
+            embedded += r.embedded();
+            failures.addAll(r.failures());
+            pending.addAll(r.ready());
+
+            while (pending.size() >= uploadChunk) {
+                List<SanctionDoc> chunk = new ArrayList<>(pending.subList(0, uploadChunk));
+                pending.subList(0, uploadChunk).clear();
+                uploaded += uploadChunk(chunk, failures);
+                chunks++;
+            }
+        }
+        if (!pending.isEmpty()) {
+            uploaded += uploadChunk(pending, failures);
+            chunks++;
+        }
+
+        return new LoadReport(docs.size(), embedded, uploaded, failures.size(), batches, chunks,
+                (System.nanoTime() - t0) / 1_000_000, failures);
+    }
+
+    /**
+     * Runs an index action (merge/delete) over {@code docs} in uploadChunk-sized chunks.
+     *
+     * @return keys that failed, with messages added to {@code failures}
+     */
+    public <T> Set<String> chunked(List<T> docs, Function<List<T>, IndexDocumentsResult> action,
+                                   Function<T, String> key, String stage, List<LoadReport.Failure> failures) {
+        Set<String> failed = new HashSet<>();
+        for (int i = 0; i < docs.size(); i += uploadChunk) {
+            List<T> chunk = docs.subList(i, Math.min(i + uploadChunk, docs.size()));
+            failed.addAll(run(() -> action.apply(chunk), chunk, key, stage, failures));
+        }
+        return failed;
+    }
+
+    // ---------------- stages ----------------
+
+    private record EmbedResult(List<SanctionDoc> ready, int embedded, List<LoadReport.Failure> failures) { }
+
+    private EmbedResult embed(List<SanctionDoc> batch, Function<SanctionDoc, String> text) {
+        List<SanctionDoc> todo = new ArrayList<>();
+        for (SanctionDoc d : batch) if (d.embedding == null) todo.add(d);
+        if (embedModel == null || todo.isEmpty()) return new EmbedResult(batch, 0, List.of());
+
+        try {
+            List<TextSegment> segments = new ArrayList<>(todo.size());
+            for (SanctionDoc d : todo) segments.add(TextSegment.from(text.apply(d)));
+            List<Embedding> vectors = embedModel.embedAll(segments).content();
+            if (vectors == null || vectors.size() != todo.size()) {
+                throw new IllegalStateException("embedding count mismatch");
+            }
+            for (int i = 0; i < todo.size(); i++) todo.get(i).embedding = new FloatList(vectors.get(i).vector());
+            return new EmbedResult(batch, todo.size(), List.of());
+        } catch (Exception batchError) {
+            // isolate the failing rows: embed one by one
+            List<SanctionDoc> ready = new ArrayList<>(batch.size());
+            List<LoadReport.Failure> failures = new ArrayList<>();
+            int embedded = 0;
+            for (SanctionDoc d : batch) {
+                if (d.embedding == null) {
+                    try {
+                        d.embedding = new FloatList(embedModel.embed(text.apply(d)).content().vector());
+                        embedded++;
+                    } catch (Exception e) {
+                        failures.add(new LoadReport.Failure(d.id, "embed", String.valueOf(e.getMessage())));
+                        continue;
+                    }
+                }
+                ready.add(d);
+            }
+            return new EmbedResult(ready, embedded, failures);
+        }
+    }
+
+    private int uploadChunk(List<SanctionDoc> chunk, List<LoadReport.Failure> failures) {
+        Set<String> failed = run(() -> searchClient.uploadDocuments(chunk), chunk, d -> d.id, "upload", failures);
+        for (SanctionDoc d : chunk) d.embedding = null; // release vectors as soon as they are sent
+        return chunk.size() - failed.size();
+    }
+
+    /** Executes one index batch; partial failures surface as IndexBatchException, whole-batch errors fail every key. */
+    private static <T> Set<String> run(Callable<IndexDocumentsResult> call, List<T> chunk, Function<T, String> key,
+                                       String stage, List<LoadReport.Failure> failures) {
+        List<IndexingResult> results;
+        Set<String> failed = new HashSet<>();
+        try {
+            IndexDocumentsResult res = call.call();
+            results = res == null || res.getResults() == null ? List.of() : res.getResults();
+        } catch (IndexBatchException e) {
+            results = e.getIndexingResults();
+        } catch (Exception e) {
+            for (T d : chunk) {
+                String id = key.apply(d);
+                failed.add(id);
+                failures.add(new LoadReport.Failure(id, stage, String.valueOf(e.getMessage())));
+            }
+            return failed;
+        }
+        for (IndexingResult r : results) {
+            if (r.isSucceeded()) continue;
+            failed.add(r.getKey());
+            failures.add(new LoadReport.Failure(r.getKey(), stage, r.getErrorMessage()));
+        }
+        return failed;
+    }
+
+    private static EmbedResult take(ExecutorCompletionService<EmbedResult> ecs) {
+        try {
+            return ecs.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("indexing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("embedding stage failed", e.getCause());
+        }
+    }
+}
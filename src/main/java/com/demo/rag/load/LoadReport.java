@@ -0,0 +1,19 @@
+package com.demo.rag.load;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of a pipelined load: how many rows were embedded/uploaded and which ones failed, at which stage
+ * ("embed" or "upload").
+ */
+public record LoadReport(int rows, int embedded, int uploaded, int failed, int embedBatches, int uploadChunks,
+                         long elapsedMs, List<Failure> failures) {
+
+    public record Failure(String id, String stage, String message) { }
+
+    public Set<String> failedIds() {
+        return failures.stream().map(Failure::id).collect(Collectors.toSet());
+    }
+}
@@ -1,114 +1,137 @@
 package com.demo.rag.load;
 
+import com.demo.rag.agents.ScreeningAgent;
+import com.demo.rag.screening.LocalSanctionsIndex;
+import com.demo.rag.screening.SanctionsListVersion;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
+/**
+ * Loads the sanctions list into Azure AI Search / pgvector.
+ *
+ * Source, in order of precedence: an uploaded multipart {@code file}, a {@code path} under
+ * SANCTIONS_IMPORT_DIR (default data/import), or the bundled sample CSV. Files are streamed
+ * (see {@link SanctionRowReader}) and pushed chunk by chunk, so size is not limited by memory.
+ */
 @RestController
 @RequestMapping("/api/load")
 public class LoaderController {
 
+    private static final String DEFAULT_CSV = "sample-data/sanctions_simple_large.csv";
+    private static final int VECTOR_CHUNK = 500;
+
     @Autowired private VectorStore vectorStore;
     @Autowired private AzureSearchLoaderService searchLoader;
+    @Autowired private SanctionsListVersion sanctionsVersion;
+    @Autowired private LocalSanctionsIndex localIndex;
+    @Autowired private ScreeningAgent screening;
+
+    private final Path importDir = Path.of(Optional.ofNullable(System.getenv("SANCTIONS_IMPORT_DIR"))
+            .orElse("data/import")).toAbsolutePath().normalize();
 
+    /**
+     * mode=incremental (default): only added/changed rows are uploaded, removed ids deleted (see SyncManifest).
+     * mode=full: every row is re-embedded and re-uploaded.
+     * With SCREENING_BACKEND=local, the local index is rebuilt from the same file when the sync changed Search or
+     * when the index was built from another source (after a restart it starts from the bundled SANCTIONS_CSV,
+     * while an unchanged re-sync of the imported file reports nothing modified).
+     */
     @PostMapping("/sanctions-to-search")
-    public ResponseEntity<?> sanctionsToSearch() throws Exception {
-        List<Map<String, Object>> rows = readCsvFromClasspath("sample-data/sanctions_simple_large.csv");
+    public ResponseEntity<?> sanctionsToSearch(@RequestParam(defaultValue = "incremental") String mode,
+                                               @RequestParam(required = false) MultipartFile file,
+                                               @RequestParam(required = false) String path) throws Exception {
+        boolean full = "full".equalsIgnoreCase(mode);
         searchLoader.ensureIndex();
-        searchLoader.upsertMany(rows); // assuming this pushes to Azure AI Search
+        AzureSearchLoaderService.SyncReport report;
+        String source;
+        try (SanctionRowReader rows = open(file, path)) {
+            source = rows.source();
+            report = searchLoader.sync(rows, full);
+        }
+        // cached screening results now miss (only if what screening reads actually changed): on the local
+        // backend the version moves when reload swaps the snapshot, not when Search changes
+        Map<String, Object> local = null;
+        if (screening.isLocal() && (report.modified() || !localIndex.servesFrom(source))) {
+            local = new LinkedHashMap<>();
+            try {
+                local.put("entries", localIndex.reload(() -> open(file, path)));
+            } catch (IllegalStateException e) {
+                local.put("error", e.getMessage()); // previous snapshot (and version) keeps serving
+            }
+        } else if (report.modified()) {
+            sanctionsVersion.bump();
+        }
+        long version = sanctionsVersion.current();
 
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("upserted", rows.size());
-        payload.put("status", "ok");
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("source", source);
+        payload.put("upserted", report.added() + report.changed());
+        payload.put("sync", report);
+        payload.put("listVersion", version);
+        if (local != null) payload.put("localIndex", local);
+        payload.put("status", report.failed() == 0 ? "ok" : "partial");
         return ResponseEntity.ok(payload);
     }
 
     @PostMapping("/sanctions-to-vector")
-    public ResponseEntity<?> sanctionsToVector() throws Exception {
-        List<Map<String, Object>> rows = readCsvFromClasspath("sample-data/sanctions_simple_large.csv");
-        List<Document> docs = new ArrayList<>();
-        for (Map<String, Object> r : rows) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Name: ").append(r.getOrDefault("name", ""))
-                    .append("\nAliases: ").append(r.getOrDefault("aliases", ""))
-                    .append("\nCountry: ").append(r.getOrDefault("country", ""))
-                    .append("\nDOB: ").append(r.getOrDefault("birthDate", ""))
-                    .append("\nProgram: ").append(r.getOrDefault("program", ""))
-                    .append("\nList: ").append(r.getOrDefault("list", ""));
-            Document d = new Document(sb.toString());
-            d.getMetadata().put("collection", "sanctions");
-            d.getMetadata().put("id", r.getOrDefault("id", ""));
-            docs.add(d);
+    public ResponseEntity<?> sanctionsToVector(@RequestParam(required = false) MultipartFile file,
+                                               @RequestParam(required = false) String path) throws Exception {
+        int ingested = 0;
+        String source;
+        try (SanctionRowReader rows = open(file, path)) {
+            source = rows.source();
+            for (List<SanctionRow> chunk = rows.nextChunk(VECTOR_CHUNK); !chunk.isEmpty();
+                 chunk = rows.nextChunk(VECTOR_CHUNK)) {
+                List<Document> docs = new ArrayList<>(chunk.size());
+                for (SanctionRow r : chunk) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("Name: ").append(r.name())
+                            .append("\nAliases: ").append(r.aliases())
+                            .append("\nCountry: ").append(r.country())
+                            .append("\nDOB: ").append(r.birthDate())
+                            .append("\nProgram: ").append(r.program())
+                            .append("\nList: ").append(r.list());
+                    Document d = new Document(sb.toString());
+                    d.getMetadata().put("collection", "sanctions");
+                    d.getMetadata().put("id", r.id());
+                    docs.add(d);
+                }
+                vectorStore.add(docs);
+                ingested += docs.size();
+            }
         }
-        vectorStore.add(docs);
 
         Map<String, Object> payload = new HashMap<>();
-        payload.put("ingested", docs.size());
+        payload.put("source", source);
+        payload.put("ingested", ingested);
         payload.put("collection", "sanctions");
         return ResponseEntity.ok(payload);
     }
 
-    // ---------- Helpers ----------
-
-    private List<Map<String, Object>> readCsvFromClasspath(String path) throws Exception {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(
-                        Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream(path),
-                                "CSV not found on classpath: " + path),
-                        StandardCharsets.UTF_8))) {
+    // ---------------- helpers ----------------
 
-            String header = reader.readLine();
-            if (header == null) throw new IllegalArgumentException("CSV is empty: " + path);
-
-            List<String> cols = parseCsvLine(header);
-            List<Map<String, Object>> out = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                List<String> parts = parseCsvLine(line);
-                Map<String, Object> row = new LinkedHashMap<>();
-                for (int i = 0; i < cols.size(); i++) {
-                    String v = i < parts.size() ? parts.get(i) : "";
-                    row.put(cols.get(i).trim(), v);
-                }
-                out.add(row);
-            }
-            return out;
+    private SanctionRowReader open(MultipartFile file, String path) throws IOException {
+        if (file != null && !file.isEmpty()) {
+            return new SanctionRowReader(file.getInputStream(), "upload:" + file.getOriginalFilename());
         }
-    }
-
-    /** Simple CSV parser: handles commas inside quotes and doubled quotes ("") */
-    private static List<String> parseCsvLine(String line) {
-        List<String> tokens = new ArrayList<>();
-        if (line == null) return tokens;
-
-        StringBuilder cur = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    // escaped quote
-                    cur.append('"');
-                    i++;
-                } else {
-                    inQuotes = !inQuotes;
-                }
-            } else if (c == ',' && !inQuotes) {
-                tokens.add(cur.toString());
-                cur.setLength(0);
-            } else {
-                cur.append(c);
+        if (path != null && !path.isBlank()) {
+            Path p = importDir.resolve(path).normalize();
+            if (!p.startsWith(importDir) || !Files.isRegularFile(p)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "path must name a file under " + importDir);
             }
+            return new SanctionRowReader(Files.newInputStream(p), p.toString());
         }
-        tokens.add(cur.toString());
-        return tokens;
+        return SanctionRowReader.classpath(DEFAULT_CSV);
     }
 }
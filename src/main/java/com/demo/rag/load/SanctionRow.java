@@ -0,0 +1,5 @@
+package com.demo.rag.load;
+
+/** One sanctions list entry as read from CSV; only the columns the loaders and the screening index use. */
+public record SanctionRow(String id, String name, String aliases, String country, String birthDate,
+                          String program, String list) { }
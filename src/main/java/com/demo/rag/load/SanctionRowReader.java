@@ -0,0 +1,85 @@
+package com.demo.rag.load;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * SanctionRowReader
+ *
+ * Streams {@link SanctionRow}s out of a header-first sanctions CSV. Columns are located by header name
+ * (any order, extra columns ignored), so memory use is one record at a time regardless of file size.
+ * Callers typically pull fixed-size chunks with {@link #nextChunk(int)}.
+ */
+public class SanctionRowReader implements Iterator<SanctionRow>, Closeable {
+
+    private static final String[] COLUMNS = {"id", "name", "aliases", "country", "birthDate", "program", "list"};
+
+    private final CsvReader csv;
+    private final String source;
+    private final int[] index = new int[COLUMNS.length];
+    private SanctionRow next;
+
+    public SanctionRowReader(InputStream in, String source) throws IOException {
+        this.csv = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.source = source;
+
+        try {
+            String[] header = csv.next();
+            if (header == null) throw new IllegalArgumentException("CSV is empty: " + source);
+            Map<String, Integer> cols = new HashMap<>();
+            for (int i = 0; i < header.length; i++) cols.putIfAbsent(header[i].trim(), i);
+            for (int c = 0; c < COLUMNS.length; c++) index[c] = cols.getOrDefault(COLUMNS[c], -1);
+            if (index[1] < 0) throw new IllegalArgumentException("CSV has no 'name' column: " + source);
+            advance();
+        } catch (IOException | RuntimeException e) {
+            csv.close();
+            throw e;
+        }
+    }
+
+    /** Opens a CSV from the classpath. */
+    public static SanctionRowReader classpath(String path) throws IOException {
+        InputStream in = SanctionRowReader.class.getClassLoader().getResourceAsStream(path);
+        if (in == null) throw new FileNotFoundException("CSV not found on classpath: " + path);
+        return new SanctionRowReader(in, "classpath:" + path);
+    }
+
+    public String source() { return source; }
+
+    @Override
+    public boolean hasNext() { return next != null; }
+
+    @Override
+    public SanctionRow next() {
+        if (next == null) throw new NoSuchElementException();
+        SanctionRow r = next;
+        advance();
+        return r;
+    }
+
+    /** Up to {@code n} rows; empty at end of input. */
+    public List<SanctionRow> nextChunk(int n) {
+        List<SanctionRow> out = new ArrayList<>(Math.min(n, 1024));
+        while (out.size() < n && hasNext()) out.add(next());
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException { csv.close(); }
+
+    private void advance() {
+        try {
+            String[] f = csv.next();
+            next = f == null ? null : new SanctionRow(
+                    col(f, 0), col(f, 1), col(f, 2), col(f, 3), col(f, 4), col(f, 5), col(f, 6));
+        } catch (IOException e) {
+            throw new UncheckedIOException("CSV read failed (" + source + ", record " + (csv.records() + 1) + ")", e);
+        }
+    }
+
+    private String col(String[] f, int c) {
+        int i = index[c];
+        return i >= 0 && i < f.length ? f[i] : "";
+    }
+}
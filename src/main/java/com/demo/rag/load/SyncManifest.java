@@ -0,0 +1,75 @@
+package com.demo.rag.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SyncManifest
+ *
+ * What the Search index currently holds, per document id:
+ * - rowHash: hash of every uploaded field (detects any change),
+ * - embedHash: hash of the text that was embedded (decides whether the vector must be recomputed).
+ * Both are {@link com.demo.rag.util.Sha256#hex128} over the fields.
+ *
+ * Persisted as JSON next to the app (SANCTIONS_MANIFEST); writes go through a temp file + rename.
+ * A manifest recorded for a different index name is ignored.
+ */
+public class SyncManifest {
+
+    public record Entry(String rowHash, String embedHash) { }
+
+    /** On-disk shape. */
+    record Stored(String index, Map<String, Entry> entries) { }
+
+    private final Path file;
+    private final String indexName;
+    private final Map<String, Entry> entries;
+
+    private SyncManifest(Path file, String indexName, Map<String, Entry> entries) {
+        this.file = file;
+        this.indexName = indexName;
+        this.entries = entries;
+    }
+
+    /** Loads the manifest, or starts an empty one if the file is missing, unreadable or for another index. */
+    public static SyncManifest load(Path file, String indexName, ObjectMapper om) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (Files.isRegularFile(file)) {
+            try {
+                Stored s = om.readValue(file.toFile(), Stored.class);
+                if (indexName.equals(s.index()) && s.entries() != null) entries.putAll(s.entries());
+            } catch (IOException ignored) {
+                // corrupt manifest -> treat everything as new (full upload)
+            }
+        }
+        return new SyncManifest(file, indexName, entries);
+    }
+
+    public Entry get(String id) { return entries.get(id); }
+
+    public void put(String id, Entry e) { entries.put(id, e); }
+
+    public void remove(String id) { entries.remove(id); }
+
+    public Map<String, Entry> entries() { return entries; }
+
+    public int size() { return entries.size(); }
+
+    public void save(ObjectMapper om) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            om.writeValue(tmp.toFile(), new Stored(indexName, entries));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.demo.rag.mrz;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * MrzParser
+ *
+ * ICAO 9303 machine readable zones without the remote analysis:
+ * - TD1 (ID cards, 3 × 30), TD2 (2 × 36) and TD3 (passports, 2 × 44); MRV-A / MRV-B visas (same sizes as TD3 /
+ *   TD2, document code V…) are read with the TD3 / TD2 layout and have no composite check digit,
+ * - every check digit is validated (7-3-1 weights, '<' = 0, A-Z = 10..35): document number, birth date,
+ *   expiry date, optional data (TD3) and composite; TD1 long document numbers continue in the optional field,
+ * - lower-case letters are accepted, spaces and other OCR noise between MRZ characters are ignored; lines are
+ *   separated by line breaks, or given as one string of exactly 90 / 72 / 88 characters.
+ *
+ * The text is copied once into a per-thread scratch buffer and read by offset — no split / regex / substring;
+ * only the returned field values are allocated.
+ */
+public final class MrzParser {
+
+    public enum Format {
+        TD1(3, 30), TD2(2, 36), TD3(2, 44);
+
+        public final int lines, length;
+
+        Format(int lines, int length) {
+            this.lines = lines;
+            this.length = length;
+        }
+    }
+
+    /** Parsed fields (null when blank or unreadable) and per-field check results; dates are ISO yyyy-MM-dd. */
+    public record Result(Format format, String documentCode, String issuingState, String documentNumber,
+                         String nationality, String birthDate, String sex, String expiryDate,
+                         String surname, String givenNames,
+                         boolean documentNumberValid, boolean birthDateValid, boolean expiryDateValid,
+                         boolean optionalDataValid, boolean compositeValid) {
+
+        /** All check digits hold. */
+        public boolean valid() {
+            return documentNumberValid && birthDateValid && expiryDateValid && optionalDataValid && compositeValid;
+        }
+
+        /** "GIVEN NAMES SURNAME", as the visual fields print it. */
+        public String fullName() {
+            if (givenNames == null) return surname;
+            return surname == null ? givenNames : givenNames + " " + surname;
+        }
+    }
+
+    private static final int MAX = 90; // TD1 3 × 30 is the largest zone
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[MAX]);
+
+    /** Character values for the check digits; -1 = not an MRZ character. */
+    private static final byte[] VALUE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUE, (byte) -1);
+        VALUE['<'] = 0;
+        for (char c = '0'; c <= '9'; c++) VALUE[c] = (byte) (c - '0');
+        for (char c = 'A'; c <= 'Z'; c++) VALUE[c] = (byte) (c - 'A' + 10);
+    }
+
+    private MrzParser() { }
+
+    /** Parses a zone that contains only MRZ lines; null when it is not a TD1 / TD2 / TD3 zone. */
+    public static Result parse(CharSequence text) {
+        if (text == null) return null;
+        char[] b = SCRATCH.get();
+        int n = 0, lines = 0, lineLen = -1, cur = 0;
+        for (int i = 0, len = text.length(); i <= len; i++) {
+            char c = i < len ? text.charAt(i) : '\n';
+            if (c == '\n' || c == '\r') {
+                if (cur == 0) continue;
+                if (lineLen < 0) lineLen = cur;
+                else if (cur != lineLen) return null;
+                lines++;
+                cur = 0;
+                continue;
+            }
+            if (c >= 'a' && c <= 'z') c -= 32;
+            if (c >= 128 || VALUE[c] < 0) continue; // spaces, OCR noise
+            if (n == MAX) return null;
+            b[n++] = c;
+            cur++;
+        }
+
+        Format f = null;
+        if (lines == 1) {
+            f = n == 90 ? Format.TD1 : n == 72 ? Format.TD2 : n == 88 ? Format.TD3 : null;
+        } else {
+            for (Format x : Format.values()) if (x.lines == lines && x.length == lineLen) f = x;
+        }
+        if (f == null) return null;
+        return switch (f) {
+            case TD1 -> td1(b);
+            case TD2 -> td23(b, Format.TD2);
+            case TD3 -> td23(b, Format.TD3);
+        };
+    }
+
+    /**
+     * Finds an MRZ in free text (e.g. a PDF text layer): consecutive lines that, ignoring spaces, have the same MRZ
+     * length and only MRZ characters. A window whose check digits fail slides on by one line, so an MRZ-length line
+     * just above the zone (a heading, say) does not hide it; when no window validates, the first readable one is
+     * returned. Null when there is none.
+     */
+    public static Result find(CharSequence text) {
+        if (text == null) return null;
+        int[] starts = new int[3]; // line starts of the current run, oldest first
+        int runLen = 0, runCount = 0;
+        Result first = null;
+        int lineStart = 0;
+        for (int i = 0, len = text.length(); i <= len; i++) {
+            char c = i < len ? text.charAt(i) : '\n';
+            if (c != '\n' && c != '\r') continue;
+            int clean = mrzLength(text, lineStart, i);
+            if (clean == 30 || clean == 36 || clean == 44) {
+                if (runCount == 0 || clean != runLen) {
+                    runLen = clean;
+                    runCount = 0;
+                }
+                starts[runCount++] = lineStart;
+                int needed = clean == 30 ? 3 : 2;
+                if (runCount == needed) {
+                    Result r = parse(text.subSequence(starts[0], i));
+                    if (r != null && r.valid()) return r;
+                    if (first == null) first = r;
+                    System.arraycopy(starts, 1, starts, 0, --runCount); // retry from the window's next line
+                }
+            } else if (clean != 0) {
+                runCount = 0; // blank lines do not break a run
+            }
+            lineStart = i + 1;
+        }
+        return first;
+    }
+
+    // ---------------- layouts ----------------
+
+    private static Result td23(char[] b, Format f) {
+        int l2 = f.length;                       // line 2 offset
+        boolean visa = b[0] == 'V';
+        int optEnd = f == Format.TD3 ? l2 + 42 : l2 + 35;
+
+        boolean docOk = check(b, l2, l2 + 9, b[l2 + 9], false);
+        boolean dobOk = check(b, l2 + 13, l2 + 19, b[l2 + 19], false);
+        boolean expOk = check(b, l2 + 21, l2 + 27, b[l2 + 27], false);
+        boolean optOk = f != Format.TD3 || visa || check(b, l2 + 28, l2 + 42, b[l2 + 42], true);
+        boolean compOk = visa;
+        if (!visa) {
+            int sum = sum(b, l2, l2 + 10, 0);
+            sum += sum(b, l2 + 13, l2 + 20, 10);
+            sum += sum(b, l2 + 21, optEnd + (f == Format.TD3 ? 1 : 0), 17);
+            compOk = matches(sum, b[l2 + f.length - 1], false);
+        }
+
+        int sep = nameSeparator(b, 5, l2);
+        return new Result(f, text(b, 0, 2), text(b, 2, 5), text(b, l2, l2 + 9), text(b, l2 + 10, l2 + 13),
+                date(b, l2 + 13, true), sex(b[l2 + 20]), date(b, l2 + 21, false),
+                text(b, 5, sep), text(b, Math.min(sep + 2, l2), l2),
+                docOk, dobOk, expOk, optOk, compOk);
+    }
+
+    private static Result td1(char[] b) {
+        // line 1: code(0-2) state(2-5) docNo(5-14) cd(14) optional(15-30)
+        // line 2: dob(30-36) cd(36) sex(37) expiry(38-44) cd(44) nationality(45-48) optional(48-59) composite(59)
+        // line 3: names(60-90)
+        String docNo;
+        boolean docOk;
+        if (b[14] == '<' && b[15] != '<') {
+            // long document number: the rest is in the optional field, its check digit is the last char before '<'
+            int end = 15;
+            while (end < 30 && b[end] != '<') end++;
+            int cd = end - 1;
+            int sum = sum(b, 5, 14, 0) + sum(b, 15, cd, 9);
+            docOk = cd > 15 && matches(sum, b[cd], false);
+            docNo = new StringBuilder(24).append(b, 5, 9).append(b, 15, cd - 15).toString();
+        } else {
+            docOk = check(b, 5, 14, b[14], false);
+            docNo = text(b, 5, 14);
+        }
+        boolean dobOk = check(b, 30, 36, b[36], false);
+        boolean expOk = check(b, 38, 44, b[44], false);
+        int sum = sum(b, 5, 30, 0);
+        sum += sum(b, 30, 37, 25);
+        sum += sum(b, 38, 45, 32);
+        sum += sum(b, 48, 59, 39);
+        boolean compOk = matches(sum, b[59], false);
+
+        int sep = nameSeparator(b, 60, 90);
+        return new Result(Format.TD1, text(b, 0, 2), text(b, 2, 5), docNo, text(b, 45, 48),
+                date(b, 30, true), sex(b[37]), date(b, 38, false),
+                text(b, 60, sep), text(b, Math.min(sep + 2, 90), 90),
+                docOk, dobOk, expOk, true, compOk);
+    }
+
+    // ---------------- check digits ----------------
+
+    /** Weighted sum of b[from, to); {@code pos} = position of b[from] in the checked string (selects the weight). */
+    private static int sum(char[] b, int from, int to, int pos) {
+        int s = 0;
+        for (int i = from; i < to; i++, pos++) {
+            int w = pos % 3 == 0 ? 7 : pos % 3 == 1 ? 3 : 1;
+            s += VALUE[b[i]] * w;
+        }
+        return s;
+    }
+
+    private static boolean check(char[] b, int from, int to, char cd, boolean fillerAllowed) {
+        return matches(sum(b, from, to, 0), cd, fillerAllowed);
+    }
+
+    /** {@code fillerAllowed}: an empty optional field may carry '<' instead of 0 as its check digit. */
+    private static boolean matches(int sum, char cd, boolean fillerAllowed) {
+        if (cd == '<') return fillerAllowed && sum % 10 == 0;
+        return cd >= '0' && cd <= '9' && sum % 10 == cd - '0';
+    }
+
+    // ---------------- fields ----------------
+
+    /** Field text with fillers trimmed and inner fillers as spaces; null when blank. */
+    private static String text(char[] b, int from, int to) {
+        while (to > from && b[to - 1] == '<') to--;
+        while (from < to && b[from] == '<') from++;
+        if (from >= to) return null;
+        boolean filler = false;
+        for (int i = from; i < to; i++) if (b[i] == '<') { filler = true; break; }
+        if (!filler) return new String(b, from, to - from);
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = b[i];
+            if (c != '<') sb.append(c);
+            else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    /** Index of the "<<" between surname and given names (SURNAME<<GIVEN<NAMES<<<); {@code to} when absent. */
+    private static int nameSeparator(char[] b, int from, int to) {
+        for (int i = from; i + 1 < to; i++) if (b[i] == '<' && b[i + 1] == '<') return i;
+        return to;
+    }
+
+    /** YYMMDD → yyyy-MM-dd; birth dates are never in the future, expiry years 70-99 are 19xx. */
+    private static String date(char[] b, int at, boolean birth) {
+        for (int i = at; i < at + 6; i++) if (b[i] < '0' || b[i] > '9') return null;
+        int yy = (b[at] - '0') * 10 + (b[at + 1] - '0');
+        int mm = (b[at + 2] - '0') * 10 + (b[at + 3] - '0');
+        int dd = (b[at + 4] - '0') * 10 + (b[at + 5] - '0');
+        int year;
+        if (birth) {
+            int now = LocalDate.now(ZoneOffset.UTC).getYear();
+            year = 2000 + yy > now ? 1900 + yy : 2000 + yy;
+        } else {
+            year = yy >= 70 ? 1900 + yy : 2000 + yy;
+        }
+        if (mm < 1 || mm > 12 || dd < 1 || dd > java.time.YearMonth.of(year, mm).lengthOfMonth()) return null;
+        char[] out = {
+                (char) ('0' + year / 1000), (char) ('0' + year / 100 % 10), (char) ('0' + year / 10 % 10),
+                (char) ('0' + year % 10), '-', b[at + 2], b[at + 3], '-', b[at + 4], b[at + 5]};
+        return new String(out);
+    }
+
+    private static String sex(char c) {
+        return c == 'M' ? "M" : c == 'F' ? "F" : c == 'X' || c == '<' ? "X" : null;
+    }
+
+    /**
+     * Count of MRZ characters (either case, as {@link #parse} reads them) in text[from, to), 0 for blank lines,
+     * -1 when another visible character occurs.
+     */
+    private static int mrzLength(CharSequence text, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t') continue;
+            if (c >= 'a' && c <= 'z') c -= 32;
+            if (c >= 128 || VALUE[c] < 0) return -1;
+            n++;
+        }
+        return n;
+    }
+}
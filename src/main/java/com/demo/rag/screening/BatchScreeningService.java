@@ -0,0 +1,128 @@
+package com.demo.rag.screening;
+
+import com.demo.rag.agents.ScreeningAgent;
+import com.demo.rag.dto.ScreeningResult;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchScreeningService
+ *
+ * Screens many {name, birthDate} queries in one call:
+ * - identical queries (same normalized name + DOB) are screened once and the result is shared,
+ * - unique queries fan out over a bounded pool (SCREENING_BATCH_PARALLELISM, default 8),
+ * - one NDJSON line is emitted per input item as soon as its screening completes,
+ *   followed by a final summary line.
+ */
+@Service
+public class BatchScreeningService {
+
+    private final ScreeningAgent screening;
+    private final ObjectMapper om;
+    private final ExecutorService pool;
+    private final int maxItems;
+
+    public BatchScreeningService(ScreeningAgent screening, ObjectMapper objectMapper) {
+        this.screening = screening;
+        this.om = objectMapper;
+        int parallelism = Integer.parseInt(
+                Optional.ofNullable(System.getenv("SCREENING_BATCH_PARALLELISM")).orElse("8"));
+        this.maxItems = Integer.parseInt(
+                Optional.ofNullable(System.getenv("SCREENING_BATCH_MAX_ITEMS")).orElse("10000"));
+
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "screen-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** One input item; extra fields are ignored so callers can pass their own row shape. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Query(String name, String birthDate) { }
+
+    public int maxItems() { return maxItems; }
+
+    /**
+     * Starts screening and returns immediately; lines are written to the emitter as results arrive.
+     * The emitter is completed once every item has been written.
+     */
+    public void screenAll(List<Query> queries, ResponseBodyEmitter emitter) {
+        long t0 = System.nanoTime();
+        Map<String, CompletableFuture<ScreeningResult>> unique = new HashMap<>();
+        List<CompletableFuture<Void>> written = new ArrayList<>(queries.size());
+
+        for (int i = 0; i < queries.size(); i++) {
+            Query q = queries.get(i);
+            String name = q.name() == null ? "" : q.name();
+            String dob  = q.birthDate() == null ? "" : q.birthDate().trim();
+
+            CompletableFuture<ScreeningResult> result = unique.computeIfAbsent(dedupKey(name, dob),
+                    k -> CompletableFuture.supplyAsync(() -> screening.sanctionsScreen(name, dob), pool));
+
+            int index = i;
+            written.add(result.handle((res, err) -> {
+                send(emitter, line(index, name, dob, res, err));
+                return null;
+            }));
+        }
+
+        int total = queries.size(), distinct = unique.size();
+        CompletableFuture.allOf(written.toArray(new CompletableFuture[0])).whenComplete((v, err) -> {
+            ObjectNode summary = om.createObjectNode();
+            summary.putObject("summary")
+                    .put("items", total)
+                    .put("unique", distinct)
+                    .put("elapsedMs", (System.nanoTime() - t0) / 1_000_000);
+            send(emitter, summary);
+            emitter.complete();
+        });
+    }
+
+    @PreDestroy
+    void shutdown() { pool.shutdownNow(); }
+
+    // ---------------- helpers ----------------
+
+    private static String dedupKey(String name, String dob) {
+        return NameNormalizer.normalize(name) + "|" + dob;
+    }
+
+    private ObjectNode line(int index, String name, String dob, ScreeningResult result, Throwable err) {
+        ObjectNode n = om.createObjectNode();
+        n.put("index", index);
+        n.put("name", name);
+        n.put("birthDate", dob);
+        if (err != null) {
+            Throwable c = (err instanceof CompletionException && err.getCause() != null) ? err.getCause() : err;
+            n.put("error", "screen-failed");
+            n.put("message", String.valueOf(c.getMessage()));
+            return n;
+        }
+        n.set("result", om.valueToTree(result));
+        return n;
+    }
+
+    /** ResponseBodyEmitter is not safe for concurrent sends; serialize writers on it. */
+    private void send(ResponseBodyEmitter emitter, ObjectNode node) {
+        try {
+            String text = om.writeValueAsString(node) + "\n";
+            synchronized (emitter) {
+                emitter.send(text, MediaType.APPLICATION_NDJSON);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // client went away or emitter already completed; remaining lines are dropped
+        }
+    }
+}
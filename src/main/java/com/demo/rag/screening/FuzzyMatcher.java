@@ -0,0 +1,152 @@
+package com.demo.rag.screening;
+
+import java.util.Arrays;
+
+/**
+ * FuzzyMatcher
+ *
+ * Jaro-Winkler similarity (same definition as Commons Text {@code JaroWinklerSimilarity}) that takes the
+ * caller's threshold into account:
+ * - candidates whose length ratio and common prefix cannot reach the threshold are rejected up front,
+ * - the matching loop stops as soon as the remaining characters cannot lift the score over the threshold,
+ * - works on {@code char[]} keys with per-thread scratch arrays, so a call does not allocate.
+ *
+ * Scores below the threshold are not computed exactly; they are reported as {@link #BELOW}.
+ */
+public final class FuzzyMatcher {
+
+    /** Returned when the similarity is (provably) below the requested threshold. */
+    public static final double BELOW = -1.0;
+
+    private static final double SCALING = 0.1;      // Winkler prefix scale
+    private static final double BOOST_FROM = 0.7;   // prefix boost applies from this Jaro score
+    private static final int MAX_PREFIX = 4;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private FuzzyMatcher() { }
+
+    /** Exact Jaro-Winkler similarity (no pruning). */
+    public static double similarity(char[] a, char[] b) {
+        double s = similarity(a, b, 0.0);
+        return s == BELOW ? 0.0 : s;
+    }
+
+    /**
+     * Jaro-Winkler similarity of {@code a} and {@code b} if it is {@code >= threshold}, otherwise {@link #BELOW}.
+     */
+    public static double similarity(char[] a, char[] b, double threshold) {
+        int la = a.length, lb = b.length;
+        if (la == lb && Arrays.equals(a, b)) return 1.0;
+        if (la == 0 || lb == 0) return threshold <= 0.0 ? 0.0 : BELOW;
+
+        char[] min = la <= lb ? a : b;
+        char[] max = la <= lb ? b : a;
+        int mn = min.length, mx = max.length;
+
+        // Common prefix (at most 4 chars) feeds every bound below
+        int prefix = 0;
+        for (int i = 0, n = Math.min(MAX_PREFIX, mn); i < n && a[i] == b[i]; i++) prefix++;
+
+        // Length bound: at best every char of the shorter key matches without transpositions
+        if (upperBound(mn, la, lb, prefix) < threshold) return BELOW;
+
+        Scratch s = SCRATCH.get();
+        int[] matchIndex = s.ints(mn);
+        boolean[] matched = s.flags(mx);
+
+        int range = Math.max(mx / 2 - 1, 0);
+        int m = 0;
+        for (int mi = 0; mi < mn; mi++) {
+            char c = min[mi];
+            matchIndex[mi] = -1;
+            for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, mx); xi < xn; xi++) {
+                if (!matched[xi] && c == max[xi]) {
+                    matchIndex[mi] = xi;
+                    matched[xi] = true;
+                    m++;
+                    break;
+                }
+            }
+            // Early termination: even if every remaining char matched, could we still reach the threshold?
+            if (threshold > 0.0 && upperBound(m + (mn - mi - 1), la, lb, prefix) < threshold) {
+                return BELOW;
+            }
+        }
+        if (m == 0) return threshold <= 0.0 ? 0.0 : BELOW;
+
+        // Half-transpositions: walk the matched chars of both keys in order
+        int half = 0;
+        for (int i = 0, xi = 0; i < mn; i++) {
+            if (matchIndex[i] < 0) continue;
+            while (!matched[xi]) xi++;
+            if (min[i] != max[xi]) half++;
+            xi++;
+        }
+
+        double dm = m;
+        double j = (dm / la + dm / lb + (dm - half / 2.0) / dm) / 3.0;
+        double jw = j < BOOST_FROM ? j : j + SCALING * prefix * (1.0 - j);
+        return jw >= threshold ? jw : BELOW;
+    }
+
+    /**
+     * Best similarity of a query against several variants of one candidate (name, aliases, token-sorted forms).
+     * The threshold rises to the best score seen so far, so later variants are pruned harder.
+     *
+     * @return best score {@code >= threshold}, or {@link #BELOW}
+     */
+    public static double best(char[] query, char[] querySorted, char[][] variants, char[][] variantsSorted,
+                              double threshold) {
+        double best = BELOW;
+        double bar = threshold;
+        for (int i = 0; i < variants.length; i++) {
+            double s = similarity(query, variants[i], bar);
+            if (s > best) { best = s; bar = s; }
+            if (best == 1.0) return best;
+
+            // token-sorted forms (null means the key is already in sorted order)
+            char[] qs = querySorted != null ? querySorted : query;
+            char[] vs = variantsSorted != null && variantsSorted[i] != null ? variantsSorted[i] : variants[i];
+            if (qs != query || vs != variants[i]) {
+                s = similarity(qs, vs, bar);
+                if (s > best) { best = s; bar = s; }
+            }
+        }
+        return best;
+    }
+
+    /** Tokens of a normalized key sorted alphabetically ("HASSAN AYSE" → "AYSE HASSAN"); null if unchanged. */
+    public static char[] tokenSorted(String key) {
+        if (key == null || key.indexOf(' ') < 0) return null;
+        String[] tokens = key.split(" ");
+        Arrays.sort(tokens);
+        String sorted = String.join(" ", tokens);
+        return sorted.equals(key) ? null : sorted.toCharArray();
+    }
+
+    // ---------------- helpers ----------------
+
+    /** Highest Jaro-Winkler reachable with {@code m} matches and no transpositions. */
+    private static double upperBound(int m, int la, int lb, int prefix) {
+        if (m <= 0) return 0.0;
+        double j = ((double) m / la + (double) m / lb + 1.0) / 3.0;
+        return j < BOOST_FROM ? j : j + SCALING * prefix * (1.0 - j);
+    }
+
+    private static final class Scratch {
+        int[] ints = new int[64];
+        boolean[] flags = new boolean[64];
+
+        int[] ints(int n) {
+            if (ints.length < n) ints = new int[Math.max(n, ints.length * 2)];
+            return ints;
+        }
+
+        boolean[] flags(int n) {
+            if (flags.length < n) flags = new boolean[Math.max(n, flags.length * 2)];
+            else Arrays.fill(flags, 0, n, false);
+            return flags;
+        }
+    }
+}
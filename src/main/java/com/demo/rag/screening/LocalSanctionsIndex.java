@@ -0,0 +1,244 @@
+package com.demo.rag.screening;
+
+import com.demo.rag.load.SanctionRow;
+import com.demo.rag.load.SanctionRowReader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * LocalSanctionsIndex
+ *
+ * In-process alternative to the Azure AI Search sanctions index.
+ * - Built on first use from SANCTIONS_CSV (default sample-data/sanctions_simple_large.csv); after a sanctions
+ *   sync that changed the list, or whose file is not the one this index was built from (e.g. the first sync
+ *   after a restart), LoaderController rebuilds it from the synced file via {@link #reload(Source)}.
+ * - Every entry contributes one "variant" per name and alias; each variant is indexed by character trigrams.
+ * - Keys are normalized once here (see {@link NameNormalizer}); queries never re-normalize indexed names.
+ * - Candidates are ranked by Dice overlap of trigrams (best variant per entry), optionally filtered by DOB.
+ *
+ * A snapshot is immutable once built; a reload builds the next one off to the side and swaps it in, so lookups
+ * never see a half-built index.
+ */
+@Component
+public class LocalSanctionsIndex {
+
+    /** Where a rebuild reads its rows from; opened once per build. */
+    @FunctionalInterface
+    public interface Source {
+        SanctionRowReader open() throws IOException;
+    }
+
+    private final String csvPath;
+    private final SanctionsListVersion listVersion;
+    private volatile Snapshot snapshot; // lazily built on first use
+
+    public LocalSanctionsIndex(SanctionsListVersion listVersion) {
+        this.listVersion = listVersion;
+        this.csvPath = Optional.ofNullable(System.getenv("SANCTIONS_CSV"))
+                .orElse("sample-data/sanctions_simple_large.csv");
+    }
+
+    /**
+     * One sanctions row, kept as-is for the response payload, plus keys precomputed for matching:
+     * nameKey, and name + alias keys as char[] (with token-sorted forms, null when already sorted).
+     */
+    public record Entry(String id, String name, String aliases, String country,
+                        String birthDate, String program, String list, String[] dobs, String nameKey,
+                        char[][] keys, char[][] sortedKeys) {
+
+        public boolean hasDob(String dob) {
+            if (dob == null || dob.isBlank()) return false;
+            for (String d : dobs) if (d.equals(dob)) return true;
+            return false;
+        }
+    }
+
+    /** Candidate produced by the trigram index; score is the Dice overlap of the best variant. */
+    public record Candidate(Entry entry, double score, String matchedKey) { }
+
+    /** Result of a lookup: total number of candidates above the cut-off plus the top-N of them. */
+    public record Lookup(int total, List<Candidate> top) { }
+
+    public int size() { return snapshot().entries.length; }
+
+    public String source() { return snapshot().source; }
+
+    /** True when the current snapshot was built from {@code source}; false (without building) if none is built yet. */
+    public boolean servesFrom(String source) {
+        Snapshot s = snapshot;
+        return s != null && s.source.equals(source);
+    }
+
+    /**
+     * Rebuilds the index from {@code source} (e.g. the file a sanctions sync just pushed to Search) and bumps the
+     * list version. On failure the current snapshot stays in place.
+     *
+     * @return number of entries in the new snapshot
+     */
+    public synchronized int reload(Source source) {
+        this.snapshot = build(source);
+        listVersion.bump(); // after the swap: results cached under the new version never come from the old snapshot
+        return snapshot.entries.length;
+    }
+
+    /**
+     * Finds entries whose name or aliases share enough trigrams with the query.
+     *
+     * @param name     raw query name (normalized internally)
+     * @param dob      optional YYYY-MM-DD; when present only entries listing this birth date qualify
+     * @param minScore minimum Dice overlap (0..1) for a candidate to count
+     * @param top      maximum number of candidates returned
+     */
+    public Lookup lookup(String name, String dob, double minScore, int top) {
+        Snapshot s = snapshot();
+        String key = NameNormalizer.normalize(name);
+        long[] qGrams = grams(key);
+        if (qGrams.length == 0) return new Lookup(0, List.of());
+
+        // 1) Count shared grams per variant, remembering which variants were touched
+        int[] shared = new int[s.variantKeys.length];
+        int[] touched = new int[s.variantKeys.length];
+        int touchedCount = 0;
+        for (long g : qGrams) {
+            int[] posting = s.postings.get(g);
+            if (posting == null) continue;
+            for (int v : posting) {
+                if (shared[v]++ == 0) touched[touchedCount++] = v;
+            }
+        }
+
+        // 2) Best Dice per entry
+        boolean filterDob = dob != null && !dob.isBlank();
+        Map<Integer, Candidate> best = new HashMap<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int v = touched[i];
+            double dice = (2.0 * shared[v]) / (qGrams.length + s.variantGramCounts[v]);
+            if (dice < minScore) continue;
+
+            int e = s.variantEntry[v];
+            Entry entry = s.entries[e];
+            if (filterDob && !entry.hasDob(dob.trim())) continue;
+
+            Candidate prev = best.get(e);
+            if (prev == null || dice > prev.score()) {
+                best.put(e, new Candidate(entry, dice, s.variantKeys[v]));
+            }
+        }
+
+        List<Candidate> ranked = new ArrayList<>(best.values());
+        ranked.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return new Lookup(ranked.size(), ranked.size() > top ? ranked.subList(0, top) : ranked);
+    }
+
+    // ---------------- build ----------------
+
+    private Snapshot snapshot() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            synchronized (this) {
+                if (snapshot == null) snapshot = build(() -> SanctionRowReader.classpath(csvPath));
+                s = snapshot;
+            }
+        }
+        return s;
+    }
+
+    private static final class Snapshot {
+        String source;
+        Entry[] entries;
+        String[] variantKeys;       // normalized name / alias per variant
+        int[] variantEntry;         // variant -> entry index
+        int[] variantGramCounts;    // distinct trigram count per variant
+        Map<Long, int[]> postings;  // trigram -> variant ids
+    }
+
+    private static Snapshot build(Source source) {
+        List<Entry> entries = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Integer> owner = new ArrayList<>();
+        String from;
+        try (SanctionRowReader rows = source.open()) {
+            from = rows.source();
+            while (rows.hasNext()) add(rows.next(), entries, keys, owner);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot load sanctions CSV: " + e.getMessage(), e);
+        }
+
+        Snapshot s = new Snapshot();
+        s.source = from;
+        s.entries = entries.toArray(new Entry[0]);
+        s.variantKeys = keys.toArray(new String[0]);
+        s.variantEntry = new int[keys.size()];
+        s.variantGramCounts = new int[keys.size()];
+
+        Map<Long, List<Integer>> tmp = new HashMap<>();
+        for (int v = 0; v < s.variantKeys.length; v++) {
+            s.variantEntry[v] = owner.get(v);
+            long[] g = grams(s.variantKeys[v]);
+            s.variantGramCounts[v] = g.length;
+            for (long x : g) tmp.computeIfAbsent(x, k -> new ArrayList<>()).add(v);
+        }
+        s.postings = new HashMap<>(tmp.size() * 2);
+        for (Map.Entry<Long, List<Integer>> en : tmp.entrySet()) {
+            List<Integer> l = en.getValue();
+            int[] arr = new int[l.size()];
+            for (int i = 0; i < arr.length; i++) arr[i] = l.get(i);
+            s.postings.put(en.getKey(), arr);
+        }
+        return s;
+    }
+
+    /** Appends one row: its entry plus one variant per distinct normalized name/alias. */
+    private static void add(SanctionRow r, List<Entry> entries, List<String> keys, List<Integer> owner) {
+        String nameKey = NameNormalizer.normalize(r.name());
+
+        // name + every alias variant, de-duplicated after normalization
+        Set<String> variants = new LinkedHashSet<>();
+        variants.add(nameKey);
+        for (String a : r.aliases().split(";")) variants.add(NameNormalizer.normalize(a));
+        variants.remove("");
+
+        char[][] vk = new char[variants.size()][];
+        char[][] vs = new char[variants.size()][];
+        int k = 0;
+        for (String v : variants) {
+            vk[k] = v.toCharArray();
+            vs[k] = FuzzyMatcher.tokenSorted(v);
+            k++;
+        }
+
+        Entry e = new Entry(r.id(), r.name(), r.aliases(), r.country(), r.birthDate(), r.program(), r.list(),
+                splitDobs(r.birthDate()), nameKey, vk, vs);
+        int idx = entries.size();
+        entries.add(e);
+        for (String v : variants) {
+            keys.add(v);
+            owner.add(idx);
+        }
+    }
+
+    // ---------------- helpers ----------------
+
+    /** Distinct trigrams of " key ", packed three UTF-16 units per long. */
+    static long[] grams(String key) {
+        if (key == null || key.isEmpty()) return new long[0];
+        String p = " " + key + " ";
+        long[] out = new long[p.length() - 2];
+        for (int i = 0; i + 2 < p.length(); i++) {
+            out[i] = ((long) p.charAt(i) << 32) | ((long) p.charAt(i + 1) << 16) | p.charAt(i + 2);
+        }
+        Arrays.sort(out);
+        int n = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (i == 0 || out[i] != out[i - 1]) out[n++] = out[i];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static String[] splitDobs(String raw) {
+        if (raw == null || raw.isBlank()) return new String[0];
+        return Arrays.stream(raw.split("\\|")).map(String::trim).filter(d -> !d.isEmpty()).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,159 @@
+package com.demo.rag.screening;
+
+import java.text.Normalizer;
+
+/**
+ * NameNormalizer
+ *
+ * Single-pass, table-driven folding of person/entity names into screening keys:
+ * - Latin letters lose their diacritics (Ş → S, ß → SS, Ø → O) and are upper-cased,
+ * - Cyrillic, Greek and Arabic letters are transliterated to Latin (Наталия → NATALIYA),
+ * - precomposed Latin Extended Additional letters fold like any other accented letter
+ *   (Nguyễn Văn Thắng → NGUYEN VAN THANG, Đặng → DANG, Ḥasan → HASAN),
+ * - digits are kept, apostrophes are dropped, everything else becomes a single space.
+ *
+ * The lookup table is computed once at class load; the per-thread output buffer is reused,
+ * so a call allocates only the resulting String.
+ */
+public final class NameNormalizer {
+
+    /**
+     * Table covers Latin-1 through Latin Extended Additional (U+1E00..U+1EFF, Vietnamese and transliteration
+     * letters such as ễ, ặ, Ḥ), with combining marks, Greek, Cyrillic and Arabic in between.
+     */
+    private static final int TABLE_SIZE = 0x1F00;
+
+    /** FOLD[c]: replacement text; "" drops the char; null turns it into a separator. */
+    private static final String[] FOLD = new String[TABLE_SIZE];
+
+    private static final ThreadLocal<StringBuilder> BUF = ThreadLocal.withInitial(() -> new StringBuilder(64));
+    private static final int MAX_RETAINED_BUFFER = 1024;
+
+    private NameNormalizer() { }
+
+    /** Normalizes a raw name; null/blank input yields "". */
+    public static String normalize(CharSequence s) {
+        if (s == null || s.length() == 0) return "";
+        StringBuilder sb = BUF.get();
+        sb.setLength(0);
+        boolean pendingSpace = false;
+
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c >= 'a' && c <= 'z') c -= 32;
+                if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                    if (pendingSpace && sb.length() > 0) sb.append(' ');
+                    pendingSpace = false;
+                    sb.append(c);
+                } else if (c != '\'') {
+                    pendingSpace = true;
+                }
+                continue;
+            }
+
+            String rep = c < TABLE_SIZE ? FOLD[c] : (isApostrophe(c) ? "" : null);
+            if (rep == null) {
+                pendingSpace = true;
+            } else if (!rep.isEmpty()) {
+                if (pendingSpace && sb.length() > 0) sb.append(' ');
+                pendingSpace = false;
+                sb.append(rep);
+            }
+        }
+
+        String out = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) BUF.remove();
+        return out;
+    }
+
+    private static boolean isApostrophe(char c) {
+        return c == '‘' || c == '’' || c == 'ʼ' || c == 'ʹ';
+    }
+
+    // ---------------- table ----------------
+
+    static {
+        // Combining diacritical marks are dropped (input may already be decomposed)
+        for (char c = 0x0300; c <= 0x036F; c++) FOLD[c] = "";
+        for (char c = 0x1AB0; c <= 0x1AFF; c++) FOLD[c] = ""; // combining marks extended
+        for (char c = 0x1DC0; c <= 0x1DFF; c++) FOLD[c] = ""; // combining marks supplement
+        FOLD[0x02BC] = "";  // modifier letter apostrophe
+        FOLD[0x02B9] = "";  // modifier letter prime (used as soft sign in some romanizations)
+
+        // Latin letters without a canonical decomposition
+        put('ß', "SS"); put('Æ', "AE"); put('æ', "AE"); put('Œ', "OE"); put('œ', "OE");
+        put('Ø', "O");  put('ø', "O");  put('Đ', "D");  put('đ', "D");  put('Ð', "D"); put('ð', "D");
+        put('Ł', "L");  put('ł', "L");  put('Þ', "TH"); put('þ', "TH"); put('ı', "I");
+        put('Ħ', "H");  put('ħ', "H");  put('Ŧ', "T");  put('ŧ', "T");  put('ĸ', "K");
+        put('Ŋ', "NG"); put('ŋ', "NG"); put('ŉ', "N");  put('ƒ', "F");
+
+        // Greek
+        String[] greek = {
+                "A", "V", "G", "D", "E", "Z", "I", "TH", "I", "K", "L", "M", "N", "X", "O", "P", "R",
+                null /* U+03A2 unassigned */, "S", "T", "Y", "F", "CH", "PS", "O"
+        };
+        for (int i = 0; i < greek.length; i++) {
+            if (greek[i] == null) continue;
+            put((char) (0x0391 + i), greek[i]);
+            put((char) (0x03B1 + i), greek[i]);
+        }
+        put('ς', "S"); // final sigma
+
+        // Cyrillic (Russian/Ukrainian/Belarusian/Serbian/Macedonian)
+        String[] cyr = {
+                "A", "B", "V", "G", "D", "E", "ZH", "Z", "I", "Y", "K", "L", "M", "N", "O", "P",
+                "R", "S", "T", "U", "F", "KH", "TS", "CH", "SH", "SHCH", "", "Y", "", "E", "YU", "YA"
+        };
+        for (int i = 0; i < cyr.length; i++) {
+            put((char) (0x0410 + i), cyr[i]);
+            put((char) (0x0430 + i), cyr[i]);
+        }
+        String[] cyrExt = { // U+0400..U+040F, lower case at U+0450..U+045F
+                "E", "E", "DJ", "G", "YE", "DZ", "I", "YI", "J", "LJ", "NJ", "C", "K", "I", "U", "DZ"
+        };
+        for (int i = 0; i < cyrExt.length; i++) {
+            put((char) (0x0400 + i), cyrExt[i]);
+            put((char) (0x0450 + i), cyrExt[i]);
+        }
+        put('Ґ', "G"); put('ґ', "G"); put('Ғ', "GH"); put('ғ', "GH"); put('Қ', "Q"); put('қ', "Q");
+        put('Ң', "NG"); put('ң', "NG"); put('Ү', "U"); put('ү', "U"); put('Ұ', "U"); put('ұ', "U");
+        put('Һ', "H"); put('һ', "H"); put('Ә', "A"); put('ә', "A"); put('Ө', "O"); put('ө', "O");
+
+        // Arabic (consonantal; short vowels are not written so they cannot be recovered)
+        put('ء', "");   put('آ', "A");  put('أ', "A");  put('ؤ', "W");
+        put('إ', "I");  put('ئ', "Y");  put('ا', "A");  put('ب', "B");
+        put('ة', "A");  put('ت', "T");  put('ث', "TH"); put('ج', "J");
+        put('ح', "H");  put('خ', "KH"); put('د', "D");  put('ذ', "DH");
+        put('ر', "R");  put('ز', "Z");  put('س', "S");  put('ش', "SH");
+        put('ص', "S");  put('ض', "D");  put('ط', "T");  put('ظ', "Z");
+        put('ع', "");   put('غ', "GH"); put('ـ', "");   put('ف', "F");
+        put('ق', "Q");  put('ك', "K");  put('ل', "L");  put('م', "M");
+        put('ن', "N");  put('ه', "H");  put('و', "W");  put('ى', "A");
+        put('ي', "Y");  put('پ', "P");  put('چ', "CH"); put('ژ', "ZH");
+        put('ک', "K");  put('گ', "G");  put('ی', "Y");  put('ٱ', "A");
+        for (char c = 0x064B; c <= 0x065F; c++) FOLD[c] = ""; // harakat
+        FOLD[0x0670] = "";                                     // superscript alef
+        for (int d = 0; d < 10; d++) {
+            FOLD[0x0660 + d] = String.valueOf((char) ('0' + d)); // Arabic-Indic digits
+            FOLD[0x06F0 + d] = String.valueOf((char) ('0' + d)); // Extended Arabic-Indic digits
+        }
+
+        // Everything else with a (compatibility) decomposition folds to its base letters (é → E, Ǆ → DZ, Ά → A)
+        for (int c = 0x00C0; c < TABLE_SIZE; c++) {
+            if (FOLD[c] != null) continue;
+            String nfkd = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFKD);
+            if (nfkd.length() == 1 && nfkd.charAt(0) == c) continue;
+            StringBuilder base = new StringBuilder();
+            for (int i = 0; i < nfkd.length(); i++) {
+                char b = nfkd.charAt(i);
+                if (b >= 'a' && b <= 'z') base.append((char) (b - 32));
+                else if ((b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')) base.append(b);
+                else if (b < TABLE_SIZE && b != c && FOLD[b] != null) base.append(FOLD[b]);
+            }
+            if (base.length() > 0) FOLD[c] = base.toString();
+        }
+    }
+
+    private static void put(char c, String rep) { FOLD[c] = rep; }
+}
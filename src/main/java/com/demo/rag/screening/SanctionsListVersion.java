@@ -0,0 +1,30 @@
+package com.demo.rag.screening;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SanctionsListVersion
+ *
+ * Monotonic version of the loaded sanctions data. Bumped whenever the list screening reads changes —
+ * a Search sync that modified the index, or a local index snapshot swap — so anything keyed on it
+ * (e.g. the screening result cache) stops serving results computed against the previous list.
+ */
+@Component
+public class SanctionsListVersion {
+
+    private final AtomicLong version = new AtomicLong(1);
+    private volatile Instant changedAt = Instant.now();
+
+    public long current() { return version.get(); }
+
+    public Instant changedAt() { return changedAt; }
+
+    public long bump() {
+        long v = version.incrementAndGet();
+        changedAt = Instant.now();
+        return v;
+    }
+}
@@ -0,0 +1,108 @@
+package com.demo.rag.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * AsyncLimiter
+ *
+ * {@link Bulkhead} for non-blocking work: at most maxInFlight futures are running at once, no thread waits.
+ * - a task beyond the limit is queued (up to maxQueued) and started when a running one completes,
+ * - a task that does not fit in the queue either fails at once with {@link RejectedException},
+ * - inFlight / queued / peak / completed / rejected counters for the metrics endpoint.
+ *
+ * Queued tasks started by a completion run through a per-thread trampoline: a task that completes synchronously
+ * hands its slot on after the current completion returns, so a burst of them drains in a loop, not by recursion.
+ */
+public final class AsyncLimiter {
+
+    /** Thrown (as the future's failure) when both the in-flight slots and the queue are full. */
+    public static final class RejectedException extends RuntimeException {
+        public RejectedException(String name, int maxInFlight, int maxQueued) {
+            super("limiter '" + name + "' full (" + maxInFlight + " in flight, " + maxQueued + " queued)");
+        }
+    }
+
+    public record Stats(String name, int maxInFlight, int maxQueued, int inFlight, int queued, int peak,
+                        long completed, long rejected) { }
+
+    private final String name;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private static final ThreadLocal<ArrayDeque<Runnable>> TRAMPOLINE = new ThreadLocal<>();
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int inFlight, peak;
+    private long completed, rejected;
+
+    public AsyncLimiter(String name, int maxInFlight, int maxQueued) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight must be > 0");
+        this.name = name;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    /** Starts {@code task} now or when a slot frees up; the result completes with the task's future. */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> f;
+            try {
+                f = task.get();
+            } catch (Throwable t) {
+                f = CompletableFuture.failedFuture(t);
+            }
+            f.whenComplete((v, e) -> {
+                release();
+                if (e != null) result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                else result.complete(v);
+            });
+        };
+        synchronized (this) {
+            if (inFlight >= maxInFlight) {
+                if (queue.size() >= maxQueued) {
+                    rejected++;
+                    return CompletableFuture.failedFuture(new RejectedException(name, maxInFlight, maxQueued));
+                }
+                queue.add(start);
+                return result;
+            }
+            peak = Math.max(peak, ++inFlight);
+        }
+        start.run();
+        return result;
+    }
+
+    /** The slot passes straight to the next queued task, if any. */
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            completed++;
+            next = queue.poll();
+            if (next == null) inFlight--;
+        }
+        if (next != null) trampoline(next);
+    }
+
+    /** Runs {@code task} now, or after the task already running on this thread's trampoline returns. */
+    private static void trampoline(Runnable task) {
+        ArrayDeque<Runnable> pending = TRAMPOLINE.get();
+        if (pending != null) {
+            pending.add(task);
+            return;
+        }
+        pending = new ArrayDeque<>();
+        TRAMPOLINE.set(pending);
+        try {
+            for (Runnable r = task; r != null; r = pending.poll()) r.run();
+        } finally {
+            TRAMPOLINE.remove();
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(name, maxInFlight, maxQueued, inFlight, queue.size(), peak, completed, rejected);
+    }
+}
@@ -0,0 +1,75 @@
+package com.demo.rag.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead
+ *
+ * Concurrency limit around one dependency, so a slow backend cannot take all the capacity of the others:
+ * - at most maxConcurrent calls run at once; further callers wait up to maxWaitMillis for a slot,
+ * - a caller that still gets no slot fails fast with {@link RejectedException},
+ * - active / waiting / peak / completed / rejected counters for the metrics endpoint.
+ */
+public final class Bulkhead {
+
+    /** Thrown when no slot frees up within the wait time. */
+    public static final class RejectedException extends RuntimeException {
+        public RejectedException(String name, int limit) {
+            super("bulkhead '" + name + "' full (" + limit + " concurrent calls)");
+        }
+    }
+
+    public record Stats(String name, int maxConcurrent, long maxWaitMillis, int active, int waiting, int peak,
+                        long completed, long rejected) { }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger(), waiting = new AtomicInteger(), peak = new AtomicInteger();
+    private final LongAdder completed = new LongAdder(), rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMillis) {
+        if (maxConcurrent <= 0) throw new IllegalArgumentException("maxConcurrent must be > 0");
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    public <T> T call(Supplier<T> work) {
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new RejectedException(name, maxConcurrent);
+        }
+        peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            return work.get();
+        } finally {
+            active.decrementAndGet();
+            completed.increment();
+            permits.release();
+        }
+    }
+
+    public String name() { return name; }
+
+    public Stats stats() {
+        return new Stats(name, maxConcurrent, maxWaitMillis, active.get(), waiting.get(), peak.get(),
+                completed.sum(), rejected.sum());
+    }
+}
@@ -0,0 +1,55 @@
+package com.demo.rag.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RateLimiter
+ *
+ * Blocking limiter for calls per second against a remote quota:
+ * - each {@link #acquire()} reserves the next free slot, 1/permitsPerSecond apart, and sleeps until it
+ *   ({@link #reserve()} only returns the delay, for callers that must not block),
+ * - up to {@code burst} unused slots are kept, so an idle limiter lets a short burst through,
+ * - permitsPerSecond <= 0 means unlimited (acquire returns at once).
+ */
+public final class RateLimiter {
+
+    public record Stats(double permitsPerSecond, long acquired, long waitedMillis) { }
+
+    private final double permitsPerSecond;
+    private final long intervalNanos;
+    private final long maxBankedNanos;
+    private long nextFree = System.nanoTime();
+    private final LongAdder acquired = new LongAdder(), waitedNanos = new LongAdder();
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+        this.maxBankedNanos = intervalNanos * Math.max(0, burst - 1);
+    }
+
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    /** Non-blocking {@link #acquire()}: reserves the next slot and returns how many nanoseconds until it starts. */
+    public long reserve() {
+        acquired.increment();
+        if (intervalNanos == 0) return 0;
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(nextFree, now - maxBankedNanos);
+            nextFree = slot + intervalNanos;
+            wait = slot - now;
+        }
+        if (wait <= 0) return 0;
+        waitedNanos.add(wait);
+        return wait;
+    }
+
+    public Stats stats() {
+        return new Stats(permitsPerSecond, acquired.sum(), TimeUnit.NANOSECONDS.toMillis(waitedNanos.sum()));
+    }
+}
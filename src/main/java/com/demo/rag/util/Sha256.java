@@ -0,0 +1,64 @@
+package com.demo.rag.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Sha256
+ *
+ * The one SHA-256 helper for cache keys, manifest hashes and coalescing keys:
+ * - bytes: digest of raw content (documents, pre-joined keys),
+ * - parts: every part UTF-8 encoded and followed by a 0x1f unit separator, so "a","bc" != "ab","c";
+ *   a null part hashes like "",
+ * - hex (64 chars) or the first 128 bits as hex (32 chars) / two longs where a shorter key is enough.
+ *
+ * Digests are per-thread and reset on use; nothing is allocated beyond the encoded input and the result.
+ */
+public final class Sha256 {
+
+    private static final ThreadLocal<MessageDigest> MD = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private Sha256() { }
+
+    public static byte[] digest(byte[] bytes) {
+        MessageDigest md = MD.get();
+        md.reset();
+        return md.digest(bytes);
+    }
+
+    public static byte[] digest(String... parts) {
+        MessageDigest md = MD.get();
+        md.reset();
+        for (String p : parts) {
+            if (p != null) md.update(p.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0x1f);
+        }
+        return md.digest();
+    }
+
+    public static String hex(byte[] bytes) { return HexFormat.of().formatHex(digest(bytes)); }
+
+    public static String hex(String... parts) { return HexFormat.of().formatHex(digest(parts)); }
+
+    /** First 128 bits of {@link #digest(String...)} as hex. */
+    public static String hex128(String... parts) { return HexFormat.of().formatHex(digest(parts), 0, 16); }
+
+    /** First 128 bits of {@link #digest(byte[])} as {hi, lo}. */
+    public static long[] bits128(byte[] bytes) {
+        byte[] d = digest(bytes);
+        long hi = 0, lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = (hi << 8) | (d[i] & 0xff);
+            lo = (lo << 8) | (d[i + 8] & 0xff);
+        }
+        return new long[] {hi, lo};
+    }
+}
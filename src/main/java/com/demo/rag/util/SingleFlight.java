@@ -0,0 +1,87 @@
+package com.demo.rag.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight
+ *
+ * Request coalescing for remote calls:
+ * - the first caller for a key runs the call, callers arriving while it is in flight wait for and share
+ *   its result (or its exception) instead of issuing a duplicate request,
+ * - the key is forgotten as soon as the call finishes; caching finished results is the caller's job
+ *   (see {@link TtlLruCache}),
+ * - calls / executions / shared counters for the metrics endpoint.
+ *
+ * Keys must already be normalized by the caller (same request ⇒ equal key); for large inputs use a
+ * {@link Sha256} of the parts.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder(), shared = new LongAdder();
+
+    /** Point-in-time counters; coalesceRate is shared / calls, 0 when unused. */
+    public record Stats(long calls, long executions, long shared, int inFlight, double coalesceRate) { }
+
+    public V run(K key, Supplier<V> call) {
+        calls.increment();
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                if (e.getCause() instanceof Error err) throw err;
+                throw e;
+            }
+        }
+        try {
+            V v = call.get();
+            mine.complete(v);
+            return v;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Non-blocking variant: {@code call} starts the work and returns its future; callers for the same key
+     * share it until it completes. Sync and async callers of one instance coalesce with each other.
+     */
+    public CompletableFuture<V> runAsync(K key, Supplier<CompletableFuture<V>> call) {
+        calls.increment();
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.increment();
+            return running.copy();
+        }
+        CompletableFuture<V> started;
+        try {
+            started = call.get();
+        } catch (Throwable t) {
+            started = CompletableFuture.failedFuture(t);
+        }
+        started.whenComplete((v, e) -> {
+            inFlight.remove(key, mine);
+            if (e != null) mine.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            else mine.complete(v);
+        });
+        return mine.copy();
+    }
+
+    public Stats stats() {
+        long c = calls.sum(), s = shared.sum();
+        double rate = c == 0 ? 0.0 : Math.round(s * 1000.0 / c) / 1000.0;
+        return new Stats(c, c - s, s, inFlight.size(), rate);
+    }
+}
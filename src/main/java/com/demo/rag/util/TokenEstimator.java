@@ -0,0 +1,37 @@
+package com.demo.rag.util;
+
+/**
+ * TokenEstimator
+ *
+ * Cheap, dependency-free token estimate for prompt budgeting (no tokenizer download):
+ * - runs of letters count one token per ~4 characters, runs of digits one per ~3,
+ * - every punctuation / symbol character counts as one token, whitespace is free.
+ *
+ * For English text and compact JSON/CSV this lands within roughly ±15% of cl100k/o200k counts,
+ * which is enough to compare prompt sections and spot blow-ups. Exact counts come from the
+ * model response (see {@link TokenMeter}).
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() { }
+
+    public static int estimate(String s) {
+        if (s == null || s.isEmpty()) return 0;
+        int tokens = 0, letters = 0, digits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetter(c)) {
+                if (digits > 0) { tokens += (digits + 2) / 3; digits = 0; }
+                letters++;
+            } else if (Character.isDigit(c)) {
+                if (letters > 0) { tokens += (letters + 3) / 4; letters = 0; }
+                digits++;
+            } else {
+                tokens += (letters + 3) / 4 + (digits + 2) / 3;
+                letters = digits = 0;
+                if (!Character.isWhitespace(c)) tokens++;
+            }
+        }
+        return tokens + (letters + 3) / 4 + (digits + 2) / 3;
+    }
+}
@@ -0,0 +1,54 @@
+package com.demo.rag.util;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TokenMeter
+ *
+ * Per-agent token accounting for chat calls:
+ * - prompt / completion tokens as reported by the model (0 when the response has no usage),
+ * - estimated prompt tokens per prompt section ({@link TokenEstimator}), summed over all calls,
+ * - the last call in full, for the metrics endpoint.
+ */
+public final class TokenMeter {
+
+    /** One chat call: estimated tokens per section plus the model-reported usage. */
+    public record Call(Map<String, Integer> sections, int estimatedPrompt, int promptTokens, int completionTokens,
+                       Instant at) { }
+
+    public record Stats(long calls, long estimatedPromptTokens, long promptTokens, long completionTokens,
+                        Map<String, Long> sectionTokens, Call last) { }
+
+    private long calls, estimated, prompt, completion;
+    private final Map<String, Long> sectionTotals = new LinkedHashMap<>();
+    private Call last;
+
+    /** Estimated tokens of each prompt section, in prompt order. */
+    public static Map<String, Integer> estimate(Map<String, String> sections) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        sections.forEach((k, v) -> out.put(k, TokenEstimator.estimate(v)));
+        return out;
+    }
+
+    public synchronized Call record(Map<String, Integer> sections, Integer promptTokens, Integer completionTokens) {
+        int est = 0;
+        for (Map.Entry<String, Integer> e : sections.entrySet()) {
+            est += e.getValue();
+            sectionTotals.merge(e.getKey(), (long) e.getValue(), Long::sum);
+        }
+        int p = promptTokens == null ? 0 : promptTokens, c = completionTokens == null ? 0 : completionTokens;
+        calls++;
+        estimated += est;
+        prompt += p;
+        completion += c;
+        last = new Call(Collections.unmodifiableMap(new LinkedHashMap<>(sections)), est, p, c, Instant.now());
+        return last;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(calls, estimated, prompt, completion, new LinkedHashMap<>(sectionTotals), last);
+    }
+}
@@ -0,0 +1,105 @@
+package com.demo.rag.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * TtlLruCache
+ *
+ * Small bounded cache:
+ * - at most maxSize entries, least-recently-used evicted first,
+ * - entries older than ttlMillis are treated as missing and dropped on access,
+ * - hit / miss / eviction / expiration counters for the metrics endpoint.
+ *
+ * Values are computed outside the lock, so two concurrent misses on the same key may both compute.
+ */
+public class TtlLruCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<K, Slot<V>> map;
+
+    private long hits, misses, evictions, expirations;
+
+    private record Slot<V>(V value, long expiresAt) { }
+
+    /** Point-in-time counters; hitRate is hits / (hits + misses), 0 when unused. */
+    public record Stats(int size, int maxSize, long ttlMillis,
+                        long hits, long misses, long evictions, long expirations, double hitRate) { }
+
+    public TtlLruCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be > 0");
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Slot<V>> eldest) {
+                if (size() <= TtlLruCache.this.maxSize) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /** Cached value, or null when absent/expired (counted as a miss). */
+    public synchronized V get(K key) {
+        Slot<V> s = map.get(key);
+        if (s != null && s.expiresAt() < System.currentTimeMillis()) {
+            map.remove(key);
+            expirations++;
+            s = null;
+        }
+        if (s == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return s.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        if (value == null) return;
+        map.put(key, new Slot<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /** put with an explicit expiry (epoch millis), e.g. when restoring persisted entries. */
+    public synchronized void put(K key, V value, long expiresAt) {
+        if (value == null || expiresAt < System.currentTimeMillis()) return;
+        map.put(key, new Slot<>(value, expiresAt));
+    }
+
+    public long ttlMillis() { return ttlMillis; }
+
+    /** get, falling back to loader on a miss; null results are not cached. */
+    public V getOrCompute(K key, Function<? super K, ? extends V> loader) {
+        V v = get(key);
+        if (v != null) return v;
+        v = loader.apply(key);
+        put(key, v);
+        return v;
+    }
+
+    public synchronized void clear() { map.clear(); }
+
+    /** Drops expired entries eagerly (normally they are dropped lazily on access). */
+    public synchronized int purgeExpired() {
+        long now = System.currentTimeMillis();
+        int n = 0;
+        for (Iterator<Slot<V>> it = map.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt() < now) {
+                it.remove();
+                n++;
+            }
+        }
+        expirations += n;
+        return n;
+    }
+
+    public synchronized Stats stats() {
+        long total = hits + misses;
+        double rate = total == 0 ? 0.0 : Math.round(hits * 1000.0 / total) / 1000.0;
+        return new Stats(map.size(), maxSize, ttlMillis, hits, misses, evictions, expirations, rate);
+    }
+}
@@ -0,0 +1,41 @@
+package com.demo.rag.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VirtualThreads
+ *
+ * Thread-per-task executor for blocking SDK calls. The build targets Java 17, so virtual threads are looked
+ * up reflectively: on a Java 21+ runtime each task gets a virtual thread, on 17 it falls back to a cached pool
+ * of daemon platform threads (same semantics, higher per-thread cost). Concurrency is bounded by the callers
+ * (see {@link Bulkhead}), not by this executor.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() { }
+
+    public static ExecutorService newPerTaskExecutor(String namePrefix) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger seq = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, namePrefix + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** True when the runtime supports virtual threads (Java 21+). */
+    public static boolean available() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package com.demo.rag.web;
 
 import com.demo.rag.agents.*;
+import com.demo.rag.dto.DocSignals;
+import com.demo.rag.dto.FraudResult;
+import com.demo.rag.dto.RiskEnvelope;
+import com.demo.rag.dto.ScreeningResult;
+import com.demo.rag.screening.BatchScreeningService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -15,55 +30,103 @@ public class AgentsController {
     private final ScreeningAgent screening;
     private final FraudAgent fraud;
     private final RiskAgent risk;
+    private final BatchScreeningService batchScreening;
+    private final ObjectMapper om;
 
-    public AgentsController(ExtractorAgent extractor, ScreeningAgent screening, FraudAgent fraud, RiskAgent risk) {
+    private static final long BATCH_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    public AgentsController(ExtractorAgent extractor, ScreeningAgent screening, FraudAgent fraud, RiskAgent risk,
+                            BatchScreeningService batchScreening, ObjectMapper objectMapper) {
         this.extractor = extractor;
         this.screening = screening;
         this.fraud = fraud;
         this.risk = risk;
+        this.batchScreening = batchScreening;
+        this.om = objectMapper;
     }
 
     // --- Extract (artık docSignals JSON döner) ---
     @PostMapping(value = "/extract", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> extract(@RequestBody Map<String, Object> body) {
+    public ResponseEntity<DocSignals> extract(@RequestBody Map<String, Object> body) {
         String url = body.get("docUrl") == null ? null : String.valueOf(body.get("docUrl"));
         String resource = body.get("resourcePath") == null ? null : String.valueOf(body.get("resourcePath"));
+        String mrz = body.get("mrz") == null ? null : String.valueOf(body.get("mrz"));
 
         try {
-            if (url != null && !url.isBlank()) {
+            if (mrz != null && !mrz.isBlank()) {
+                String docRef = url != null && !url.isBlank() ? url : resource != null && !resource.isBlank() ? resource : "mrz";
+                return ResponseEntity.ok(extractor.inspectMrz(mrz, docRef));   // no remote call
+            } else if (url != null && !url.isBlank()) {
                 return ResponseEntity.ok(extractor.inspect(url));                    // ✅ yeni yöntem
             } else if (resource != null && !resource.isBlank()) {
                 return ResponseEntity.ok(extractor.inspectFromResource(resource));   // ✅ yeni yöntem
             } else {
-                return ResponseEntity.badRequest().body("{\"error\":\"docUrl or resourcePath required\"}");
+                return ResponseEntity.badRequest().body(DocSignals.error("docUrl, resourcePath or mrz required", null));
             }
         } catch (Exception e) {
-            String msg = e.getMessage() == null ? "" : e.getMessage().replace("\"","\\\"");
-            return ResponseEntity.internalServerError().body("{\"error\":\"extract-failed\",\"message\":\""+ msg +"\"}");
+            return ResponseEntity.internalServerError().body(DocSignals.error("extract-failed", e.getMessage()));
         }
     }
 
     // --- Screening unchanged ---
     @PostMapping(value = "/screen", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> screen(@RequestBody Map<String, Object> body) {
+    public ResponseEntity<ScreeningResult> screen(@RequestBody Map<String, Object> body) {
         String name = String.valueOf(body.getOrDefault("name", ""));
         String dob  = String.valueOf(body.getOrDefault("birthDate", ""));
         return ResponseEntity.ok(screening.sanctionsScreen(name, dob));
     }
 
+    // --- Bulk screening: JSON array or NDJSON of {name,birthDate} in, NDJSON out (one line per item) ---
+    @PostMapping(value = "/screen/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> screenBatch(InputStream body) throws IOException {
+        List<BatchScreeningService.Query> queries = new ArrayList<>();
+        // readValues iterates a root-level array as well as whitespace/newline separated objects
+        try (MappingIterator<BatchScreeningService.Query> it =
+                     om.readerFor(BatchScreeningService.Query.class).readValues(body)) {
+            while (it.hasNextValue()) {
+                if (queries.size() >= batchScreening.maxItems()) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                            "batch exceeds " + batchScreening.maxItems() + " items");
+                }
+                queries.add(it.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid batch body: " + e.getOriginalMessage());
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(BATCH_TIMEOUT_MS);
+        batchScreening.screenAll(queries, emitter);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
     // --- Fraud unchanged (triage/analyze hangisini kullanıyorsan ona göre) ---
     @PostMapping(value = "/fraud", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> fraud(@RequestBody Map<String, Object> body) {
-        return ResponseEntity.ok(fraud.triage(String.valueOf(body.getOrDefault("query", "recent suspicious transactions"))));
+    public ResponseEntity<FraudResult> fraud(@RequestBody Map<String, Object> body) {
+        Object customerId = body.get("customerId"); // optional: include live state from /api/fraud/events
+        return ResponseEntity.ok(fraud.triage(String.valueOf(body.getOrDefault("query", "recent suspicious transactions")),
+                List.of(), customerId == null ? null : String.valueOf(customerId)));
     }
 
     // --- Risk unchanged (score veya scoreDetailed sende hangisi varsa) ---
     @PostMapping(value = "/risk", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> risk(@RequestBody Map<String, Object> body) {
+    public ResponseEntity<RiskEnvelope> risk(@RequestBody Map<String, Object> body) {
         return ResponseEntity.ok(risk.score(
-                String.valueOf(body.getOrDefault("sanctionsContext", "[]")),
-                String.valueOf(body.getOrDefault("docSignals", "{}")),
-                String.valueOf(body.getOrDefault("fraudSignals", "{}"))
+                field(body, "sanctionsContext", ScreeningResult.class),
+                field(body, "docSignals", DocSignals.class),
+                field(body, "fraudSignals", FraudResult.class)
         ));
     }
+
+    /** Body fields may be JSON objects or JSON-encoded strings (output of the other endpoints). */
+    private <T> T field(Map<String, Object> body, String key, Class<T> type) {
+        Object v = body.get(key);
+        if (v == null) return null;
+        try {
+            return v instanceof String str ? om.readValue(str, type) : om.convertValue(v, type);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid " + key + ": " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package com.demo.rag.web;
+
+import com.demo.rag.dto.TransactionEvent;
+import com.demo.rag.fraud.CustomerFraudState;
+import com.demo.rag.fraud.FraudBatchJob;
+import com.demo.rag.fraud.FraudKnowledgeBase;
+import com.demo.rag.fraud.FraudStateStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FraudController
+ *
+ * Operational endpoints of the fraud side (the triage itself lives under /api/agents/fraud):
+ * - GET  /api/fraud/kb          → KB snapshot status (source, size, vectors, load time)
+ * - POST /api/fraud/kb/refresh  → reload the KB from its source and rebuild the indexes
+ * - GET  /api/fraud/kb/search   → retrieval preview (fused hits with per-ranker positions)
+ * - POST /api/fraud/events      → ingest live transactions (JSON array of TransactionEvent) into per-customer state
+ * - GET  /api/fraud/customers/{customerId} → current window state and signals of one customer
+ * - POST /api/fraud/batch       → score a transaction CSV under FRAUD_BATCH_DIR (optionally LLM-triage flagged customers)
+ * - GET  /api/fraud/batch[/{jobId}] → batch job progress (rows, partitions, flagged, throughput)
+ */
+@RestController
+@RequestMapping("/api/fraud")
+public class FraudController {
+
+    private final FraudKnowledgeBase kb;
+    private final FraudStateStore liveState;
+    private final FraudBatchJob batch;
+
+    public FraudController(FraudKnowledgeBase kb, FraudStateStore liveState, FraudBatchJob batch) {
+        this.kb = kb;
+        this.liveState = liveState;
+        this.batch = batch;
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> batch(@RequestParam String path,
+                                   @RequestParam(defaultValue = "false") boolean triage,
+                                   @RequestParam(defaultValue = "Assess fraud/AML risk from the flagged signals.") String question) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(batch.submit(Path.of(path), triage, question));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "bad_input");
+            err.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(err);
+        }
+    }
+
+    @GetMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<FraudBatchJob.Status>> batchJobs() {
+        return ResponseEntity.ok(batch.list());
+    }
+
+    @GetMapping(value = "/batch/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<FraudBatchJob.Status> batchStatus(@PathVariable String jobId) {
+        return batch.status(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping(value = "/events", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> events(@RequestBody List<TransactionEvent> events) {
+        int accepted = 0, rejected = 0;
+        Set<String> touched = new LinkedHashSet<>();
+        for (TransactionEvent e : events) {
+            if (liveState.ingest(e)) {
+                accepted++;
+                touched.add(e.customerId().trim());
+            } else {
+                rejected++;
+            }
+        }
+
+        // current signals of every customer touched by this batch
+        Map<String, List<String>> signals = new LinkedHashMap<>();
+        for (String c : touched) liveState.snapshot(c).ifPresent(st -> signals.put(c, st.signals()));
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("accepted", accepted);
+        out.put("rejected", rejected);
+        out.put("signals", signals);
+        out.put("store", liveState.stats());
+        return ResponseEntity.ok(out);
+    }
+
+    @GetMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CustomerFraudState.Snapshot> customer(@PathVariable String customerId) {
+        return liveState.snapshot(customerId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/kb", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<FraudKnowledgeBase.Status> kbStatus() {
+        return ResponseEntity.ok(kb.status());
+    }
+
+    @PostMapping(value = "/kb/refresh", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> kbRefresh() {
+        try {
+            return ResponseEntity.ok(kb.refresh());
+        } catch (Exception e) {
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "refresh_failed");
+            err.put("message", e.getMessage());
+            err.put("serving", kb.status()); // previous snapshot keeps serving
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(err);
+        }
+    }
+
+    @GetMapping(value = "/kb/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<FraudKnowledgeBase.Hit>> kbSearch(@RequestParam String q,
+                                                                 @RequestParam(defaultValue = "5") int k) {
+        return ResponseEntity.ok(kb.search(q, Math.min(Math.max(k, 1), 50)));
+    }
+}
@@ -0,0 +1,70 @@
+package com.demo.rag.web;
+
+import com.demo.rag.kyc.KycBatchJob;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KycBatchController
+ *
+ * Bulk onboarding over a customer CSV under KYC_BATCH_DIR:
+ * - POST /api/kyc/batch?path=customers.csv     → start a job (202); results stream into <jobId>.results.ndjson
+ * - POST /api/kyc/batch/{jobId}/resume         → run the job again, skipping customers that already succeeded
+ * - GET  /api/kyc/batch[/{jobId}]              → progress (rows, ok / failed, in flight, customers/s, per-stage usage)
+ */
+@RestController
+@RequestMapping("/api/kyc/batch")
+public class KycBatchController {
+
+    private final KycBatchJob batch;
+
+    public KycBatchController(KycBatchJob batch) {
+        this.batch = batch;
+    }
+
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> submit(@RequestParam String path, @RequestParam(required = false) String question) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(batch.submit(Path.of(path), question));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, "bad_input", e);
+        }
+    }
+
+    @PostMapping(value = "/{jobId}/resume", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> resume(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(batch.resume(jobId));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.NOT_FOUND, "unknown_job", e);
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.CONFLICT, "job_running", e);
+        }
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<KycBatchJob.Status>> jobs() {
+        return ResponseEntity.ok(batch.list());
+    }
+
+    @GetMapping(value = "/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<KycBatchJob.Status> status(@PathVariable String jobId) {
+        return batch.status(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String code, RuntimeException e) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", code);
+        err.put("message", e.getMessage());
+        return ResponseEntity.status(status).body(err);
+    }
+}
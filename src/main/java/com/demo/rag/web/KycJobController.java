@@ -0,0 +1,89 @@
+package com.demo.rag.web;
+
+import com.demo.rag.dto.KycStartRequest;
+import com.demo.rag.kyc.KycJobService;
+import com.demo.rag.kyc.KycJobService.JobView;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * KycJobController
+ *
+ * Job API over the same pipeline as /api/kyc/start, without holding the connection while it runs:
+ * - POST /api/kyc/jobs       → 202 {id, state, statusUrl}; the job is queued in Postgres
+ * - GET  /api/kyc/jobs/{id}  → job state, finished stages, attempts, error, and the RiskEnvelope once SUCCEEDED;
+ *   with ?waitSeconds=N (max KYC_JOB_MAX_WAIT_SECONDS, default 30) the call long-polls until the job ends
+ * 503 when the job store (database) is unavailable.
+ */
+@RestController
+@RequestMapping("/api/kyc/jobs")
+public class KycJobController {
+
+    private final KycJobService jobs;
+    private final long maxWaitSeconds;
+
+    public KycJobController(KycJobService jobs) {
+        this.jobs = jobs;
+        this.maxWaitSeconds = Long.parseLong(
+                Optional.ofNullable(System.getenv("KYC_JOB_MAX_WAIT_SECONDS")).orElse("30"));
+    }
+
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> submit(@RequestBody KycStartRequest req) {
+        try {
+            JobView job = jobs.submit(req);
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("id", job.id());
+            out.put("state", job.state());
+            out.put("statusUrl", "/api/kyc/jobs/" + job.id());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(out);
+        } catch (KycJobService.UnavailableException e) {
+            return unavailable(e);
+        }
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> get(@PathVariable String id,
+                                                 @RequestParam(defaultValue = "0") long waitSeconds) {
+        long wait = Math.max(0, Math.min(waitSeconds, maxWaitSeconds));
+        DeferredResult<ResponseEntity<?>> out = new DeferredResult<>(wait * 1000L + 1000L);
+        ResponseEntity<?> now = current(id);
+        if (wait == 0 || !(now.getBody() instanceof JobView v) || v.finished()) {
+            out.setResult(now);
+            return out;
+        }
+
+        // finished on this node → answer at once; otherwise (or on another node) the timeout re-reads the row
+        Runnable unregister = jobs.onFinished(id, () -> out.setResult(current(id)));
+        out.onCompletion(unregister);
+        out.onTimeout(() -> out.setResult(current(id)));
+        ResponseEntity<?> again = current(id);
+        if (again.getBody() instanceof JobView v2 && v2.finished()) out.setResult(again);
+        return out;
+    }
+
+    // -------- helpers --------
+
+    private ResponseEntity<?> current(String id) {
+        try {
+            return jobs.find(id).<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "not_found", "id", id)));
+        } catch (KycJobService.UnavailableException e) {
+            return unavailable(e);
+        }
+    }
+
+    private static ResponseEntity<?> unavailable(RuntimeException e) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", "jobs_unavailable");
+        err.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(err);
+    }
+}
@@ -0,0 +1,89 @@
+package com.demo.rag.web;
+
+import com.demo.rag.agents.ExtractorAgent;
+import com.demo.rag.agents.FraudAgent;
+import com.demo.rag.agents.RiskAgent;
+import com.demo.rag.agents.ScreeningAgent;
+import com.demo.rag.embedding.EmbeddingCache;
+import com.demo.rag.kyc.KycJobService;
+import com.demo.rag.kyc.KycPipeline;
+import com.demo.rag.screening.SanctionsListVersion;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MetricsController
+ *
+ * Lightweight runtime counters (no actuator dependency): cache hit/miss and request coalescing stats, data versions.
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    private final ScreeningAgent screening;
+    private final SanctionsListVersion sanctionsVersion;
+    private final EmbeddingCache embeddingCache;
+    private final RiskAgent risk;
+    private final ExtractorAgent extractor;
+    private final FraudAgent fraud;
+    private final KycPipeline pipeline;
+    private final KycJobService jobs;
+
+    public MetricsController(ScreeningAgent screening, SanctionsListVersion sanctionsVersion,
+                             EmbeddingCache embeddingCache, RiskAgent risk,
+                             ExtractorAgent extractor, FraudAgent fraud, KycPipeline pipeline,
+                             KycJobService jobs) {
+        this.screening = screening;
+        this.sanctionsVersion = sanctionsVersion;
+        this.embeddingCache = embeddingCache;
+        this.risk = risk;
+        this.extractor = extractor;
+        this.fraud = fraud;
+        this.pipeline = pipeline;
+        this.jobs = jobs;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> sanctions = new LinkedHashMap<>();
+        sanctions.put("listVersion", sanctionsVersion.current());
+        sanctions.put("changedAt", sanctionsVersion.changedAt().toString());
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("sanctions", sanctions);
+        out.put("screeningCache", screening.cacheStats());
+        out.put("embeddingCache", embeddingCache.stats());
+        out.put("extractionCache", extractor.cacheStats());
+        out.put("riskCache", risk.cacheStats());
+        out.put("riskPaths", risk.pathStats());
+
+        // single-flight: "shared" = identical in-flight calls that reused another caller's remote call
+        Map<String, Object> flights = new LinkedHashMap<>();
+        flights.put("extractor", extractor.flightStats());
+        flights.put("screening", screening.flightStats());
+        flights.put("fraud", fraud.flightStats());
+        flights.put("risk", risk.flightStats());
+        out.put("singleFlight", flights);
+
+        // chat token accounting: model-reported usage + per-section prompt estimates
+        Map<String, Object> tokens = new LinkedHashMap<>();
+        tokens.put("fraud", fraud.tokenStats());
+        tokens.put("risk", risk.tokenStats());
+        out.put("tokens", tokens);
+
+        // /api/kyc/start stages: per-agent concurrency limits and current usage
+        Map<String, Object> kyc = new LinkedHashMap<>();
+        kyc.put("threads", pipeline.threads());
+        kyc.put("bulkheads", pipeline.bulkheadStats());
+        kyc.put("extractor", extractor.asyncStats());
+        kyc.put("jobs", jobs.stats());
+        out.put("kyc", kyc);
+        return ResponseEntity.ok(out);
+    }
+}
@@ -1,148 +1,120 @@
 package com.demo.rag.web;
 
-import com.demo.rag.agents.ExtractorAgent;
-import com.demo.rag.agents.FraudAgent;
-import com.demo.rag.agents.RiskAgent;
-import com.demo.rag.agents.ScreeningAgent;
 import com.demo.rag.dto.KycStartRequest;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.core.task.TaskExecutor;
+import com.demo.rag.kyc.KycPipeline;
+import com.demo.rag.util.Bulkhead;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.concurrent.CompletableFuture;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * OrchestratorController
+ *
+ * - POST /api/kyc/start         → runs the whole pipeline and returns the RiskEnvelope; the servlet thread is
+ *   released while the stages run (async result), 503 when an agent bulkhead is full
+ * - POST /api/kyc/start/stream  → same flow as server-sent events, one per stage as it completes:
+ *   docSignals, fraud, screening (in completion order), then risk-token events while the risk model
+ *   streams (none for rule / cached answers), then risk (the full envelope); error if a stage fails.
+ *   KYC_SSE_TIMEOUT_SECONDS (default 120) bounds the stream.
+ */
 @RestController
 @RequestMapping("/api/kyc")
 public class OrchestratorController {
 
-    private final ExtractorAgent extractor;
-    private final ScreeningAgent screening;
-    private final FraudAgent fraud;
-    private final RiskAgent risk;
-    private final TaskExecutor exec;
-    private final ObjectMapper om;
-
-    public OrchestratorController(
-            ExtractorAgent extractor,
-            ScreeningAgent screening,
-            FraudAgent fraud,
-            RiskAgent risk,
-            TaskExecutor exec,
-            ObjectMapper objectMapper
-    ) {
-        this.extractor = extractor;
-        this.screening = screening;
-        this.fraud = fraud;
-        this.risk = risk;
-        this.exec = exec;
-        this.om = objectMapper;
+    private final KycPipeline pipeline;
+    private final long sseTimeoutMs;
+
+    public OrchestratorController(KycPipeline pipeline) {
+        this.pipeline = pipeline;
+        this.sseTimeoutMs = Long.parseLong(
+                Optional.ofNullable(System.getenv("KYC_SSE_TIMEOUT_SECONDS")).orElse("120")) * 1000L;
     }
 
     @PostMapping("/start")
-    public ResponseEntity<String> start(@RequestBody KycStartRequest req) {
+    public CompletableFuture<ResponseEntity<?>> start(@RequestBody KycStartRequest req) {
+        return pipeline.runAsync(req)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (!(cause instanceof Bulkhead.RejectedException)) throw new CompletionException(cause);
+                    Map<String, Object> err = new LinkedHashMap<>();
+                    err.put("error", "agent_busy");
+                    err.put("message", cause.getMessage());
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(err);
+                });
+    }
 
-        // 1) Extraction (docSignals) — URL ise inspect(url), değilse classpath'ten
-        CompletableFuture<String> fExtract = CompletableFuture.supplyAsync(() -> {
-            String docRef = req.documentText();
-            if (docRef == null || docRef.isBlank()) {
-                return "{\"error\":\"no-document\"}";
-            }
-            try {
-                return docRef.startsWith("http")
-                        ? extractor.inspect(docRef)
-                        : extractor.inspectFromResource(docRef);
-            } catch (Exception e) {
-                String msg = e.getMessage() == null ? "" : e.getMessage().replace("\"","\\\"");
-                return "{\"error\":\"analyze-failed\",\"message\":\""+ msg +"\"}";
-            }
-        }, r -> exec.execute(r));
-
-        // 2) Fraud
-        CompletableFuture<String> fFraud = CompletableFuture.supplyAsync(() ->
-                        fraud.triage(
-                                String.valueOf(req.question()),
-                                toJsonSafe(req.transactions())
-                        ),
-                r -> exec.execute(r)
-        );
-        // 3) Screening — extraction -> identity seçimi -> screening
-        CompletableFuture<String> fScreen = fExtract.thenApplyAsync(docSignals -> {
-            NameDob id = pickIdentity(docSignals, req.name(), req.birthDate());
-            return screening.sanctionsScreen(id.name, id.dob);
-        }, r -> exec.execute(r));
-
-        // 4) Hepsini birleştir → RiskAgent
-        String finalJson = CompletableFuture.allOf(fExtract, fFraud, fScreen)
-                .thenApply(v -> {
-                    String docSignals = fExtract.join();
-                    String fraudJson  = fFraud.join();
-                    String sanctions  = fScreen.join();
-                    String envelope   = risk.scoreDetailed(sanctions, docSignals, fraudJson);
-                    // İsteğe bağlı: identityUsed + documentRef ekle
-                    NameDob used = pickIdentity(docSignals, req.name(), req.birthDate());
-                    return enrichEnvelope(envelope, used.name, used.dob, req.documentText(),
-                            hasError(docSignals) ? "request" : "document");
+    @PostMapping(value = "/start/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter startStream(@RequestBody KycStartRequest req) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Events out = new Events(emitter);
+
+        KycPipeline.Stages st = pipeline.start(req);
+        // each stage event is sent before the risk step starts, so "risk" is always last
+        CompletableFuture<Void> sent = CompletableFuture.allOf(
+                st.doc().thenAccept(d -> out.send("docSignals", d)),
+                st.fraud().thenAccept(f -> out.send("fraud", f)),
+                st.screening().thenAccept(s -> out.send("screening", s)));
+
+        sent.thenCompose(v -> pipeline.scoreAsync(req, st, token -> out.send("risk-token", token)))
+                .thenAccept(envelope -> {
+                    out.send("risk", envelope);
+                    out.complete();
                 })
-                .join();
-
-        return ResponseEntity.ok(finalJson);
+                .exceptionally(e -> {
+                    out.fail(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    return null;
+                });
+        return emitter;
     }
 
     // -------- helpers --------
 
-    private static String toJsonSafe(Object o) {
-        if (o == null) return "[]";
-        try {
-            return new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(o);
-        } catch (Exception e) {
-            return "[]";
-        }
-    }
+    /** Serializes sends from the stage threads; once the client is gone further events are dropped. */
+    private static final class Events {
+        private final SseEmitter emitter;
+        private boolean closed;
 
-    private static class NameDob {
-        final String name; final String dob;
-        NameDob(String n, String d){ this.name = n; this.dob = d; }
-    }
+        Events(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onCompletion(this::close);
+            emitter.onTimeout(this::close);
+            emitter.onError(e -> close());
+        }
 
-    /** docSignals içinden idInfo.fullName / idInfo.dob'u çek; yoksa body'dekilere düş */
-    private NameDob pickIdentity(String docSignalsJson, String reqName, String reqDob) {
-        try {
-            JsonNode n = om.readTree(docSignalsJson);
-            String dn = null, dd = null;
-            if (n != null && n.has("idInfo")) {
-                JsonNode id = n.get("idInfo");
-                if (id.hasNonNull("fullName")) dn = id.get("fullName").asText();
-                if (id.hasNonNull("dob"))      dd = id.get("dob").asText();
+        synchronized void send(String name, Object data) {
+            if (closed) return;
+            try {
+                SseEmitter.SseEventBuilder ev = SseEmitter.event().name(name);
+                emitter.send(data instanceof String ? ev.data(data) : ev.data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                closed = true; // client disconnected; the pipeline still finishes (and fills caches)
             }
-            return new NameDob(coalesce(dn, reqName), coalesce(dd, reqDob));
-        } catch (Exception ignore) {
-            return new NameDob(reqName, reqDob);
         }
-    }
 
-    private boolean hasError(String json){
-        try {
-            JsonNode n = om.readTree(json);
-            return n != null && n.has("error");
-        } catch (Exception e) { return false; }
-    }
+        synchronized void complete() {
+            if (closed) return;
+            closed = true;
+            emitter.complete();
+        }
 
-    private String enrichEnvelope(String envelope, String name, String dob, String ref, String source) {
-        try {
-            JsonNode n = om.readTree(envelope);
-            JsonNode inputs = n.with("inputs");
-            ((com.fasterxml.jackson.databind.node.ObjectNode)inputs)
-                    .putObject("identityUsed").put("name", name).put("dob", dob).put("source", source);
-            ((com.fasterxml.jackson.databind.node.ObjectNode)inputs).put("documentRef", ref);
-            return om.writerWithDefaultPrettyPrinter().writeValueAsString(n);
-        } catch (Exception e) {
-            return envelope;
+        void fail(Throwable e) {
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "pipeline_failed");
+            err.put("message", e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            send("error", err);
+            complete();
         }
-    }
 
-    private static String coalesce(String... ss){
-        for (String s: ss) if (s != null && !s.isBlank()) return s;
-        return null;
+        private synchronized void close() { closed = true; }
     }
 }